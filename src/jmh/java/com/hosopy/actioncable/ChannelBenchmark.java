@@ -0,0 +1,42 @@
+package com.hosopy.actioncable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Channel#toIdentifier()}, once encoded and after a change of params.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChannelBenchmark {
+
+    private Channel channel;
+
+    @Setup
+    public void setUp() {
+        channel = new Channel("ChatChannel");
+        channel.addParam("room", "Best Room");
+        channel.addParam("id", 42);
+    }
+
+    @Benchmark
+    public String cached() {
+        return channel.toIdentifier();
+    }
+
+    @Benchmark
+    public String encode() {
+        final Channel channel = new Channel("ChatChannel");
+        channel.addParam("room", "Best Room");
+        channel.addParam("id", 42);
+        return channel.toIdentifier();
+    }
+}
@@ -0,0 +1,45 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of outbound commands by {@link GsonCodec#encode(Command)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandBenchmark {
+
+    private String identifier;
+
+    @Setup
+    public void setUp() {
+        final Channel channel = new Channel("ChatChannel");
+        channel.addParam("room", "Best Room");
+        identifier = channel.toIdentifier();
+    }
+
+    @Benchmark
+    public String subscribeToJson() {
+        return Codec.GSON.encode(Command.subscribe(identifier));
+    }
+
+    @Benchmark
+    public String messageToJson() {
+        final JsonObject data = new JsonObject();
+        data.addProperty("body", "Hello");
+        data.addProperty("private", true);
+        data.addProperty("action", "send_message");
+        return Codec.GSON.encode(Command.message(identifier, data));
+    }
+}
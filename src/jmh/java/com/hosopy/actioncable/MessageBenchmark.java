@@ -0,0 +1,57 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of inbound frames by {@link GsonCodec#decode(String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageBenchmark {
+
+    @Param({"64", "1024", "65536"})
+    public int payloadSize;
+
+    private String broadcast;
+
+    private String ping;
+
+    @Setup
+    public void setUp() {
+        final Channel channel = new Channel("ChatChannel");
+        channel.addParam("room", "Best Room");
+
+        final JsonObject message = new JsonObject();
+        message.addProperty("body", new String(new char[payloadSize]).replace('\0', 'x'));
+        message.addProperty("sent_at", 1500000000000L);
+
+        final JsonObject frame = new JsonObject();
+        frame.addProperty("identifier", channel.toIdentifier());
+        frame.add("message", message);
+        broadcast = frame.toString();
+
+        ping = "{\"type\":\"ping\",\"message\":1500000000}";
+    }
+
+    @Benchmark
+    public Message broadcast() {
+        return Codec.GSON.decode(broadcast);
+    }
+
+    @Benchmark
+    public Message ping() {
+        return Codec.GSON.decode(ping);
+    }
+}
@@ -0,0 +1,52 @@
+package com.hosopy.actioncable;
+
+import com.hosopy.actioncable.annotation.Data;
+import com.hosopy.actioncable.annotation.Perform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invocation of a {@link Perform} method through the subscription proxy, up to the encoded command.
+ * <p/>
+ * <p>The consumer is not connected, so nothing is sent and only the client side cost is measured.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PerformBenchmark {
+
+    public interface ChatSubscription extends Subscription {
+        @Perform("join")
+        void join();
+
+        @Perform("send_message")
+        void sendMessage(@Data("body") String body, @Data("private") boolean isPrivate);
+    }
+
+    private ChatSubscription subscription;
+
+    @Setup
+    public void setUp() {
+        final Consumer consumer = ActionCable.createConsumer(URI.create("ws://localhost:28080"));
+        subscription = consumer.getSubscriptions().create(new Channel("ChatChannel"), ChatSubscription.class);
+    }
+
+    @Benchmark
+    public void performWithoutData() {
+        subscription.join();
+    }
+
+    @Benchmark
+    public void performWithData() {
+        subscription.sendMessage("Hello", true);
+    }
+}
@@ -0,0 +1,66 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch of a received message by {@link Subscriptions#notifyReceived(String, JsonElement)}
+ * to one subscription among many.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SubscriptionsBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int subscriptionCount;
+
+    private Subscriptions subscriptions;
+
+    private String identifier;
+
+    private JsonElement data;
+
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+
+        // Never connected, so that creating subscriptions sends nothing
+        final Consumer consumer = ActionCable.createConsumer(URI.create("ws://localhost:28080"));
+        subscriptions = consumer.getSubscriptions();
+        for (int i = 0; i < subscriptionCount; i++) {
+            final Channel channel = new Channel("BenchmarkChannel");
+            channel.addParam("id", i);
+            final Subscription subscription = subscriptions.create(channel).onReceived(new Subscription.ReceivedCallback() {
+                @Override
+                public void call(JsonElement data) {
+                    SubscriptionsBenchmark.this.blackhole.consume(data);
+                }
+            });
+            if (i == subscriptionCount / 2) {
+                identifier = subscription.getIdentifier();
+            }
+        }
+        data = new JsonPrimitive("Hello");
+    }
+
+    @Benchmark
+    public void notifyReceived() {
+        subscriptions.notifyReceived(identifier, data);
+    }
+}
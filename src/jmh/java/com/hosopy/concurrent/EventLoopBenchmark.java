@@ -0,0 +1,47 @@
+package com.hosopy.concurrent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link EventLoop#post(Runnable)}, from posting a batch of tasks until the last one has run.
+ * <p/>
+ * <p>The loop thread is released once idle, so each batch also pays for starting it again.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EventLoopBenchmark {
+
+    private static final int BATCH = 1000;
+
+    private static final Runnable NOOP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void post() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < BATCH - 1; i++) {
+            EventLoop.post(NOOP);
+        }
+        EventLoop.post(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        done.await();
+    }
+}
@@ -0,0 +1,278 @@
+package com.hosopy.actioncable.loadgen;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.hosopy.actioncable.ActionCable;
+import com.hosopy.actioncable.Channel;
+import com.hosopy.actioncable.Consumer;
+import com.hosopy.actioncable.Subscription;
+import com.hosopy.actioncable.transport.FragmentedText;
+import com.hosopy.actioncable.transport.Transport;
+import com.hosopy.concurrent.WheelTimer;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A simulated client: one {@link Consumer} and its subscriptions.
+ * <p/>
+ * <p>Only counters are kept per client, distributions go to the shared histograms of the {@link Report},
+ * so that tens of thousands of clients fit in one JVM.</p>
+ */
+/*package*/ class Client {
+
+    /**
+     * Key of the timestamp carried by performs, echoed back by the server to measure the round trip
+     */
+    /*package*/ static final String SENT_AT = "loadgen_sent_at";
+
+    private final int id;
+
+    private final LoadGenerator.Options options;
+
+    private final Report report;
+
+    private final Consumer consumer;
+
+    private final List<Subscription> subscriptions = new ArrayList<Subscription>();
+
+    private final AtomicInteger confirmed = new AtomicInteger(0);
+
+    private final AtomicLong received = new AtomicLong(0);
+
+    private final AtomicLong performed = new AtomicLong(0);
+
+    private final AtomicLong rttSum = new AtomicLong(0); // nanoseconds
+
+    private final AtomicLong rttCount = new AtomicLong(0);
+
+    private volatile long startedAt; // nanoseconds
+
+    private volatile long openedAt; // nanoseconds, 0 until open
+
+    private volatile long confirmedAt; // nanoseconds, 0 until all subscriptions are confirmed
+
+    private volatile long stoppedAt; // nanoseconds, 0 until stopped
+
+    private volatile boolean failed = false;
+
+    private volatile boolean stopped = false;
+
+    private WheelTimer.Timeout performTimeout;
+
+    /*package*/ Client(int id, LoadGenerator.Options options, Transport.Factory transportFactory, Report report) {
+        this.id = id;
+        this.options = options;
+        this.report = report;
+
+        final Consumer.Options consumerOptions = new Consumer.Options();
+        consumerOptions.headers = options.headers;
+        consumerOptions.reconnection = false;
+        consumerOptions.transportFactory = new TimedFactory(transportFactory);
+        consumer = ActionCable.createConsumer(options.uri, consumerOptions);
+
+        for (int i = 0; i < options.subscriptions; i++) {
+            final Channel channel = new Channel(options.channel);
+            channel.addParam("id", i);
+            subscriptions.add(consumer.getSubscriptions().create(channel)
+                    .onConnected(new Subscription.ConnectedCallback() {
+                        @Override
+                        public void call() {
+                            onConfirmed();
+                        }
+                    })
+                    .onRejected(new Subscription.RejectedCallback() {
+                        @Override
+                        public void call() {
+                            failed = true;
+                        }
+                    })
+                    .onReceived(new Subscription.ReceivedCallback() {
+                        @Override
+                        public void call(JsonElement data) {
+                            onReceived(data);
+                        }
+                    }));
+        }
+    }
+
+    /*package*/ void start() {
+        startedAt = System.nanoTime();
+        consumer.connect();
+    }
+
+    /*package*/ void stop() {
+        synchronized (this) {
+            stopped = true;
+            if (performTimeout != null) {
+                performTimeout.cancel();
+                performTimeout = null;
+            }
+        }
+        stoppedAt = System.nanoTime();
+        consumer.disconnect();
+    }
+
+    /*package*/ int getId() {
+        return id;
+    }
+
+    /*package*/ boolean isConnected() {
+        return openedAt != 0;
+    }
+
+    /*package*/ boolean isConfirmed() {
+        return confirmedAt != 0;
+    }
+
+    /*package*/ boolean isFailed() {
+        return failed;
+    }
+
+    /*package*/ long getConnectNanos() {
+        return openedAt != 0 ? openedAt - startedAt : -1;
+    }
+
+    /*package*/ long getConfirmNanos() {
+        return confirmedAt != 0 ? confirmedAt - startedAt : -1;
+    }
+
+    /*package*/ long getReceived() {
+        return received.get();
+    }
+
+    /*package*/ long getPerformed() {
+        return performed.get();
+    }
+
+    /**
+     * @return Messages per second since all subscriptions have been confirmed
+     */
+    /*package*/ double getMessageRate() {
+        final long from = confirmedAt;
+        if (from == 0) {
+            return 0;
+        }
+        final long until = stoppedAt != 0 ? stoppedAt : System.nanoTime();
+        return until > from ? received.get() * (double) TimeUnit.SECONDS.toNanos(1) / (until - from) : 0;
+    }
+
+    /**
+     * @return Mean round trip of performs in nanoseconds, -1 if none came back
+     */
+    /*package*/ long getMeanRttNanos() {
+        final long count = rttCount.get();
+        return count > 0 ? rttSum.get() / count : -1;
+    }
+
+    private void onConfirmed() {
+        if (confirmed.incrementAndGet() == options.subscriptions) {
+            confirmedAt = System.nanoTime();
+            report.recordConfirm(confirmedAt - startedAt);
+            schedulePerform();
+        }
+    }
+
+    private void onReceived(JsonElement data) {
+        received.incrementAndGet();
+        report.recordReceived();
+
+        if (data.isJsonObject()) {
+            final JsonElement sentAt = data.getAsJsonObject().get(SENT_AT);
+            if (sentAt != null) {
+                final long rtt = System.nanoTime() - sentAt.getAsLong();
+                rttSum.addAndGet(rtt);
+                rttCount.incrementAndGet();
+                report.recordRtt(rtt);
+            }
+        }
+    }
+
+    private synchronized void schedulePerform() {
+        if (stopped || options.performRate <= 0 || subscriptions.isEmpty()) {
+            return;
+        }
+        final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / options.performRate);
+        performTimeout = WheelTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                perform();
+                schedulePerform();
+            }
+        }, interval, TimeUnit.NANOSECONDS);
+    }
+
+    private void perform() {
+        final long count = performed.getAndIncrement();
+        final JsonObject data = new JsonObject();
+        data.addProperty(SENT_AT, System.nanoTime());
+        subscriptions.get((int) (count % subscriptions.size())).perform(options.performAction, data);
+        report.recordPerformed();
+    }
+
+    /**
+     * Notes when the handshake completes, shared by all clients apart from this thin wrapper.
+     */
+    private class TimedFactory implements Transport.Factory {
+
+        private final Transport.Factory delegate;
+
+        TimedFactory(Transport.Factory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Transport open(URI uri, Map<String, String> headers, final Transport.Listener listener) {
+            return delegate.open(uri, headers, new Transport.Listener() {
+                @Override
+                public void onOpen(Transport transport) {
+                    if (openedAt == 0) {
+                        openedAt = System.nanoTime();
+                        report.recordConnect(openedAt - startedAt);
+                    }
+                    listener.onOpen(transport);
+                }
+
+                @Override
+                public void onMessage(Transport transport, String text) {
+                    listener.onMessage(transport, text);
+                }
+
+                @Override
+                public void onMessage(Transport transport, FragmentedText text) {
+                    listener.onMessage(transport, text);
+                }
+
+                @Override
+                public void onMessage(Transport transport, ByteBuffer bytes) {
+                    listener.onMessage(transport, bytes);
+                }
+
+                @Override
+                public void onClosing(Transport transport, int code, String reason) {
+                    listener.onClosing(transport, code, reason);
+                }
+
+                @Override
+                public void onClosed(Transport transport, int code, String reason) {
+                    listener.onClosed(transport, code, reason);
+                }
+
+                @Override
+                public void onFailure(Transport transport, Throwable t, int statusCode) {
+                    if (!stopped) {
+                        failed = true;
+                        report.recordFailure();
+                    }
+                    listener.onFailure(transport, t, statusCode);
+                }
+            });
+        }
+    }
+}
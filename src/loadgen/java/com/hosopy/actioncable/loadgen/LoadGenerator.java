@@ -0,0 +1,237 @@
+package com.hosopy.actioncable.loadgen;
+
+import com.hosopy.actioncable.Connection;
+import com.hosopy.actioncable.transport.JdkWebSocketTransport;
+import com.hosopy.actioncable.transport.NettyTransport;
+import com.hosopy.actioncable.transport.OkHttpTransport;
+import com.hosopy.actioncable.transport.Transport;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load generator for ActionCable servers, built on {@link com.hosopy.actioncable.Consumer}.
+ * <p/>
+ * <p>Starts {@link Options#clients} consumers evenly over {@link Options#rampUp}, each subscribing to
+ * {@link Options#subscriptions} channels and performing {@link Options#performAction} at {@link Options#performRate}.
+ * Connect time, confirm time, received messages and the round trip of performs echoed back by the server
+ * are recorded per client and summarized in a {@link Report}.</p>
+ * <pre>{@code
+ * java com.hosopy.actioncable.loadgen.LoadGenerator ws://localhost:3000/cable --clients=10000 --ramp-up=60 \
+ *     --subscriptions=2 --channel=ChatChannel --perform-rate=0.5 --duration=300 --clients-csv=clients.csv
+ * }</pre>
+ *
+ * @author hosopy
+ */
+public class LoadGenerator {
+
+    public static class Options {
+        public URI uri;
+        /**
+         * Number of simulated clients
+         */
+        public int clients = 100;
+        /**
+         * Clients are started evenly over this period
+         */
+        public long rampUp = 10;
+        /**
+         * How long the load is held once all clients are started
+         */
+        public long duration = 60;
+        public TimeUnit timeUnit = TimeUnit.SECONDS;
+        /**
+         * Channel subscribed by every client, with an "id" param from 0 to subscriptions - 1
+         */
+        public String channel = "LoadChannel";
+        /**
+         * Subscriptions per client
+         */
+        public int subscriptions = 1;
+        /**
+         * Performs per second per client, 0 to disable
+         * <p/>
+         * <p>The data of each perform carries {@code loadgen_sent_at}. If the server transmits it back,
+         * the round trip is recorded.</p>
+         */
+        public double performRate = 0;
+        public String performAction = "echo";
+        /**
+         * "netty" (default when Netty is on the classpath), "okhttp" or "jdk"
+         */
+        public String transport;
+        /**
+         * Event loops of the Netty transport, 0 for Netty's default
+         */
+        public int threads = 0;
+        public Map<String, String> headers;
+        /**
+         * Overrides {@link #transport}, e.g. with a {@link com.hosopy.actioncable.loopback.LoopbackServer}
+         */
+        public Transport.Factory transportFactory;
+    }
+
+    private final Options options;
+
+    public LoadGenerator(Options options) {
+        this.options = options;
+    }
+
+    /**
+     * Run the load and wait until it is over.
+     *
+     * @return {@link Report} of the run
+     * @throws InterruptedException if interrupted while running
+     */
+    public Report run() throws InterruptedException {
+        final Report report = new Report();
+        final Transport.Factory transportFactory = createTransportFactory();
+
+        final List<Client> clients = new ArrayList<Client>(options.clients);
+        for (int i = 0; i < options.clients; i++) {
+            clients.add(new Client(i, options, transportFactory, report));
+        }
+
+        report.start(clients);
+        try {
+            final long rampUpNanos = options.timeUnit.toNanos(options.rampUp);
+            final long startedAt = System.nanoTime();
+            for (int i = 0; i < clients.size(); i++) {
+                final long due = startedAt + rampUpNanos * i / clients.size();
+                final long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                clients.get(i).start();
+            }
+            options.timeUnit.sleep(options.duration);
+        } finally {
+            report.finish();
+            for (Client client : clients) {
+                client.stop();
+            }
+            if (transportFactory instanceof NettyTransport.Factory) {
+                ((NettyTransport.Factory) transportFactory).shutdown();
+            }
+        }
+        return report;
+    }
+
+    private Transport.Factory createTransportFactory() {
+        if (options.transportFactory != null) {
+            return options.transportFactory;
+        }
+
+        final Connection.Options connectionOptions = new Connection.Options();
+        final String transport = options.transport != null ? options.transport : (isNettyAvailable() ? "netty" : "okhttp");
+        if ("netty".equals(transport)) {
+            return new NettyTransport.Factory(connectionOptions, options.threads);
+        } else if ("jdk".equals(transport)) {
+            return new JdkWebSocketTransport.Factory(connectionOptions);
+        } else if ("okhttp".equals(transport)) {
+            return new OkHttpTransport.Factory(connectionOptions);
+        }
+        throw new IllegalArgumentException("Unknown transport: " + transport);
+    }
+
+    private static boolean isNettyAvailable() {
+        try {
+            Class.forName("io.netty.channel.Channel");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parse command line arguments: the URI followed by {@code --name=value} options.
+     *
+     * @param args Arguments
+     * @return {@link Options} instance
+     * @throws IllegalArgumentException if an argument is unknown or invalid
+     */
+    public static Options parse(String[] args) {
+        final Options options = new Options();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                options.uri = URI.create(arg);
+                continue;
+            }
+            final int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value: " + arg);
+            }
+            final String name = arg.substring(2, separator);
+            final String value = arg.substring(separator + 1);
+            if ("clients".equals(name)) {
+                options.clients = Integer.parseInt(value);
+            } else if ("ramp-up".equals(name)) {
+                options.rampUp = Long.parseLong(value);
+            } else if ("duration".equals(name)) {
+                options.duration = Long.parseLong(value);
+            } else if ("channel".equals(name)) {
+                options.channel = value;
+            } else if ("subscriptions".equals(name)) {
+                options.subscriptions = Integer.parseInt(value);
+            } else if ("perform-rate".equals(name)) {
+                options.performRate = Double.parseDouble(value);
+            } else if ("perform-action".equals(name)) {
+                options.performAction = value;
+            } else if ("transport".equals(name)) {
+                options.transport = value;
+            } else if ("threads".equals(name)) {
+                options.threads = Integer.parseInt(value);
+            } else if ("header".equals(name)) {
+                final int colon = value.indexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("Expected --header=Name:Value: " + arg);
+                }
+                if (options.headers == null) {
+                    options.headers = new LinkedHashMap<String, String>();
+                }
+                options.headers.put(value.substring(0, colon).trim(), value.substring(colon + 1).trim());
+            } else if (!"clients-csv".equals(name)) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (options.uri == null) {
+            throw new IllegalArgumentException("URI is required");
+        }
+        return options;
+    }
+
+    public static void main(String[] args) throws InterruptedException, FileNotFoundException {
+        final Options options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: LoadGenerator <uri> [--clients=100] [--ramp-up=10] [--duration=60] [--channel=LoadChannel]"
+                    + " [--subscriptions=1] [--perform-rate=0] [--perform-action=echo] [--transport=netty|okhttp|jdk]"
+                    + " [--threads=0] [--header=Name:Value] [--clients-csv=path]");
+            System.exit(2);
+            return;
+        }
+
+        final Report report = new LoadGenerator(options).run();
+        report.print(System.out);
+
+        for (String arg : args) {
+            if (arg.startsWith("--clients-csv=")) {
+                final PrintStream out = new PrintStream(arg.substring("--clients-csv=".length()));
+                try {
+                    report.printClients(out);
+                } finally {
+                    out.close();
+                }
+            }
+        }
+        System.exit(0);
+    }
+}
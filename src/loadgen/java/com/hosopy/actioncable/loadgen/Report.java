@@ -0,0 +1,168 @@
+package com.hosopy.actioncable.loadgen;
+
+import com.hosopy.util.Histogram;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of a {@link LoadGenerator} run.
+ * <p/>
+ * <p>Times are recorded in nanoseconds and reported in milliseconds.</p>
+ *
+ * @author hosopy
+ */
+public class Report {
+
+    private static final double MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Histogram connectTimes = new Histogram();
+
+    private final Histogram confirmTimes = new Histogram();
+
+    private final Histogram rtts = new Histogram();
+
+    private final AtomicLong received = new AtomicLong(0);
+
+    private final AtomicLong performed = new AtomicLong(0);
+
+    private final AtomicLong failures = new AtomicLong(0);
+
+    private List<Client> clients = Collections.emptyList();
+
+    private long startedAt; // nanoseconds
+
+    private long finishedAt; // nanoseconds
+
+    /*package*/ Report() {
+    }
+
+    /**
+     * Time from connect() to the completed handshake, one value per client.
+     *
+     * @return Histogram in nanoseconds
+     */
+    public Histogram getConnectTimes() {
+        return connectTimes;
+    }
+
+    /**
+     * Time from connect() until all subscriptions of a client are confirmed, one value per client.
+     *
+     * @return Histogram in nanoseconds
+     */
+    public Histogram getConfirmTimes() {
+        return confirmTimes;
+    }
+
+    /**
+     * Round trip of performs echoed back by the server.
+     *
+     * @return Histogram in nanoseconds
+     */
+    public Histogram getRtts() {
+        return rtts;
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getPerformed() {
+        return performed.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public int getClients() {
+        return clients.size();
+    }
+
+    /**
+     * Messages received per second by all clients, over the whole run.
+     *
+     * @return Messages per second
+     */
+    public double getMessageRate() {
+        final long elapsed = finishedAt - startedAt;
+        return elapsed > 0 ? received.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed : 0;
+    }
+
+    /**
+     * Print the summary.
+     *
+     * @param out Stream to print to
+     */
+    public void print(PrintStream out) {
+        int connected = 0;
+        int confirmed = 0;
+        int failed = 0;
+        for (Client client : clients) {
+            connected += client.isConnected() ? 1 : 0;
+            confirmed += client.isConfirmed() ? 1 : 0;
+            failed += client.isFailed() ? 1 : 0;
+        }
+
+        out.println(String.format(Locale.US, "clients=%d connected=%d confirmed=%d failed=%d failures=%d duration=%.1fs",
+                clients.size(), connected, confirmed, failed, failures.get(), (finishedAt - startedAt) / (MILLIS * 1000)));
+        out.println("connect(ms): " + connectTimes.toString(MILLIS));
+        out.println("confirm(ms): " + confirmTimes.toString(MILLIS));
+        out.println(String.format(Locale.US, "received=%d rate=%.1f msg/s (%.2f msg/s per client) performed=%d",
+                received.get(), getMessageRate(), clients.isEmpty() ? 0 : getMessageRate() / clients.size(), performed.get()));
+        out.println("rtt(ms): " + rtts.toString(MILLIS));
+    }
+
+    /**
+     * Print one CSV line per client.
+     *
+     * @param out Stream to print to
+     */
+    public void printClients(PrintStream out) {
+        out.println("client,connect_ms,confirm_ms,received,rate_msg_s,performed,rtt_mean_ms,failed");
+        for (Client client : clients) {
+            out.println(String.format(Locale.US, "%d,%.3f,%.3f,%d,%.2f,%d,%.3f,%b",
+                    client.getId(), client.getConnectNanos() / MILLIS, client.getConfirmNanos() / MILLIS,
+                    client.getReceived(), client.getMessageRate(), client.getPerformed(),
+                    client.getMeanRttNanos() / MILLIS, client.isFailed()));
+        }
+    }
+
+    /*package*/ void start(List<Client> clients) {
+        this.clients = clients;
+        this.startedAt = System.nanoTime();
+    }
+
+    /*package*/ void finish() {
+        this.finishedAt = System.nanoTime();
+    }
+
+    /*package*/ void recordConnect(long nanos) {
+        connectTimes.record(nanos);
+    }
+
+    /*package*/ void recordConfirm(long nanos) {
+        confirmTimes.record(nanos);
+    }
+
+    /*package*/ void recordRtt(long nanos) {
+        rtts.record(nanos);
+    }
+
+    /*package*/ void recordReceived() {
+        received.incrementAndGet();
+    }
+
+    /*package*/ void recordPerformed() {
+        performed.incrementAndGet();
+    }
+
+    /*package*/ void recordFailure() {
+        failures.incrementAndGet();
+    }
+}
@@ -0,0 +1,439 @@
+package com.hosopy.actioncable.loopback;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.hosopy.actioncable.transport.Transport;
+import com.hosopy.concurrent.WheelTimer;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An embedded stand-in for an ActionCable server, connected through {@link LoopbackTransport}.
+ * <p/>
+ * <p>It speaks enough of the protocol to drive a {@link com.hosopy.actioncable.Consumer} end to end without the
+ * network stack: welcome, ping, subscription confirm/reject, broadcast to identifiers and echo of perform.
+ * Meant for benchmarks and tests.</p>
+ * <pre>{@code
+ * LoopbackServer server = new LoopbackServer(new LoopbackServer.Options());
+ * Consumer.Options options = new Consumer.Options();
+ * options.transportFactory = server.getTransportFactory();
+ * Consumer consumer = ActionCable.createConsumer(URI.create("loopback://cable"), options);
+ * // ...
+ * server.broadcast(identifier, message);
+ * LoopbackServer.Broadcast broadcast = server.startBroadcast(identifier, 10000, 256); // 10k msg/s of 256 bytes
+ * }</pre>
+ *
+ * @author hosopy
+ */
+public class LoopbackServer {
+
+    public static class Options {
+        /**
+         * Interval of ping messages, 0 to disable
+         */
+        public long pingInterval = 3;
+        public TimeUnit pingTimeUnit = TimeUnit.SECONDS;
+        /**
+         * Threads delivering frames in both directions
+         */
+        public int threads = 2;
+        /**
+         * Whether a perform is transmitted back to the subscription that sent it
+         */
+        public boolean echoPerform = true;
+        /**
+         * Channel names (e.g. "ChatChannel") whose subscriptions are rejected
+         */
+        public Set<String> rejectedChannels = new HashSet<String>();
+    }
+
+    /**
+     * A handle of a running {@link #startBroadcast(String, int, int)}.
+     */
+    public class Broadcast {
+
+        private final String identifier;
+
+        private final int messagesPerSecond;
+
+        private final String payload;
+
+        private final long startedAt = System.nanoTime();
+
+        private final AtomicLong sent = new AtomicLong(0);
+
+        private volatile boolean stopped = false;
+
+        private WheelTimer.Timeout timeout;
+
+        private Broadcast(String identifier, int messagesPerSecond, int payloadSize) {
+            this.identifier = identifier;
+            this.messagesPerSecond = messagesPerSecond;
+            this.payload = new String(new char[payloadSize]).replace('\0', 'x');
+        }
+
+        /**
+         * Stop broadcasting.
+         */
+        public synchronized void stop() {
+            stopped = true;
+            broadcasts.remove(this);
+            if (timeout != null) {
+                timeout.cancel();
+                timeout = null;
+            }
+        }
+
+        /**
+         * Return the number of messages broadcast so far.
+         *
+         * @return Messages, each of them delivered to every subscriber
+         */
+        public long getSent() {
+            return sent.get();
+        }
+
+        private synchronized void schedule() {
+            if (stopped) {
+                return;
+            }
+            timeout = WheelTimer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    // Timer tasks must not block
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            tick();
+                        }
+                    });
+                }
+            }, BROADCAST_TICK, TimeUnit.MILLISECONDS);
+        }
+
+        private void tick() {
+            if (stopped) {
+                return;
+            }
+            final long due = (System.nanoTime() - startedAt) * messagesPerSecond / TimeUnit.SECONDS.toNanos(1);
+            while (sent.get() < due && !stopped) {
+                final JsonObject message = new JsonObject();
+                message.addProperty("seq", sent.getAndIncrement());
+                message.addProperty("sent_at", System.currentTimeMillis());
+                message.addProperty("payload", payload);
+                broadcast(identifier, message);
+            }
+            schedule();
+        }
+    }
+
+    private static final long BROADCAST_TICK = 10; // milliseconds
+
+    private static final AtomicInteger SERVER_COUNT = new AtomicInteger(0);
+
+    private final Options options;
+
+    private final ExecutorService executor;
+
+    private final Set<LoopbackTransport> connections = Collections.newSetFromMap(new ConcurrentHashMap<LoopbackTransport, Boolean>());
+
+    /**
+     * Transports whose client has not been told about the end of the connection yet
+     */
+    private final Set<LoopbackTransport> live = Collections.newSetFromMap(new ConcurrentHashMap<LoopbackTransport, Boolean>());
+
+    private final ConcurrentHashMap<String, Set<LoopbackTransport>> subscribers = new ConcurrentHashMap<String, Set<LoopbackTransport>>();
+
+    private final Set<Broadcast> broadcasts = Collections.newSetFromMap(new ConcurrentHashMap<Broadcast, Boolean>());
+
+    private final JsonParser parser = new JsonParser();
+
+    private final Transport.Factory transportFactory = new LoopbackTransport.Factory(this);
+
+    private WheelTimer.Timeout pingTimeout;
+
+    private boolean closed = false;
+
+    public LoopbackServer(Options options) {
+        this.options = options;
+
+        final String name = "LoopbackServer-" + SERVER_COUNT.incrementAndGet();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, options.threads), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(@SuppressWarnings("NullableProblems") Runnable runnable) {
+                final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        schedulePing();
+    }
+
+    /**
+     * Return the factory to set to {@link com.hosopy.actioncable.Connection.Options#transportFactory}.
+     * <p/>
+     * <p>The URI of the consumer is ignored, every transport connects to this server.</p>
+     *
+     * @return Factory of {@link LoopbackTransport}
+     */
+    public Transport.Factory getTransportFactory() {
+        return transportFactory;
+    }
+
+    /**
+     * Broadcast a message to the subscribers of an identifier.
+     *
+     * @param identifier Identifier of the subscription, see {@link com.hosopy.actioncable.Subscription#getIdentifier()}
+     * @param message    Message to broadcast
+     * @return The number of subscribers the message has been transmitted to
+     */
+    public int broadcast(String identifier, JsonElement message) {
+        final Set<LoopbackTransport> transports = subscribers.get(identifier);
+        if (transports == null || transports.isEmpty()) {
+            return 0;
+        }
+        // Encoded once for all subscribers
+        final String frame = frame(identifier, message);
+        int count = 0;
+        for (LoopbackTransport transport : transports) {
+            // Waits for a subscribe in progress, so that the confirmation is transmitted first
+            synchronized (transport) {
+                transport.transmit(frame);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Broadcast messages to the subscribers of an identifier at a steady rate until stopped.
+     * <p/>
+     * <p>Each message is a JSON object with {@code seq}, {@code sent_at} (milliseconds since the epoch)
+     * and a {@code payload} string of {@code payloadSize} characters.</p>
+     *
+     * @param identifier        Identifier of the subscription
+     * @param messagesPerSecond Rate of messages
+     * @param payloadSize       Length of the payload
+     * @return {@link Broadcast} handle to stop broadcasting
+     */
+    public Broadcast startBroadcast(String identifier, int messagesPerSecond, int payloadSize) {
+        final Broadcast broadcast = new Broadcast(identifier, messagesPerSecond, payloadSize);
+        broadcasts.add(broadcast);
+        broadcast.schedule();
+        return broadcast;
+    }
+
+    /**
+     * Start the closing handshake of every connection, as a server restart would.
+     *
+     * @param code   Close code
+     * @param reason Close reason, may be null
+     */
+    public void disconnectAll(int code, String reason) {
+        for (LoopbackTransport transport : connections) {
+            transport.disconnect(code, reason);
+        }
+    }
+
+    /**
+     * Return the number of open connections.
+     *
+     * @return Connections
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Return the number of confirmed subscriptions to an identifier.
+     *
+     * @param identifier Identifier of the subscription
+     * @return Subscribers
+     */
+    public int getSubscriberCount(String identifier) {
+        final Set<LoopbackTransport> transports = subscribers.get(identifier);
+        return transports != null ? transports.size() : 0;
+    }
+
+    /**
+     * Stop broadcasting and pinging, close every connection and release the threads.
+     * <p/>
+     * <p>The threads are released once every client has completed its closing handshake or canceled its transport,
+     * so that the client is still told about the end of the connection.</p>
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (pingTimeout != null) {
+                pingTimeout.cancel();
+                pingTimeout = null;
+            }
+        }
+        for (Broadcast broadcast : broadcasts) {
+            broadcast.stop();
+        }
+        disconnectAll(1001, "server closed");
+        shutdownIfIdle();
+    }
+
+    /*package*/ ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /*package*/ void accept(LoopbackTransport transport) {
+        live.add(transport);
+        connections.add(transport);
+        transport.fireOpen();
+
+        final JsonObject welcome = new JsonObject();
+        welcome.addProperty("type", "welcome");
+        transport.transmit(welcome.toString());
+    }
+
+    /**
+     * Called once the client of a transport has been told about the end of the connection.
+     */
+    /*package*/ void terminate(LoopbackTransport transport) {
+        live.remove(transport);
+        shutdownIfIdle();
+    }
+
+    private void shutdownIfIdle() {
+        synchronized (this) {
+            if (!closed || !live.isEmpty()) {
+                return;
+            }
+        }
+        executor.shutdown();
+    }
+
+    /*package*/ void remove(LoopbackTransport transport) {
+        connections.remove(transport);
+        for (String identifier : transport.identifiers) {
+            unsubscribe(transport, identifier);
+        }
+    }
+
+    /**
+     * Handle a command of a client, called in order for each transport.
+     */
+    /*package*/ void receive(LoopbackTransport transport, String text) {
+        final JsonObject command;
+        final String identifier;
+        try {
+            command = parser.parse(text).getAsJsonObject();
+            identifier = command.get("identifier").getAsString();
+        } catch (RuntimeException e) {
+            // Ignored like ActionCable does, after logging
+            return;
+        }
+
+        final String type = command.has("command") ? command.get("command").getAsString() : null;
+        if ("subscribe".equals(type)) {
+            subscribe(transport, identifier);
+        } else if ("unsubscribe".equals(type)) {
+            unsubscribe(transport, identifier);
+        } else if ("message".equals(type)) {
+            if (options.echoPerform && transport.identifiers.contains(identifier) && command.has("data")) {
+                try {
+                    transport.transmit(frame(identifier, parser.parse(command.get("data").getAsString())));
+                } catch (JsonParseException ignored) {
+                }
+            }
+        }
+    }
+
+    private void subscribe(LoopbackTransport transport, String identifier) {
+        if (transport.identifiers.contains(identifier)) {
+            // ActionCable ignores a duplicate subscription without confirming it again
+            return;
+        }
+        if (isRejected(identifier)) {
+            transport.transmit(typed("reject_subscription", identifier));
+            return;
+        }
+
+        Set<LoopbackTransport> transports = subscribers.get(identifier);
+        if (transports == null) {
+            final Set<LoopbackTransport> created = Collections.newSetFromMap(new ConcurrentHashMap<LoopbackTransport, Boolean>());
+            transports = subscribers.putIfAbsent(identifier, created);
+            if (transports == null) {
+                transports = created;
+            }
+        }
+        transport.identifiers.add(identifier);
+        // Joined before confirming, so that a broadcast made once the client sees the confirmation reaches it.
+        // Broadcasts lock the transport, so that none of them arrives ahead of the confirmation.
+        synchronized (transport) {
+            transports.add(transport);
+            transport.transmit(typed("confirm_subscription", identifier));
+        }
+    }
+
+    private void unsubscribe(LoopbackTransport transport, String identifier) {
+        transport.identifiers.remove(identifier);
+        final Set<LoopbackTransport> transports = subscribers.get(identifier);
+        if (transports != null) {
+            transports.remove(transport);
+        }
+    }
+
+    private boolean isRejected(String identifier) {
+        if (options.rejectedChannels.isEmpty()) {
+            return false;
+        }
+        try {
+            final JsonElement channel = parser.parse(identifier).getAsJsonObject().get("channel");
+            return channel != null && options.rejectedChannels.contains(channel.getAsString());
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    private synchronized void schedulePing() {
+        if (closed || options.pingInterval <= 0) {
+            return;
+        }
+        pingTimeout = WheelTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                final JsonObject ping = new JsonObject();
+                ping.addProperty("type", "ping");
+                ping.addProperty("message", TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+                final String frame = ping.toString();
+                for (LoopbackTransport transport : connections) {
+                    transport.transmit(frame);
+                }
+                schedulePing();
+            }
+        }, options.pingInterval, options.pingTimeUnit);
+    }
+
+    private static String frame(String identifier, JsonElement message) {
+        final JsonObject frame = new JsonObject();
+        frame.addProperty("identifier", identifier);
+        frame.add("message", message);
+        return frame.toString();
+    }
+
+    private static String typed(String type, String identifier) {
+        final JsonObject frame = new JsonObject();
+        frame.addProperty("identifier", identifier);
+        frame.addProperty("type", type);
+        return frame.toString();
+    }
+}
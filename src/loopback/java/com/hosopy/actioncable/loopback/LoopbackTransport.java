@@ -0,0 +1,280 @@
+package com.hosopy.actioncable.loopback;
+
+import com.hosopy.actioncable.transport.Transport;
+import com.hosopy.util.Utf8Utils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory {@link Transport} connected to a {@link LoopbackServer}, without any socket.
+ * <p/>
+ * <p>Frames are handed over through two queues, one per direction, each drained in order on the executor of the
+ * server. The listener is therefore never called from the thread that sends, which keeps the threading of
+ * {@link com.hosopy.actioncable.Connection} the same as with a real socket.</p>
+ *
+ * @author hosopy
+ * @see LoopbackServer#getTransportFactory()
+ */
+public class LoopbackTransport implements Transport {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /*package*/ static class Factory implements Transport.Factory {
+
+        private final LoopbackServer server;
+
+        /*package*/ Factory(LoopbackServer server) {
+            this.server = server;
+        }
+
+        @Override
+        public Transport open(URI uri, Map<String, String> headers, Listener listener) {
+            final LoopbackTransport transport = new LoopbackTransport(server, listener);
+            server.accept(transport);
+            return transport;
+        }
+    }
+
+    private final LoopbackServer server;
+
+    private final Listener listener;
+
+    private final SerialQueue toClient;
+
+    private final SerialQueue toServer;
+
+    private final AtomicBoolean closeSent = new AtomicBoolean(false);
+
+    private final AtomicBoolean terminated = new AtomicBoolean(false);
+
+    private final AtomicLong queueSize = new AtomicLong(0);
+
+    /**
+     * Identifiers subscribed on the server side, only touched by the server
+     */
+    /*package*/ final Set<String> identifiers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private volatile boolean open = false;
+
+    /**
+     * Close frame sent by the server, if the server has started the closing handshake
+     */
+    private volatile int serverCloseCode = -1;
+
+    private volatile String serverCloseReason;
+
+    private LoopbackTransport(LoopbackServer server, Listener listener) {
+        this.server = server;
+        this.listener = listener;
+        this.toClient = new SerialQueue(server.getExecutor());
+        this.toServer = new SerialQueue(server.getExecutor());
+    }
+
+    /**
+     * The server reads a binary frame as UTF-8 JSON, like a text frame.
+     */
+    @Override
+    public boolean send(ByteBuffer bytes) {
+        return send(UTF_8.decode(bytes).toString());
+    }
+
+    @Override
+    public boolean send(final String text) {
+        if (!open || closeSent.get() || terminated.get()) {
+            return false;
+        }
+        final long size = Utf8Utils.encodedLength(text);
+        if (queueSize.get() + size > Transport.MAX_QUEUE_SIZE) {
+            close(1001, null);
+            return false;
+        }
+        queueSize.addAndGet(size);
+        toServer.execute(new Runnable() {
+            @Override
+            public void run() {
+                queueSize.addAndGet(-size);
+                // Like ActionCable, commands arriving after the server started closing are dropped
+                if (!terminated.get() && serverCloseCode == -1) {
+                    server.receive(LoopbackTransport.this, text);
+                }
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean close(final int code, final String reason) {
+        if (!open || terminated.get() || !closeSent.compareAndSet(false, true)) {
+            return false;
+        }
+        toServer.execute(new Runnable() {
+            @Override
+            public void run() {
+                server.remove(LoopbackTransport.this);
+                if (serverCloseCode == -1) {
+                    // The server echoes the close frame
+                    fireClosing(code, reason);
+                    fireClosed(code, reason);
+                } else {
+                    fireClosed(serverCloseCode, serverCloseReason);
+                }
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public void cancel() {
+        server.remove(this);
+        toClient.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (terminated.compareAndSet(false, true)) {
+                    try {
+                        listener.onFailure(LoopbackTransport.this, new IOException("Canceled"), -1);
+                    } finally {
+                        server.terminate(LoopbackTransport.this);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public long queueSize() {
+        return queueSize.get();
+    }
+
+    /*package*/ void fireOpen() {
+        toClient.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!terminated.get()) {
+                    open = true;
+                    listener.onOpen(LoopbackTransport.this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Deliver a text frame from the server.
+     */
+    /*package*/ void transmit(final String frame) {
+        toClient.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!terminated.get()) {
+                    listener.onMessage(LoopbackTransport.this, frame);
+                }
+            }
+        });
+    }
+
+    /**
+     * Start the closing handshake from the server.
+     */
+    /*package*/ void disconnect(int code, String reason) {
+        serverCloseReason = reason;
+        serverCloseCode = code;
+        // In order with the commands already queued, so that none of them subscribes again after the removal
+        toServer.execute(new Runnable() {
+            @Override
+            public void run() {
+                server.remove(LoopbackTransport.this);
+            }
+        });
+        fireClosing(code, reason);
+    }
+
+    private void fireClosing(final int code, final String reason) {
+        toClient.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!terminated.get()) {
+                    listener.onClosing(LoopbackTransport.this, code, reason);
+                }
+            }
+        });
+    }
+
+    private void fireClosed(final int code, final String reason) {
+        toClient.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (terminated.compareAndSet(false, true)) {
+                    try {
+                        listener.onClosed(LoopbackTransport.this, code, reason);
+                    } finally {
+                        server.terminate(LoopbackTransport.this);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs tasks one at a time and in order on a shared executor.
+     */
+    private static class SerialQueue implements Runnable {
+
+        /**
+         * Yield the thread to other queues after this many tasks
+         */
+        private static final int BATCH_SIZE = 256;
+
+        private final Executor executor;
+
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        SerialQueue(Executor executor) {
+            this.executor = executor;
+        }
+
+        void execute(Runnable task) {
+            tasks.offer(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // The server has been closed
+                    tasks.clear();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Runnable task;
+                int count = 0;
+                while (count++ < BATCH_SIZE && (task = tasks.poll()) != null) {
+                    task.run();
+                }
+            } finally {
+                scheduled.set(false);
+                if (!tasks.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+}
@@ -23,6 +23,17 @@ public class ActionCable {
         return new Consumer(uri, options);
     }
 
+    /**
+     * Create a pool of {@link Consumer.Options#poolSize} consumers sharing the subscriptions.
+     *
+     * @param uri URI to connect
+     * @param options Options for each consumer
+     * @return {@link ConsumerPool} instance
+     */
+    public static ConsumerPool createConsumerPool(URI uri, Consumer.Options options) {
+        return new ConsumerPool(uri, options);
+    }
+
     /**
      * Create a consumer with uri.
      *
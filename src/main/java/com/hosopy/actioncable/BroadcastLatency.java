@@ -0,0 +1,88 @@
+package com.hosopy.actioncable;
+
+import com.hosopy.util.Histogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies from the server-side broadcast to the received callbacks of a channel, in nanoseconds.
+ * <p/>
+ * <p>Recorded for the messages carrying a timestamp read by {@link Consumer.Options#timestampExtractor}.
+ * The end-to-end latency is split into:</p>
+ * <ul>
+ * <li>network: from the server timestamp to the arrival of the frame, corrected by
+ * {@link ConnectionMonitor#getClockSkew(TimeUnit)} and only as accurate as that estimate</li>
+ * <li>queue wait: from the arrival of the frame to its dispatch on EventLoop</li>
+ * <li>callback: running the received callbacks of the channel, only the hand-off for isolated subscriptions</li>
+ * </ul>
+ *
+ * @author hosopy
+ */
+public class BroadcastLatency {
+
+    /**
+     * Track up to ten minutes within about 3%, the four histograms of a channel fit in about 36KB.
+     */
+    private static final long HIGHEST_TRACKABLE_VALUE = TimeUnit.MINUTES.toNanos(10);
+
+    private static final int PRECISION_BITS = 5;
+
+    private final String channel;
+
+    private final Histogram network = newHistogram();
+
+    private final Histogram queueWait = newHistogram();
+
+    private final Histogram callback = newHistogram();
+
+    private final Histogram endToEnd = newHistogram();
+
+    /*package*/ BroadcastLatency(String channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * @return Channel name
+     */
+    public String getChannel() {
+        return channel;
+    }
+
+    public Histogram getNetwork() {
+        return network;
+    }
+
+    public Histogram getQueueWait() {
+        return queueWait;
+    }
+
+    public Histogram getCallback() {
+        return callback;
+    }
+
+    public Histogram getEndToEnd() {
+        return endToEnd;
+    }
+
+    /*package*/ void record(long network, long queueWait, long callback) {
+        final long clampedNetwork = Math.max(0, network);
+        this.network.record(clampedNetwork);
+        this.queueWait.record(queueWait);
+        this.callback.record(callback);
+        this.endToEnd.record(clampedNetwork + queueWait + callback);
+    }
+
+    @Override
+    public String toString() {
+        final double millis = TimeUnit.MILLISECONDS.toNanos(1);
+        return channel + " (ms)"
+                + "\n  network:    " + network.toString(millis)
+                + "\n  queue wait: " + queueWait.toString(millis)
+                + "\n  callback:   " + callback.toString(millis)
+                + "\n  end-to-end: " + endToEnd.toString(millis);
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(HIGHEST_TRACKABLE_VALUE, PRECISION_BITS);
+    }
+}
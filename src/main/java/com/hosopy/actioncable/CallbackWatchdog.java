@@ -0,0 +1,141 @@
+package com.hosopy.actioncable;
+
+import com.hosopy.concurrent.WheelTimer;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the received callbacks run on EventLoop and reports those over budget.
+ * <p/>
+ * <p>A callback only costs a few volatile writes. While connected, a timer checks twice per budget whether
+ * the running callback is over budget. If so, it samples the stack of EventLoop and reports the callback right away,
+ * while it is still running, so that a hung callback is reported too. Reports are made on a thread of the watchdog,
+ * since EventLoop is blocked by the callback and timer tasks must not block.</p>
+ */
+/*package*/ class CallbackWatchdog {
+
+    private final Consumer consumer;
+
+    private final long budget; // nanoseconds
+
+    private final long pollInterval; // nanoseconds
+
+    // Written on EventLoop, read by the timer
+
+    private volatile Thread thread;
+
+    private volatile SubscriptionProxy<?> subscriptionProxy;
+
+    private volatile long run = 0;
+
+    private volatile long startedAt = 0; // nanoseconds, 0 while no callback is running
+
+    // Only accessed by the timer
+
+    private long reportedRun = 0;
+
+    private ThreadPoolExecutor reporter;
+
+    private WheelTimer.Timeout pollTimeout;
+
+    private boolean stopped = true;
+
+    /*package*/ CallbackWatchdog(Consumer consumer, long budget, TimeUnit unit) {
+        this.consumer = consumer;
+        this.budget = Math.max(1, unit.toNanos(budget));
+        this.pollInterval = Math.max(TimeUnit.MILLISECONDS.toNanos(10), this.budget / 2);
+    }
+
+    /*package*/ synchronized void start() {
+        if (stopped) {
+            stopped = false;
+            poll();
+        }
+    }
+
+    /*package*/ synchronized void stop() {
+        stopped = true;
+        if (pollTimeout != null) {
+            pollTimeout.cancel();
+            pollTimeout = null;
+        }
+    }
+
+    /**
+     * Called on EventLoop right before a received callback.
+     *
+     * @param subscriptionProxy Subscription of the callback
+     */
+    /*package*/ void begin(SubscriptionProxy<?> subscriptionProxy) {
+        thread = Thread.currentThread();
+        this.subscriptionProxy = subscriptionProxy;
+        run++;
+        startedAt = System.nanoTime();
+    }
+
+    /**
+     * Called on EventLoop right after a received callback, a slow one has already been reported.
+     */
+    /*package*/ void end() {
+        startedAt = 0;
+        subscriptionProxy = null;
+    }
+
+    private void poll() {
+        pollTimeout = WheelTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                check();
+                synchronized (CallbackWatchdog.this) {
+                    if (!stopped) {
+                        poll();
+                    }
+                }
+            }
+        }, pollInterval, TimeUnit.NANOSECONDS);
+    }
+
+    private void check() {
+        final long currentRun = run;
+        final long currentStartedAt = startedAt;
+        final SubscriptionProxy<?> currentSubscriptionProxy = subscriptionProxy;
+        if (currentStartedAt == 0 || currentSubscriptionProxy == null || reportedRun == currentRun) {
+            return;
+        }
+        final long duration = System.nanoTime() - currentStartedAt;
+        if (duration <= budget) {
+            return;
+        }
+        final StackTraceElement[] stackTrace = thread.getStackTrace();
+        // The callback may have returned meanwhile, then the sample belongs to another task
+        if (run != currentRun || startedAt != currentStartedAt) {
+            return;
+        }
+        reportedRun = currentRun;
+        report(currentSubscriptionProxy, duration, stackTrace);
+    }
+
+    private void report(final SubscriptionProxy<?> subscriptionProxy, final long duration, final StackTraceElement[] stackTrace) {
+        if (reporter == null) {
+            reporter = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(@SuppressWarnings("NullableProblems") Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "ActionCable-Watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            reporter.allowCoreThreadTimeOut(true);
+        }
+        reporter.execute(new Runnable() {
+            @Override
+            public void run() {
+                consumer.notifySlowCallback(subscriptionProxy, duration, stackTrace);
+            }
+        });
+    }
+}
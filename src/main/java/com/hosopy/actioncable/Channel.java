@@ -74,6 +74,11 @@ public class Channel {
         addParamInternal(key, value);
     }
 
+    /*package*/ String getName() {
+        final JsonElement name = params.get(KEY_CHANNEL);
+        return name.isJsonNull() ? null : name.getAsString();
+    }
+
     /*package*/ String toIdentifier() {
         synchronized (params) {
             if (identifier == null) {
@@ -0,0 +1,66 @@
+package com.hosopy.actioncable;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * Codec translates between WebSocket frames and the messages and commands of ActionCable.
+ * <p/>
+ * <p>Set it to {@link Consumer.Options#codec} to use another wire format than JSON, e.g. MessagePack on the server.
+ * Frames are decoded on EventLoop and commands encoded on the calling thread, so implementations must be thread-safe.
+ * Payloads are handed to the subscriptions as {@link com.google.gson.JsonElement}, so a codec of another format
+ * converts them.</p>
+ * <p/>
+ * <p>Commands are sent as binary frames when {@link #encodeBinary(Command)} returns one, as text frames otherwise.
+ * Like every frame passed between transports, connections and codecs, a ByteBuffer is never modified
+ * once passed on, so it may be retained.</p>
+ *
+ * @author hosopy
+ */
+public interface Codec {
+
+    /**
+     * Default codec, JSON with Gson.
+     */
+    Codec GSON = new GsonCodec();
+
+    /**
+     * Decode a text frame.
+     *
+     * @param text Text frame
+     * @return Message, or null to ignore the frame
+     */
+    Message decode(String text);
+
+    /**
+     * Decode a text frame received in several parts, without joining them first.
+     *
+     * @param text Text frame, read once
+     * @return Message, or null to ignore the frame
+     */
+    Message decode(Reader text);
+
+    /**
+     * Decode a binary frame.
+     *
+     * @param bytes Binary frame, not to be modified but may be retained
+     * @return Message, or null to ignore the frame
+     */
+    Message decode(ByteBuffer bytes);
+
+    /**
+     * Encode a command to a text frame.
+     *
+     * @param command Command
+     * @return Text frame
+     */
+    String encode(Command command);
+
+    /**
+     * Encode a command to a binary frame.
+     *
+     * @param command Command
+     * @return Binary frame handed over to the transport, or null to send {@link #encode(Command)} as a text frame
+     */
+    ByteBuffer encodeBinary(Command command);
+}
@@ -1,22 +1,22 @@
 package com.hosopy.actioncable;
 
-import com.google.gson.*;
+import com.google.gson.JsonObject;
 import com.google.gson.annotations.Expose;
 
-class Command {
-
-    private static final Gson GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+/**
+ * Command sent to the server, encoded by a {@link Codec}.
+ *
+ * @author hosopy
+ */
+public class Command {
 
     @Expose
-    @SuppressWarnings("unused")
     private final String command;
 
     @Expose
-    @SuppressWarnings("unused")
     private final String identifier;
 
     @Expose
-    @SuppressWarnings("unused")
     private final String data;
 
     private Command(String command, String identifier) {
@@ -41,7 +41,21 @@ class Command {
         return new Command("message", identifier, params.toString());
     }
 
-    /*package*/ String toJson() {
-        return GSON.toJson(this);
+    /**
+     * @return "subscribe", "unsubscribe" or "message"
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * @return Parameters of a "message" command including its action, encoded in JSON as ActionCable expects, null otherwise
+     */
+    public String getData() {
+        return data;
     }
 }
@@ -1,27 +1,31 @@
 package com.hosopy.actioncable;
 
+import com.hosopy.actioncable.jfr.JfrEvents;
+import com.hosopy.actioncable.transport.FragmentedText;
+import com.hosopy.actioncable.transport.OkHttpTransport;
+import com.hosopy.actioncable.transport.Transport;
 import com.hosopy.concurrent.EventLoop;
+import com.hosopy.concurrent.WheelTimer;
 import com.hosopy.util.QueryStringUtils;
+import com.hosopy.util.Utf8Utils;
 
 import java.io.IOException;
 import java.net.CookieHandler;
 import java.net.URI;
-import java.time.Duration;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
 
 import okhttp3.CookieJar;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-import okhttp3.WebSocket;
-import okhttp3.WebSocketListener;
-import okio.Buffer;
-import okio.ByteString;
 
 
 public class Connection {
@@ -38,7 +42,20 @@ public class Connection {
 
         void onFailure(Exception e);
 
-        void onMessage(String string);
+        /**
+         * @param receivedAt When the frame has been received, System.nanoTime() value
+         */
+        void onMessage(String string, long receivedAt);
+
+        /**
+         * @param receivedAt When the frame has been received, System.nanoTime() value
+         */
+        void onMessage(FragmentedText text, long receivedAt);
+
+        /**
+         * @param receivedAt When the frame has been received, System.nanoTime() value
+         */
+        void onMessage(ByteBuffer bytes, long receivedAt);
 
         void onClosing();
 
@@ -69,6 +86,32 @@ public class Connection {
          * HTTP Headers
          */
         public Map<String, String> headers;
+        /**
+         * Endpoints to connect to instead of the URI of the consumer
+         * <p/>
+         * <p>Each connection attempt goes to the healthiest endpoint, see {@link Endpoint}.</p>
+         */
+        public List<Endpoint> endpoints;
+        /**
+         * How many consecutive failures open the circuit of an endpoint
+         */
+        public int endpointFailureThreshold = 3;
+        /**
+         * How long an endpoint with an open circuit is skipped
+         */
+        public long endpointOpenTimeout = 30;
+        public TimeUnit endpointOpenTimeUnit = TimeUnit.SECONDS;
+        /**
+         * CredentialsProvider
+         * <p/>
+         * <p>Supplies headers and query parameters for each connection attempt, in addition to {@link #headers} and {@link #query}.</p>
+         */
+        public CredentialsProvider credentialsProvider;
+        /**
+         * How long before expiry the credentials are refreshed in the background
+         */
+        public long credentialsRefreshAhead = 30;
+        public TimeUnit credentialsRefreshTimeUnit = TimeUnit.SECONDS;
         /**
          * Whether to reconnect automatically.
          * <p/>
@@ -81,14 +124,44 @@ public class Connection {
          * <p>The maximum number of attempts to reconnect.</p>
          */
         public int reconnectionMaxAttempts = 30;
+        /**
+         * The base delay in seconds before reconnecting, doubled on every failed attempt.
+         */
         public int reconnectionDelay = 3;
+        /**
+         * The upper bound in seconds of the delay before reconnecting.
+         */
         public int reconnectionDelayMax = 30;
+        /**
+         * Jitter applied to the reconnection delay.
+         * <p/>
+         * <p>Randomizing the delay keeps many clients from reconnecting at the same moment after an outage.</p>
+         */
+        public Jitter reconnectionJitter = Jitter.FULL;
+        /**
+         * ReconnectPolicy
+         * <p/>
+         * <p>Decides whether and when to reconnect. Defaults to {@link DefaultReconnectPolicy}.</p>
+         */
+        public ReconnectPolicy reconnectPolicy;
         /**
          * OkHttpClientFactory
          * <p/>
          * <p>To use your own OkHttpClient, set this option.</p>
          */
         public OkHttpClientFactory okHttpClientFactory;
+        /**
+         * Transport.Factory
+         * <p/>
+         * <p>Opens the underlying WebSocket. Defaults to {@link OkHttpTransport}.</p>
+         */
+        public Transport.Factory transportFactory;
+        /**
+         * MetricsRecorder
+         * <p/>
+         * <p>Receives frame, connection, parse, dispatch and reconnect metrics. Defaults to {@link MetricsRecorder#NOOP}.</p>
+         */
+        public MetricsRecorder metricsRecorder;
 
         /**
          * The ping interval on how often a ping is sent over the websocket connection
@@ -98,26 +171,191 @@ public class Connection {
         public Long pingInterval;
         public TimeUnit pingTimeUnit;
 
+        /**
+         * How long the connection may receive nothing before it is considered stale
+         * <p/>
+         * <p>Defaults to two missed ActionCable pings (Server::Connections::BEAT_INTERVAL * 2).</p>
+         */
+        public long staleThreshold = 6;
+        public TimeUnit staleTimeUnit = TimeUnit.SECONDS;
+        /**
+         * Whether to extend the stale threshold by four times the observed ping jitter, up to twice the threshold
+         */
+        public boolean adaptiveStaleThreshold = true;
+
+        /**
+         * How long to wait for the closing handshake
+         * <p/>
+         * <p>If the server does not complete the handshake in time, the socket is cancelled,
+         * so that a reopen does not hang on a half-dead peer.</p>
+         */
+        public long closeTimeout = 5;
+        public TimeUnit closeTimeUnit = TimeUnit.SECONDS;
+
+        /**
+         * How long to wait for the server to confirm a subscription
+         * <p/>
+         * <p>If the confirmation does not arrive in time, the subscription is notified of the failure.</p>
+         */
+        public Long subscriptionTimeout;
+        public TimeUnit subscriptionTimeUnit;
+
         public interface OkHttpClientFactory {
             OkHttpClient createOkHttpClient();
         }
+
+        public enum Jitter {
+            /**
+             * Plain exponential backoff.
+             */
+            NONE,
+            /**
+             * Random delay between zero and the exponential backoff.
+             */
+            FULL,
+            /**
+             * Random delay between the base delay and three times the previous delay.
+             */
+            DECORRELATED
+        }
+    }
+
+    /**
+     * Time spent in each phase of a close.
+     */
+    public static class CloseTimings {
+        private final long handshake;
+
+        private final long shutdown;
+
+        private final long total;
+
+        private final boolean cancelled;
+
+        private CloseTimings(long handshake, long shutdown, long total, boolean cancelled) {
+            this.handshake = handshake;
+            this.shutdown = shutdown;
+            this.total = total;
+            this.cancelled = cancelled;
+        }
+
+        /**
+         * Time from the start of the close until the close frame of the peer arrived.
+         *
+         * @param unit Time unit of the result
+         * @return Duration, or -1 if the peer never sent its close frame
+         */
+        public long getHandshakeTime(TimeUnit unit) {
+            return handshake < 0 ? -1 : unit.convert(handshake, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Time from the close frame of the peer until the socket was closed.
+         *
+         * @param unit Time unit of the result
+         * @return Duration, or -1 if the peer never sent its close frame
+         */
+        public long getShutdownTime(TimeUnit unit) {
+            return shutdown < 0 ? -1 : unit.convert(shutdown, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Time from the start of the close until the socket was closed.
+         *
+         * @param unit Time unit of the result
+         * @return Duration
+         */
+        public long getTotalTime(TimeUnit unit) {
+            return unit.convert(total, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Check if the socket was cancelled because the close timeout expired.
+         *
+         * @return true if cancelled
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+
+    /**
+     * Set when the connection has to be opened again as soon as the current socket is closed.
+     */
+    private final AtomicBoolean isReopening = new AtomicBoolean(false);
+
+    private static final long BEAT_INTERVAL = TimeUnit.SECONDS.toNanos(3);
+
+    static {
+        JfrEvents.install();
     }
 
-    private State state = State.CONNECTING;
+    private final EndpointSelector endpointSelector;
 
-    private URI uri;
+    private volatile Endpoint endpoint;
 
     private Options options;
 
     private Listener listener;
 
-    private WebSocket webSocket;
+    /**
+     * Listener of the socket currently owned by this connection. Events of any other socket are stale.
+     */
+    private volatile SocketListener currentSocketListener;
+
+    private final Transport.Factory transportFactory;
+
+    private final MetricsRecorder metrics;
+
+    private volatile Transport transport;
+
+    private volatile long receivedAt = System.nanoTime();
+
+    private volatile int closeCode = ReconnectPolicy.Cause.ABNORMAL_CLOSURE;
+
+    private volatile String closeReason;
+
+    private volatile int failureStatusCode = -1;
 
-    private boolean isReopening = false;
+    // Close bookkeeping, only touched on EventLoop
+
+    private long closeStartedAt; // nanoseconds
+
+    private long peerClosingAt; // nanoseconds
+
+    private boolean isClosingStarted = false;
+
+    private boolean isPeerClosing = false;
+
+    private boolean isCloseCancelled = false;
+
+    private WheelTimer.Timeout closeDeadline;
+
+    private volatile CloseTimings closeTimings;
+
+    private final CredentialsCache credentialsCache;
+
+    private final QueryStringUtils.CachedEncoder queryEncoder = new QueryStringUtils.CachedEncoder();
+
+    /**
+     * Token of the open waiting for credentials, only touched on EventLoop
+     */
+    private Object pendingOpen;
 
     /*package*/ Connection(URI uri, Options options) {
-        this.uri = uri;
+        this(new EndpointSelector(Collections.singletonList(new Endpoint(uri)), options), options);
+    }
+
+    /*package*/ Connection(EndpointSelector endpointSelector, Options options) {
+        this.endpointSelector = endpointSelector;
         this.options = options;
+        this.transportFactory = options.transportFactory != null ? options.transportFactory : new OkHttpTransport.Factory(options);
+        this.metrics = options.metricsRecorder != null ? options.metricsRecorder : MetricsRecorder.NOOP;
+        this.credentialsCache = options.credentialsProvider != null
+                ? new CredentialsCache(options.credentialsProvider, options.credentialsRefreshAhead, options.credentialsRefreshTimeUnit)
+                : null;
     }
 
 
@@ -125,49 +363,162 @@ public class Connection {
         this.listener = listener;
     }
 
+    /**
+     * Open the connection.
+     * <p/>
+     * <p>Only the transition from CLOSED to CONNECTING creates a socket, so there is never more than one socket at a time.
+     * While connecting this is a no-op, and while closing the connection is opened once the current socket is closed.</p>
+     */
     /*package*/ void open() {
-        EventLoop.execute(new Runnable() {
-            @Override
-            public void run() {
-                if (isOpen()) {
-                    fireOnFailure(new IllegalStateException("Must close existing connection before opening"));
-                } else {
-                    doOpen();
-                }
+        while (true) {
+            switch (state.get()) {
+                case CLOSED:
+                    if (tryOpen()) {
+                        return;
+                    }
+                    break;
+                case OPEN:
+                    EventLoop.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            fireOnFailure(new IllegalStateException("Must close existing connection before opening"));
+                        }
+                    });
+                    return;
+                case CLOSING:
+                    isReopening.set(true);
+                    // If the socket has been closed in the meantime and nobody took over the reopening, open it here.
+                    if (state.get() != State.CLOSING && isReopening.compareAndSet(true, false)) {
+                        break;
+                    }
+                    return;
+                default:
+                    // CONNECTING: a socket is already on its way
+                    return;
             }
-        });
+        }
     }
 
-    /*package*/ void close() {
-        EventLoop.execute(new Runnable() {
-            @Override
-            public void run() {
-                if (webSocket != null) {
-                    try {
-                        // http://tools.ietf.org/html/rfc6455#section-7.4.1
-                        if (!isState(State.CLOSING, State.CLOSED)) {
-                            webSocket.close(1000, "connection closed manually");
-                            state = State.CLOSING;
-                        }
-                    } catch (IllegalStateException e) {
-                        fireOnFailure(e);
-                    }
-                }
+    /**
+     * Open the connection only if it is closed, e.g. for a scheduled reconnection.
+     * <p/>
+     * <p>Unlike {@link #reopen()}, a connection opened by someone else in the meantime is left alone.</p>
+     */
+    /*package*/ void openIfClosed() {
+        while (state.get() == State.CLOSED) {
+            if (tryOpen()) {
+                return;
             }
-        });
+        }
     }
 
+    /*package*/ void close() {
+        isReopening.set(false);
+        if (credentialsCache != null) {
+            credentialsCache.stop();
+        }
+        doClose();
+    }
+
+    /**
+     * Close and open the connection again.
+     * <p/>
+     * <p>Concurrent calls are coalesced into a single reopen.</p>
+     */
     /*package*/ void reopen() {
-        if (isState(State.CLOSED)) {
-            open();
-        } else {
-            isReopening = true;
-            close();
+        if (state.get() == State.OPEN) {
+            isReopening.set(true);
+            if (doClose()) {
+                return;
+            }
         }
+        open();
     }
 
     /*package*/ boolean isOpen() {
-        return webSocket != null && isState(State.OPEN);
+        return transport != null && state.get() == State.OPEN;
+    }
+
+    /**
+     * @return CONNECTING, OPEN, CLOSING or CLOSED
+     */
+    /*package*/ String getStateName() {
+        return state.get().name();
+    }
+
+    /*package*/ boolean isClosed() {
+        return state.get() == State.CLOSED;
+    }
+
+    /**
+     * Return the time spent in each phase of the last close.
+     *
+     * @return {@link CloseTimings}, or null if the connection has never been closed
+     */
+    public CloseTimings getCloseTimings() {
+        return closeTimings;
+    }
+
+    /**
+     * Return when the last frame was received, recorded on the socket thread before it is queued for dispatch.
+     *
+     * @return System.nanoTime() value
+     */
+    /*package*/ long getReceivedAt() {
+        return receivedAt;
+    }
+
+    /**
+     * Drop the cached credentials, so that the next attempt fetches fresh ones.
+     *
+     * @return false if there is no {@link Options#credentialsProvider}
+     */
+    /*package*/ boolean invalidateCredentials() {
+        if (credentialsCache == null) {
+            return false;
+        }
+        credentialsCache.invalidate();
+        return true;
+    }
+
+    /**
+     * Only to be called on EventLoop.
+     *
+     * @return true while the close timeout is scheduled
+     */
+    /*package*/ boolean isCloseDeadlinePending() {
+        return closeDeadline != null;
+    }
+
+    /*package*/ int getCloseCode() {
+        return closeCode;
+    }
+
+    /*package*/ String getCloseReason() {
+        return closeReason;
+    }
+
+    /*package*/ int getFailureStatusCode() {
+        return failureStatusCode;
+    }
+
+    /**
+     * Return the endpoint of the current or last connection attempt.
+     *
+     * @return {@link Endpoint}, or null if the connection has never been opened
+     */
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Record an ActionCable ping of the current socket, to score how late pings arrive.
+     */
+    /*package*/ void recordPing() {
+        final SocketListener socketListener = currentSocketListener;
+        if (socketListener != null) {
+            socketListener.recordPing();
+        }
     }
 
     /*package*/ boolean send(final String data) {
@@ -184,67 +535,245 @@ public class Connection {
         }
     }
 
-    private void doOpen() {
-        state = State.CONNECTING;
-
-        OkHttpClient client;
-        if (options.okHttpClientFactory != null) {
-            client = options.okHttpClientFactory.createOkHttpClient();
+    /**
+     * @param bytes Binary frame, handed over to the transport
+     */
+    /*package*/ boolean send(final ByteBuffer bytes) {
+        if (isOpen()) {
+            EventLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    doSend(bytes);
+                }
+            });
+            return true;
         } else {
-            OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder();
+            return false;
+        }
+    }
+
+    /**
+     * @return true if this call moved the connection from CLOSED to CONNECTING
+     */
+    private boolean tryOpen() {
+        if (state.compareAndSet(State.CLOSED, State.CONNECTING)) {
+            isReopening.set(false);
+            EventLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    doOpen();
+                }
+            });
+            return true;
+        }
+        return false;
+    }
 
-            if (options.sslContext != null) {
-                final SSLSocketFactory factory = options.sslContext.getSocketFactory();
-                clientBuilder.sslSocketFactory(factory);
+    /**
+     * @return true if this call moved the connection to CLOSING
+     */
+    private boolean doClose() {
+        while (true) {
+            final State current = state.get();
+            if (current == State.OPEN) {
+                if (state.compareAndSet(State.OPEN, State.CLOSING)) {
+                    EventLoop.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            sendClose();
+                        }
+                    });
+                    return true;
+                }
+            } else if (current == State.CONNECTING) {
+                // The socket is closed as soon as the handshake completes
+                if (state.compareAndSet(State.CONNECTING, State.CLOSING)) {
+                    return true;
+                }
+            } else {
+                return false;
             }
+        }
+    }
 
-            if (options.hostnameVerifier != null) {
-                clientBuilder.hostnameVerifier(options.hostnameVerifier);
+    private void doOpen() {
+        if (credentialsCache == null) {
+            connect(null);
+            return;
+        }
+
+        // Cached credentials are passed synchronously, otherwise the socket is created once they have been fetched.
+        final Object token = new Object();
+        pendingOpen = token;
+        credentialsCache.get(new CredentialsProvider.Callback() {
+            @Override
+            public void onCredentials(final Credentials credentials) {
+                EventLoop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (pendingOpen == token) {
+                            pendingOpen = null;
+                            if (state.get() == State.CONNECTING) {
+                                connect(credentials);
+                            } else {
+                                abortOpen(null);
+                            }
+                        }
+                    }
+                });
             }
 
-            if (options.cookieHandler != null) {
-                clientBuilder.cookieJar(options.cookieHandler);
+            @Override
+            public void onFailure(final Exception e) {
+                EventLoop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (pendingOpen == token) {
+                            pendingOpen = null;
+                            abortOpen(e);
+                        }
+                    }
+                });
             }
+        });
+    }
 
-            if (options.pingInterval != null && options.pingTimeUnit != null) {
-                clientBuilder.pingInterval(options.pingInterval, options.pingTimeUnit);
+    /**
+     * Give up an open before any socket has been created.
+     *
+     * @param e Failure, or null if the connection has been closed while waiting for credentials
+     */
+    private void abortOpen(Exception e) {
+        closeCode = ReconnectPolicy.Cause.ABNORMAL_CLOSURE;
+        closeReason = null;
+        failureStatusCode = -1;
+        state.set(State.CLOSED);
+        if (listener != null) {
+            if (e != null) {
+                listener.onFailure(e);
+            } else {
+                listener.onClosed();
             }
+        }
+        finishClosed();
+    }
+
+    private void connect(Credentials credentials) {
+        final Endpoint endpoint = endpointSelector.select();
+        this.endpoint = endpoint;
 
-            client = clientBuilder.build();
+        String url = endpoint.getUri().toString();
+        final Map<String, String> query = merge(options.query, credentials != null ? credentials.getQuery() : null);
+        if (query != null) {
+            url = url + "?" + queryEncoder.encode(query);
         }
 
-        String url = uri.toString();
-        if (options.query != null) {
-            url = url + "?" + QueryStringUtils.encode(options.query);
+        final Map<String, String> headers = merge(options.headers, credentials != null ? credentials.getHeaders() : null);
+
+        final SocketListener socketListener = new SocketListener(endpoint);
+        currentSocketListener = socketListener;
+        transport = null;
+
+        try {
+            transportFactory.open(URI.create(url), headers, socketListener);
+        } catch (RuntimeException e) {
+            socketListener.onFailure(null, e, -1);
         }
+    }
 
-        final Request.Builder builder = new Request.Builder().url(url);
+    private static Map<String, String> merge(Map<String, String> base, Map<String, String> overrides) {
+        if (overrides == null || overrides.isEmpty()) {
+            return base;
+        }
+        final Map<String, String> merged = base != null ? new LinkedHashMap<String, String>(base) : new LinkedHashMap<String, String>();
+        merged.putAll(overrides);
+        return merged;
+    }
 
-        if (options.headers != null) {
-            for (Map.Entry<String, String> entry : options.headers.entrySet()) {
-                builder.addHeader(entry.getKey(), entry.getValue());
+    private void doSend(String data) {
+        if (transport != null && transport.send(data)) {
+            if (metrics != MetricsRecorder.NOOP) {
+                metrics.onFrameSent(Utf8Utils.encodedLength(data));
             }
+            JfrEvents.frameSent(data);
         }
-        final Request request = builder.build();
-
+    }
 
-        client.newWebSocket(request, webSocketListener);
-        client.dispatcher().executorService().shutdown();
+    private void doSend(ByteBuffer bytes) {
+        // Read before the transport takes the buffer over
+        final int size = bytes.remaining();
+        if (transport != null && transport.send(bytes)) {
+            metrics.onFrameSent(size);
+            JfrEvents.frameSent(size);
+        }
     }
 
-    private void doSend(String data) {
-        if (webSocket != null) {
-            webSocket.send(data);
+    private void sendClose() {
+        if (transport != null) {
+            try {
+                // http://tools.ietf.org/html/rfc6455#section-7.4.1
+                transport.close(1000, "connection closed manually");
+                startClosing();
+            } catch (IllegalStateException e) {
+                fireOnFailure(e);
+            }
         }
     }
 
-    private boolean isState(State... states) {
-        for (State state : states) {
-            if (this.state == state) {
-                return true;
+    private void startClosing() {
+        if (isClosingStarted) {
+            return;
+        }
+        isClosingStarted = true;
+        isPeerClosing = false;
+        isCloseCancelled = false;
+        closeStartedAt = System.nanoTime();
+
+        final Transport closingTransport = transport;
+        closeDeadline = WheelTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                EventLoop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (transport == closingTransport && isClosingStarted) {
+                            isCloseCancelled = true;
+                            closingTransport.cancel();
+                        }
+                    }
+                });
             }
+        }, options.closeTimeout, options.closeTimeUnit);
+    }
+
+    private void finishClosing() {
+        if (!isClosingStarted) {
+            return;
+        }
+        isClosingStarted = false;
+        if (closeDeadline != null) {
+            closeDeadline.cancel();
+            closeDeadline = null;
+        }
+
+        final long closedAt = System.nanoTime();
+        closeTimings = new CloseTimings(
+                isPeerClosing ? peerClosingAt - closeStartedAt : -1,
+                isPeerClosing ? closedAt - peerClosingAt : -1,
+                closedAt - closeStartedAt,
+                isCloseCancelled);
+    }
+
+    /**
+     * Open again if a reopen is pending.
+     * <p/>
+     * <p>The state has already been moved to CLOSED before the listener was notified. It is not set again here,
+     * so that an open from the listener or a reconnection timer in the meantime is not undone.</p>
+     */
+    private void finishClosed() {
+        if (isReopening.compareAndSet(true, false)) {
+            open();
         }
-        return false;
     }
 
     private void fireOnFailure(Exception e) {
@@ -253,88 +782,259 @@ public class Connection {
         }
     }
 
-    private WebSocketListener webSocketListener = new WebSocketListener() {
+    /**
+     * Transport.Listener bound to a single socket.
+     */
+    private class SocketListener implements Transport.Listener {
+
+        private final Endpoint endpoint;
+
+        private final long startedAt = System.nanoTime();
+
+        private long pingedAt = 0; // nanoseconds, 0 until the first ping
+
+        private SocketListener(Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        private synchronized void recordPing() {
+            final long now = System.nanoTime();
+            if (pingedAt != 0) {
+                endpoint.recordPingDelay(now - pingedAt - BEAT_INTERVAL);
+            }
+            pingedAt = now;
+        }
+
+        private boolean isStale() {
+            return currentSocketListener != this;
+        }
+
+        @Override
+        public void onOpen(Transport transport) {
+            if (isStale()) {
+                transport.cancel();
+                return;
+            }
+
+            Connection.this.transport = transport;
+            final long handshakeTime = System.nanoTime() - startedAt;
+            endpoint.recordSuccess(handshakeTime);
+            metrics.onConnectionOpened(handshakeTime);
+            closeCode = ReconnectPolicy.Cause.ABNORMAL_CLOSURE;
+            closeReason = null;
+            failureStatusCode = -1;
+
+            if (state.compareAndSet(State.CONNECTING, State.OPEN)) {
+                EventLoop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (listener != null) {
+                            listener.onOpen();
+                        }
+                    }
+                });
+            } else {
+                // Closed while connecting
+                EventLoop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendClose();
+                    }
+                });
+            }
+        }
+
         @Override
-        public void onOpen(WebSocket webSocket, Response response) {
-            Connection.this.state = State.OPEN;
-            Connection.this.webSocket = webSocket;
+        public void onFailure(Transport transport, final Throwable t, int statusCode) {
+            if (isStale()) {
+                return;
+            }
+
+            closeCode = ReconnectPolicy.Cause.ABNORMAL_CLOSURE;
+            closeReason = null;
+            failureStatusCode = statusCode;
+            if (credentialsCache != null && (failureStatusCode == 401 || failureStatusCode == 403)) {
+                // Fetch fresh credentials on the next attempt
+                credentialsCache.invalidate();
+            }
+
             EventLoop.execute(new Runnable() {
                 @Override
                 public void run() {
-                    if (listener != null) {
-                        listener.onOpen();
+                    if (isClosingStarted) {
+                        // Cancelled by the close timeout, or dropped by the peer while closing.
+                        // Either way the close is complete.
+                        final boolean wasPeerClosing = isPeerClosing;
+                        finishClosing();
+                        state.set(State.CLOSED);
+                        metrics.onConnectionClosed(closeCode);
+
+                        if (listener != null) {
+                            if (!wasPeerClosing) {
+                                listener.onClosing();
+                            }
+                            listener.onClosed();
+                        }
+                    } else {
+                        endpointSelector.recordFailure(endpoint);
+                        state.set(State.CLOSED);
+                        metrics.onConnectionFailed(failureStatusCode);
+
+                        if (listener != null) {
+                            listener.onFailure(t instanceof Exception ? (Exception) t : new Exception(t));
+                        }
                     }
+
+                    finishClosed();
                 }
             });
         }
 
         @Override
-        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+        public void onMessage(final Transport transport, final String text) {
+            if (isStale()) {
+                requestNext(transport);
+                return;
+            }
+
+            final long arrivedAt = System.nanoTime();
+            receivedAt = arrivedAt;
+            JfrEvents.frameReceived(text);
+            if (metrics != MetricsRecorder.NOOP) {
+                metrics.onFrameReceived(text != null ? Utf8Utils.encodedLength(text) : 0);
+                metrics.onEventLoopQueueDepth(EventLoop.getPendingTasks());
+            }
             EventLoop.execute(new Runnable() {
                 @Override
                 public void run() {
-                    state = State.CLOSED;
+                    try {
+                        if (text != null && listener != null) {
+                            listener.onMessage(text, arrivedAt);
+                        }
+                    } finally {
+                        requestNext(transport);
+                    }
+                }
+            });
+        }
 
-                    if (listener != null) {
-                        listener.onFailure((Exception) t);
+        @Override
+        public void onMessage(final Transport transport, final FragmentedText text) {
+            if (isStale()) {
+                requestNext(transport);
+                return;
+            }
+
+            final long arrivedAt = System.nanoTime();
+            receivedAt = arrivedAt;
+            JfrEvents.frameReceived(text);
+            if (metrics != MetricsRecorder.NOOP) {
+                metrics.onFrameReceived(text.encodedLength());
+                metrics.onEventLoopQueueDepth(EventLoop.getPendingTasks());
+            }
+            EventLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (listener != null) {
+                            listener.onMessage(text, arrivedAt);
+                        }
+                    } finally {
+                        requestNext(transport);
                     }
                 }
             });
         }
 
         @Override
-        public void onMessage(WebSocket webSocket, String text) {
+        public void onMessage(final Transport transport, final ByteBuffer bytes) {
+            if (isStale()) {
+                requestNext(transport);
+                return;
+            }
+
+            // The buffer is owned by the connection from here on, no need to copy
+            final long arrivedAt = System.nanoTime();
+            receivedAt = arrivedAt;
+            metrics.onFrameReceived(bytes.remaining());
+            JfrEvents.frameReceived(bytes.remaining());
+            if (metrics != MetricsRecorder.NOOP) {
+                metrics.onEventLoopQueueDepth(EventLoop.getPendingTasks());
+            }
             EventLoop.execute(new Runnable() {
                 @Override
                 public void run() {
-                    if (text != null && listener != null) {
-                        listener.onMessage(text);
+                    try {
+                        if (listener != null) {
+                            listener.onMessage(bytes, arrivedAt);
+                        }
+                    } finally {
+                        requestNext(transport);
                     }
                 }
             });
         }
 
+        /**
+         * Let a transport reading on demand read the next frame, once the previous one has been dispatched.
+         */
+        private void requestNext(Transport transport) {
+            if (transport instanceof Transport.FlowControlled) {
+                ((Transport.FlowControlled) transport).request();
+            }
+        }
+
         @Override
-        public void onClosing(WebSocket webSocket, int code, String reason) {
-            Connection.this.state = State.CLOSING;
+        public void onClosing(Transport transport, int code, String reason) {
+            if (isStale()) {
+                return;
+            }
+
+            state.compareAndSet(State.OPEN, State.CLOSING);
+            closeCode = code;
+            closeReason = reason;
+
+            // Complete the closing handshake so that onClosed follows.
+            // http://tools.ietf.org/html/rfc6455#section-5.5.1
+            transport.close(1000, null);
 
             EventLoop.execute(new Runnable() {
                 @Override
                 public void run() {
-                    state = State.CLOSING;
+                    startClosing();
+                    peerClosingAt = System.nanoTime();
+                    isPeerClosing = true;
 
                     if (listener != null) {
                         listener.onClosing();
                     }
-
-                    if (isReopening) {
-                        isReopening = false;
-                        open();
-                    }
                 }
             });
         }
 
-
         @Override
-        public void onClosed(WebSocket webSocket, int code, String reason) {
-            Connection.this.state = State.CLOSED;
+        public void onClosed(Transport transport, int code, String reason) {
+            if (isStale()) {
+                return;
+            }
+
+            closeCode = code;
+            closeReason = reason;
 
             EventLoop.execute(new Runnable() {
                 @Override
                 public void run() {
-                    state = State.CLOSED;
+                    finishClosing();
+                    state.set(State.CLOSED);
+                    metrics.onConnectionClosed(closeCode);
 
                     if (listener != null) {
                         listener.onClosed();
                     }
 
-                    if (isReopening) {
-                        isReopening = false;
-                        open();
-                    }
+                    finishClosed();
                 }
             });
         }
-    };
+    }
 }
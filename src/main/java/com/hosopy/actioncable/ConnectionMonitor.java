@@ -1,18 +1,32 @@
 package com.hosopy.actioncable;
 
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import com.hosopy.actioncable.jfr.JfrEvents;
+import com.hosopy.concurrent.WheelTimer;
+
 import java.util.concurrent.TimeUnit;
 
 public class ConnectionMonitor {
 
-    private static final int STALE_THRESHOLD = 6; // Server::Connections::BEAT_INTERVAL * 2 (missed two pings)
+    /**
+     * Server::Connections::BEAT_INTERVAL of ActionCable
+     */
+    private static final long BEAT_INTERVAL = TimeUnit.SECONDS.toNanos(3);
+
+    /**
+     * Pings and probes kept to find the fastest one
+     */
+    private static final int WINDOW = 16;
+
+    /**
+     * Ping timestamps above this are in milliseconds, below in seconds
+     */
+    private static final long MILLISECOND_TIMESTAMPS = 100000000000L;
 
-    private final Connection connection;
+    private volatile Connection connection;
 
-    private final ScheduledExecutorService pollExecutorService;
+    private final long staleThreshold; // nanoseconds
+
+    private final boolean adaptiveStaleThreshold;
 
     private final boolean reconnection;
 
@@ -22,94 +36,469 @@ public class ConnectionMonitor {
 
     private final int reconnectionDelayMax;
 
-    private long pingedAt = 0; // milliseconds
+    private final ReconnectPolicy reconnectPolicy;
+
+    private final MetricsRecorder metrics;
+
+    // All timestamps are System.nanoTime() values, which are immune to wall clock adjustments.
 
-    private long disconnectedAt = 0; // milliseconds
+    private long activeAt = now(); // nanoseconds
 
-    private long startedAt = 0; // milliseconds
+    private long pingedAt = now(); // nanoseconds
 
-    private long stoppedAt = 0; // milliseconds
+    private long disconnectedAt = 0; // nanoseconds
+
+    private boolean disconnected = false;
+
+    private boolean stopped = false;
+
+    private boolean missedPings = false;
+
+    private int staleReconnectsAvoided = 0;
 
     private int reconnectAttempts = 0;
 
+    private long lastDelay = 0; // milliseconds
+
+    private WheelTimer.Timeout pollTimeout;
+
+    // Delay and clock estimates, reset on connect
+
+    private long lastPingAt = 0; // nanoseconds, 0 until the first ping of the connection
+
+    private long jitter = 0; // nanoseconds, smoothed deviation of the ping interval from BEAT_INTERVAL
+
+    private final long[] pingOffsets = new long[WINDOW]; // milliseconds, local clock at arrival minus ping timestamp
+
+    private int pingOffsetCount = 0;
+
+    private long minPingOffset = 0; // milliseconds
+
+    private long pingDelay = 0; // milliseconds
+
+    private long timestampResolution = 0; // milliseconds, 0 until the first timestamped ping
+
+    private final long[] roundTripTimes = new long[WINDOW]; // nanoseconds
+
+    private int roundTripCount = 0;
+
+    private long minRoundTripTime = -1; // nanoseconds
+
+    private long smoothedRoundTripTime = -1; // nanoseconds
+
+    private WheelTimer.Timeout reconnectTimeout;
+
+    /**
+     * Whether fresh credentials have been tried since the last welcome
+     */
+    private boolean credentialsRefreshed = false;
+
+    /**
+     * Reason of the disconnect message preceding the close, if any
+     */
+    private String disconnectReason;
+
     /*package*/ ConnectionMonitor(Connection connection, Connection.Options options) {
         this.connection = connection;
-        this.pollExecutorService = Executors.newSingleThreadScheduledExecutor();
+        this.staleThreshold = Math.max(1, options.staleTimeUnit.toNanos(options.staleThreshold));
+        this.adaptiveStaleThreshold = options.adaptiveStaleThreshold;
 
         this.reconnection = options.reconnection;
         this.reconnectionMaxAttempts = options.reconnectionMaxAttempts;
         this.reconnectionDelay = options.reconnectionDelay;
         this.reconnectionDelayMax = options.reconnectionDelayMax;
+        this.reconnectPolicy = options.reconnectPolicy != null ? options.reconnectPolicy : new DefaultReconnectPolicy(options);
+        this.metrics = options.metricsRecorder != null ? options.metricsRecorder : MetricsRecorder.NOOP;
+    }
+
+    /**
+     * Monitor another connection, e.g. after a migration.
+     */
+    /*package*/ synchronized void setConnection(Connection connection) {
+        this.connection = connection;
     }
 
-    /*package*/ void recordConnect() {
+    /*package*/ synchronized void recordConnect() {
         reset();
-        pingedAt = now();
-        disconnectedAt = 0;
+        resetEstimates();
+        cancelReconnect();
+        activeAt = pingedAt = now();
+        missedPings = false;
+        disconnected = false;
     }
 
-    /*package*/ void recordDisconnect() {
+    /**
+     * Called when the server has welcomed the connection, i.e. accepted its credentials.
+     */
+    /*package*/ synchronized void recordWelcome() {
+        credentialsRefreshed = false;
+    }
+
+    /**
+     * Called when the server sends a disconnect message, before it closes the connection.
+     *
+     * @param reason Reason, e.g. "unauthorized"
+     */
+    /*package*/ synchronized void recordServerDisconnect(String reason) {
+        disconnectReason = reason;
+    }
+
+    /*package*/ synchronized void recordDisconnect() {
         disconnectedAt = now();
+        disconnected = true;
+    }
+
+    /*package*/ synchronized void recordPing() {
+        recordPing(0);
     }
 
-    /*package*/ void recordPing() {
-        pingedAt = now();
+    /**
+     * Record an ActionCable ping.
+     *
+     * @param timestamp Server time carried by the ping, in seconds (or milliseconds), 0 if none
+     */
+    /*package*/ synchronized void recordPing(long timestamp) {
+        final long now = now();
+        if (lastPingAt != 0) {
+            // Smoothed like the interarrival jitter of RFC 3550
+            final long deviation = Math.abs(now - lastPingAt - BEAT_INTERVAL);
+            jitter += (deviation - jitter) / 16;
+        }
+        lastPingAt = now;
+        activeAt = pingedAt = now;
+        missedPings = false;
+
+        if (timestamp > 0) {
+            final boolean millis = timestamp > MILLISECOND_TIMESTAMPS;
+            final long offset = System.currentTimeMillis() - (millis ? timestamp : timestamp * 1000);
+            timestampResolution = millis ? 1 : 1000;
+            pingOffsets[pingOffsetCount++ % WINDOW] = offset;
+            minPingOffset = min(pingOffsets, pingOffsetCount);
+            pingDelay = offset - minPingOffset;
+        }
+    }
+
+    /**
+     * Record the round trip of a perform echoed back by the server.
+     *
+     * @param nanos Round trip time
+     */
+    /*package*/ synchronized void recordRoundTrip(long nanos) {
+        roundTripTimes[roundTripCount++ % WINDOW] = nanos;
+        minRoundTripTime = min(roundTripTimes, roundTripCount);
+        // Smoothed like the SRTT of TCP
+        smoothedRoundTripTime = smoothedRoundTripTime < 0 ? nanos : smoothedRoundTripTime + (nanos - smoothedRoundTripTime) / 8;
+    }
+
+    /**
+     * Called when the underlying connection has been closed.
+     * <p/>
+     * <p>Unless the monitor is stopped, a reconnection is scheduled right away instead of waiting for the next poll.</p>
+     */
+    /*package*/ synchronized void recordClose() {
+        if (!disconnected) {
+            recordDisconnect();
+        }
+        scheduleReconnect(null, false);
+    }
+
+    /**
+     * Called when the underlying connection failed, including failed connection attempts.
+     *
+     * @param e Failure
+     */
+    /*package*/ synchronized void recordFailure(Exception e) {
+        if (!disconnected) {
+            recordDisconnect();
+        }
+        scheduleReconnect(e, false);
     }
 
-    /*package*/ void start() {
+    /*package*/ synchronized void start() {
         reset();
-        stoppedAt = 0;
-        startedAt = now();
+        stopped = false;
+        activeAt = pingedAt = now();
+        missedPings = false;
         poll();
     }
 
-    /*package*/ void stop() {
-        stoppedAt = now();
+    /**
+     * Stop monitoring and release the timeouts held in the shared {@link WheelTimer}.
+     */
+    /*package*/ synchronized void stop() {
+        stopped = true;
+        cancelReconnect();
+        if (pollTimeout != null) {
+            pollTimeout.cancel();
+            pollTimeout = null;
+        }
     }
 
     private void reset() {
         reconnectAttempts = 0;
+        lastDelay = 0;
+    }
+
+    private void resetEstimates() {
+        lastPingAt = 0;
+        jitter = 0;
+        pingOffsetCount = 0;
+        pingDelay = 0;
+        roundTripCount = 0;
+        minRoundTripTime = -1;
+        smoothedRoundTripTime = -1;
     }
 
     private void poll() {
-        pollExecutorService.scheduleAtFixedRate(new TimerTask() {
+        if (pollTimeout != null) {
+            pollTimeout.cancel();
+        }
+        // Scheduled one shot at a time so that the interval follows the current reconnectAttempts.
+        pollTimeout = WheelTimer.schedule(new Runnable() {
             @Override
             public void run() {
-                if (stoppedAt == 0) {
-                    reconnectIfStale();
+                synchronized (ConnectionMonitor.this) {
+                    if (!stopped) {
+                        reconnectIfStale();
+                        poll();
+                    }
                 }
             }
-        }, getInterval(), getInterval(), TimeUnit.MILLISECONDS);
+        }, getInterval(), TimeUnit.MILLISECONDS);
     }
 
     private void reconnectIfStale() {
+        countAvoidedReconnect();
         if (reconnection && connectionIsStale() && reconnectAttempts < reconnectionMaxAttempts) {
-            reconnectAttempts++;
-            if (!disconnectedRecently()) {
-                connection.reopen();
+            JfrEvents.staleConnection(nanosSince(lastActiveAt()), getStaleThreshold());
+            if (disconnectedRecently()) {
+                // The close has already scheduled a reconnection
+                reconnectAttempts++;
+            } else {
+                scheduleReconnect(null, true);
+            }
+        }
+    }
+
+    /**
+     * Schedule a reconnection after the delay of the {@link ReconnectPolicy}.
+     *
+     * @param failure Failure, null after a close or for a stale connection
+     * @param stale   Whether the connection is stale, i.e. may still be open and is to be reopened
+     */
+    private void scheduleReconnect(Exception failure, final boolean stale) {
+        if (!reconnection || stopped || reconnectTimeout != null) {
+            return;
+        }
+
+        final boolean abnormal = failure != null || stale;
+        final String reason = disconnectReason != null ? disconnectReason : abnormal ? null : connection.getCloseReason();
+        disconnectReason = null;
+        final ReconnectPolicy.Cause cause = new ReconnectPolicy.Cause(reconnectAttempts, lastDelay,
+                abnormal ? ReconnectPolicy.Cause.ABNORMAL_CLOSURE : connection.getCloseCode(),
+                reason,
+                failure,
+                failure != null ? connection.getFailureStatusCode() : -1,
+                credentialsRefreshed);
+        final long delay = reconnectPolicy.nextDelay(cause);
+        if (delay < 0) {
+            // Aborted by the policy, e.g. the credentials have been rejected
+            stop();
+            return;
+        }
+        if (cause.isUnauthorized()) {
+            // The next attempt fetches fresh credentials
+            credentialsRefreshed = true;
+        }
+        lastDelay = delay;
+        reconnectAttempts++;
+        metrics.onReconnect(reconnectAttempts, delay);
+        JfrEvents.reconnect(reconnectAttempts, delay, cause.getCloseCode());
+
+        reconnectTimeout = WheelTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                final Connection connection;
+                final boolean reopen;
+                synchronized (ConnectionMonitor.this) {
+                    reconnectTimeout = null;
+                    if (stopped) {
+                        return;
+                    }
+                    connection = ConnectionMonitor.this.connection;
+                    reopen = stale && connection.isOpen() && connectionIsStale();
+                }
+                if (reopen) {
+                    connection.reopen();
+                } else {
+                    // The connection may have been reopened in the meantime (e.g. by Connection#reopen).
+                    connection.openIfClosed();
+                }
+                final boolean close;
+                synchronized (ConnectionMonitor.this) {
+                    close = stopped;
+                }
+                if (close) {
+                    // Stopped while opening, e.g. by Consumer#disconnect()
+                    connection.close();
+                }
             }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelReconnect() {
+        if (reconnectTimeout != null) {
+            reconnectTimeout.cancel();
+            reconnectTimeout = null;
+        }
+    }
+
+    /**
+     * Check if nothing has been received for longer than the stale threshold.
+     * <p/>
+     * <p>Any inbound frame counts, not only pings, because a ping may be queued behind large broadcasts.</p>
+     *
+     * @return true if the connection is stale
+     */
+    public synchronized boolean connectionIsStale() {
+        return nanosSince(lastActiveAt()) > getStaleThreshold();
+    }
+
+    /**
+     * Return the stale threshold in effect.
+     * <p/>
+     * <p>With {@link Connection.Options#adaptiveStaleThreshold}, the configured threshold is extended by four times
+     * the ping jitter, up to twice the configured threshold, so that a jittery network is not taken for a dead one.</p>
+     *
+     * @param unit Time unit of the result
+     * @return Stale threshold
+     */
+    public synchronized long getStaleThreshold(TimeUnit unit) {
+        return unit.convert(getStaleThreshold(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Return how much the arrival of pings deviates from their 3 second interval, smoothed.
+     *
+     * @param unit Time unit of the result
+     * @return Jitter, 0 until two pings have been received
+     */
+    public synchronized long getJitter(TimeUnit unit) {
+        return unit.convert(jitter, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Return how much later than the fastest of the recent pings the last ping arrived, i.e. its queueing delay.
+     *
+     * @param unit Time unit of the result
+     * @return Delay, 0 until a ping with a timestamp has been received
+     */
+    public synchronized long getPingDelay(TimeUnit unit) {
+        return unit.convert(pingDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Return the smoothed round trip time of the probes set up by {@link Consumer.Options#rttProbeChannel}.
+     *
+     * @param unit Time unit of the result
+     * @return Round trip time, -1 until a probe has come back
+     */
+    public synchronized long getRoundTripTime(TimeUnit unit) {
+        return smoothedRoundTripTime < 0 ? -1 : unit.convert(smoothedRoundTripTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Return the estimated delay from the server to this client: half the fastest recent round trip plus the ping delay.
+     *
+     * @param unit Time unit of the result
+     * @return One-way delay, -1 until both a probe and a ping with a timestamp have come back
+     */
+    public synchronized long getOneWayDelay(TimeUnit unit) {
+        if (minRoundTripTime < 0 || timestampResolution == 0) {
+            return -1;
+        }
+        return unit.convert(minRoundTripTime / 2 + TimeUnit.MILLISECONDS.toNanos(pingDelay), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Return the estimated server clock minus the local clock, e.g. to convert a server timestamp to local time
+     * by subtracting it.
+     * <p/>
+     * <p>ActionCable pings carry whole seconds, so the estimate assumes the middle of the second and is off by up to half a second,
+     * unless the server sends milliseconds. Without round trip probes the delay of the fastest ping is taken as zero.</p>
+     *
+     * @param unit Time unit of the result
+     * @return Clock skew, 0 until a ping with a timestamp has been received
+     */
+    public synchronized long getClockSkew(TimeUnit unit) {
+        if (timestampResolution == 0) {
+            return 0;
         }
+        // offset = delay - skew + truncation, taken at the fastest ping
+        final long minDelay = minRoundTripTime < 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(minRoundTripTime / 2);
+        return unit.convert(minDelay + timestampResolution / 2 - minPingOffset, TimeUnit.MILLISECONDS);
     }
 
-    public boolean connectionIsStale() {
-        return secondsSince(pingedAt > 0 ? pingedAt : startedAt) > STALE_THRESHOLD;
+    /**
+     * Return how many times pings were missing for longer than the stale threshold
+     * while other inbound traffic proved that the connection was alive.
+     *
+     * @return The number of reconnections avoided
+     */
+    public synchronized int getStaleReconnectsAvoided() {
+        return staleReconnectsAvoided;
+    }
+
+    /**
+     * Return the number of reconnection attempts since the last successful connection.
+     *
+     * @return The number of attempts
+     */
+    public synchronized int getReconnectAttempts() {
+        return reconnectAttempts;
+    }
+
+    private long lastActiveAt() {
+        final long receivedAt = connection.getReceivedAt();
+        return receivedAt - activeAt > 0 ? receivedAt : activeAt;
+    }
+
+    private void countAvoidedReconnect() {
+        if (!missedPings && nanosSince(pingedAt) > getStaleThreshold() && !connectionIsStale()) {
+            missedPings = true;
+            staleReconnectsAvoided++;
+        }
     }
 
     private boolean disconnectedRecently() {
-        return disconnectedAt != 0 && secondsSince(disconnectedAt) < STALE_THRESHOLD;
+        return disconnected && nanosSince(disconnectedAt) < getStaleThreshold();
     }
 
     private long getInterval() {
         final double interval = 5.0d * Math.log(reconnectAttempts + 1);
-        return (long) clamp(interval, reconnectionDelay, reconnectionDelayMax) * 1000;
+        final long millis = (long) clamp(interval, reconnectionDelay, reconnectionDelayMax) * 1000;
+        // Check at least twice per stale threshold
+        return Math.max(1, Math.min(millis, TimeUnit.NANOSECONDS.toMillis(getStaleThreshold() / 2)));
+    }
+
+    private long getStaleThreshold() {
+        return adaptiveStaleThreshold ? Math.min(staleThreshold * 2, staleThreshold + 4 * jitter) : staleThreshold;
+    }
+
+    private static long min(long[] values, int count) {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < Math.min(count, values.length); i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
     }
 
-    private static long secondsSince(long time) {
-        return (now() - time) / 1000;
+    private static long nanosSince(long time) {
+        return now() - time;
     }
 
     private static long now() {
-        return System.currentTimeMillis();
+        return System.nanoTime();
     }
 
     private static double clamp(double number, int min, int max) {
@@ -1,6 +1,13 @@
 package com.hosopy.actioncable;
 
+import com.hosopy.actioncable.transport.FragmentedText;
+import com.hosopy.concurrent.EventLoop;
+
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The Consumer establishes the connection to a server-side Ruby Connection object.
@@ -20,43 +27,247 @@ import java.net.URI;
 public class Consumer {
 
     public static class Options extends Connection.Options {
+        /**
+         * How long {@link Consumer#migrate(MigrationCallback)} waits for the subscriptions to be confirmed
+         * <p/>
+         * <p>On timeout the new connection is closed and the consumer stays on the current connection.</p>
+         */
+        public long migrationTimeout = 10;
+        public TimeUnit migrationTimeUnit = TimeUnit.SECONDS;
+        /**
+         * Number of connections opened by {@link ActionCable#createConsumerPool(URI, Options)}
+         */
+        public int poolSize = 4;
+        /**
+         * Whether to register a {@link ConsumerMXBean} with the platform MBeanServer while connected
+         * <p/>
+         * <p>Message counters are only kept when enabled.</p>
+         */
+        public boolean jmx = false;
+        /**
+         * Name of the MBean, defaults to the URI
+         */
+        public String jmxName;
+        /**
+         * How long a received callback may block EventLoop before it is reported as slow, null to disable
+         * <p/>
+         * <p>See {@link Consumer#onSlowCallback(SlowCallbackCallback)}.</p>
+         */
+        public Long callbackBudget;
+        public TimeUnit callbackBudgetTimeUnit = TimeUnit.MILLISECONDS;
+        /**
+         * Whether to move a subscription with a slow callback to its own thread
+         * <p/>
+         * <p>Its received callbacks then run in order on that thread, no longer in order with the other callbacks.</p>
+         */
+        public boolean isolateSlowCallbacks = false;
+        /**
+         * Channel echoing performs back to its subscriber, used to measure the round trip time, null to disable
+         * <p/>
+         * <p>See {@link ConnectionMonitor#getRoundTripTime(TimeUnit)}.</p>
+         */
+        public Channel rttProbeChannel;
+        /**
+         * Action performed on {@link #rttProbeChannel}
+         */
+        public String rttProbeAction = "echo";
+        /**
+         * Interval of the round trip probes
+         */
+        public long rttProbeInterval = 10;
+        public TimeUnit rttProbeTimeUnit = TimeUnit.SECONDS;
+        /**
+         * Reads the server time from the payload of received messages to track their latency, null to disable
+         * <p/>
+         * <p>See {@link Consumer#getBroadcastLatencies()}.</p>
+         */
+        public TimestampExtractor timestampExtractor;
+        /**
+         * Wire format of messages and commands, defaults to {@link Codec#GSON}
+         */
+        public Codec codec;
+    }
+
+    /**
+     * Notified on EventLoop when the connection has been opened or lost.
+     */
+    /*package*/ interface StateListener {
+        void onStateChanged(Consumer consumer);
+    }
+
+    /**
+     * Callback called when the server closes the connection with a disconnect message.
+     */
+    public interface ServerDisconnectCallback {
+        /**
+         * Callback method
+         *
+         * @param reason Reason sent by the server (e.g. "unauthorized", "server_restart"), may be null
+         * @param reconnect Whether the server allows the client to reconnect
+         */
+        void call(String reason, boolean reconnect);
+    }
+
+    /**
+     * Callback called on EventLoop when a received callback has exceeded {@link Options#callbackBudget}.
+     */
+    public interface SlowCallbackCallback {
+        /**
+         * Callback method
+         *
+         * @param slowCallback The slow callback
+         */
+        void call(SlowCallback slowCallback);
+    }
+
+    /**
+     * Callback called when a migration has finished.
+     */
+    public interface MigrationCallback {
+        /**
+         * Called once all subscriptions are confirmed on the new connection and the previous one is being closed.
+         */
+        void onMigrated();
+
+        /**
+         * Called when the migration has failed. The consumer stays on the previous connection.
+         *
+         * @param e Cause of the failure
+         */
+        void onFailure(Exception e);
     }
 
-    private Connection connection;
+    private final URI uri;
+
+    private final Options options;
+
+    private final MetricsRecorder metrics;
+
+    private final Codec codec;
+
+    /**
+     * Messages received, null unless {@link Options#jmx} is true
+     */
+    private final LongAdder messagesReceived;
+
+    private ConsumerJmx jmx;
+
+    private final Connection.Listener connectionListener;
+
+    private volatile Connection connection;
+
+    /**
+     * Migration in progress, only touched on EventLoop
+     */
+    private Migration migration;
 
     private ConnectionMonitor connectionMonitor;
 
     private Subscriptions subscriptions;
 
+    private ServerDisconnectCallback onServerDisconnect;
+
+    private volatile SlowCallbackCallback onSlowCallback;
+
+    /**
+     * Null unless {@link Options#callbackBudget} is set
+     */
+    private final CallbackWatchdog callbackWatchdog;
+
+    /**
+     * Null unless {@link Options#rttProbeChannel} is set
+     */
+    private final RoundTripProbe roundTripProbe;
+
+    private StateListener stateListener;
+
     /*package*/ Consumer(URI uri, Options options) {
+        this.uri = uri;
+        this.options = options;
+        this.metrics = options.metricsRecorder != null ? options.metricsRecorder : MetricsRecorder.NOOP;
+        this.codec = options.codec != null ? options.codec : Codec.GSON;
+        this.messagesReceived = options.jmx ? new LongAdder() : null;
+        this.callbackWatchdog = options.callbackBudget != null
+                ? new CallbackWatchdog(this, options.callbackBudget, options.callbackBudgetTimeUnit)
+                : null;
         this.subscriptions = new Subscriptions(this);
-        this.connection = new Connection(uri, options);
+        this.connection = createConnection();
         this.connectionMonitor = new ConnectionMonitor(connection, options);
-        this.connection.setListener(new Connection.Listener() {
+        this.connectionListener = new Connection.Listener() {
             @Override
             public void onOpen() {
                 connectionMonitor.recordConnect();
                 subscriptions.reload();
+                notifyStateChanged();
             }
 
             @Override
             public void onFailure(Exception e) {
                 subscriptions.notifyFailed(new ActionCableException(e));
+                connectionMonitor.recordFailure(e);
+                notifyStateChanged();
+            }
+
+            @Override
+            public void onMessage(String string, long receivedAt) {
+                final Message message;
+                if (metrics != MetricsRecorder.NOOP) {
+                    final long startedAt = System.nanoTime();
+                    message = codec.decode(string);
+                    metrics.onMessageParsed(System.nanoTime() - startedAt);
+                } else {
+                    message = codec.decode(string);
+                }
+                dispatch(message, receivedAt);
+            }
+
+            @Override
+            public void onMessage(FragmentedText text, long receivedAt) {
+                final Message message;
+                if (metrics != MetricsRecorder.NOOP) {
+                    final long startedAt = System.nanoTime();
+                    message = codec.decode(text);
+                    metrics.onMessageParsed(System.nanoTime() - startedAt);
+                } else {
+                    message = codec.decode(text);
+                }
+                dispatch(message, receivedAt);
             }
 
             @Override
-            public void onMessage(String string) {
-                final Message message = Message.fromJson(string);
+            public void onMessage(ByteBuffer bytes, long receivedAt) {
+                final Message message;
+                if (metrics != MetricsRecorder.NOOP) {
+                    final long startedAt = System.nanoTime();
+                    message = codec.decode(bytes);
+                    metrics.onMessageParsed(System.nanoTime() - startedAt);
+                } else {
+                    message = codec.decode(bytes);
+                }
+                dispatch(message, receivedAt);
+            }
+
+            private void dispatch(Message message, long receivedAt) {
+                if (message == null) {
+                    return;
+                }
                 if (message.isWelcome()) {
+                    connectionMonitor.recordWelcome();
                     onOpen();
                 } else if (message.isPing()) {
-                    connectionMonitor.recordPing();
+                    connection.recordPing();
+                    connectionMonitor.recordPing(message.getTimestamp());
                 } else if (message.isConfirmation()) {
                     subscriptions.notifyConnected(message.getIdentifier());
                 } else if (message.isRejection()) {
                     subscriptions.reject(message.getIdentifier());
-                } else {
-                    subscriptions.notifyReceived(message.getIdentifier(), message.getMessage());
+                } else if (message.isDisconnect()) {
+                    onServerDisconnect(message.getReason(), message.isReconnect());
+                } else if (message.getIdentifier() != null) {
+                    if (messagesReceived != null) {
+                        messagesReceived.increment();
+                    }
+                    subscriptions.notifyReceived(message.getIdentifier(), message.getMessage(), receivedAt);
                 }
             }
 
@@ -68,8 +279,17 @@ public class Consumer {
 
             @Override
             public void onClosed() {
+                connectionMonitor.recordClose();
+                notifyStateChanged();
             }
-        });
+        };
+        this.connection.setListener(connectionListener);
+        if (options.rttProbeChannel != null) {
+            this.roundTripProbe = new RoundTripProbe(this, options.rttProbeAction, options.rttProbeInterval, options.rttProbeTimeUnit);
+            this.roundTripProbe.subscribe(options.rttProbeChannel);
+        } else {
+            this.roundTripProbe = null;
+        }
     }
 
     /*package*/ Consumer(URI uri) {
@@ -85,10 +305,40 @@ public class Consumer {
         return subscriptions;
     }
 
+    /**
+     * Set {@link ServerDisconnectCallback}
+     *
+     * @param callback {@link ServerDisconnectCallback} instance
+     * @return {@link Consumer} instance
+     */
+    public Consumer onServerDisconnect(ServerDisconnectCallback callback) {
+        onServerDisconnect = callback;
+        return this;
+    }
+
+    /**
+     * Set {@link SlowCallbackCallback}, called when a received callback exceeds {@link Options#callbackBudget}
+     * <p/>
+     * <p>It is called on a thread of the watchdog as soon as the budget is exceeded, while the callback is still running.</p>
+     *
+     * @param callback {@link SlowCallbackCallback} instance
+     * @return {@link Consumer} instance
+     */
+    public Consumer onSlowCallback(SlowCallbackCallback callback) {
+        onSlowCallback = callback;
+        return this;
+    }
+
     /**
      * Establish connection.
      */
     public void connect() {
+        if (options.jmx) {
+            registerMBean();
+        }
+        if (callbackWatchdog != null) {
+            callbackWatchdog.start();
+        }
         connection.open();
         connectionMonitor.start();
     }
@@ -97,28 +347,230 @@ public class Consumer {
      * Disconnect the underlying connection.
      */
     public void disconnect() {
-        connection.close();
+        cancelMigration();
+        // Stop first, so that a pending reconnection cannot open the connection again
         connectionMonitor.stop();
+        connection.close();
+        stopCallbackWatchdog();
+        stopRoundTripProbe();
+        unregisterMBean();
     }
 
     public void unsubscribeAndDisconnect() {
+        cancelMigration();
         subscriptions.removeAll();
-        connection.close();
+        // Stop first, so that a pending reconnection cannot open the connection again
         connectionMonitor.stop();
+        connection.close();
+        stopCallbackWatchdog();
+        stopRoundTripProbe();
+        unregisterMBean();
+    }
+
+    /**
+     * Move to a new connection to the same URI, or the healthiest of {@link Options#endpoints}, without a gap in delivery.
+     *
+     * @param callback Callback, may be null
+     * @see #migrate(URI, MigrationCallback)
+     */
+    public void migrate(MigrationCallback callback) {
+        migrate(createConnection(), callback);
+    }
+
+    /**
+     * Move to a new connection without a gap in delivery (make-before-break).
+     * <p/>
+     * <p>A second connection is opened and all subscriptions are replayed onto it.
+     * Once the server has confirmed every subscription, dispatch switches to the new connection
+     * and only then the current connection is closed. Messages received on both connections in the meantime are delivered once.</p>
+     * <p/>
+     * <p>Use this for planned events such as token rotation or server drain.</p>
+     *
+     * @param uri      URI to connect
+     * @param callback Callback, may be null
+     */
+    public void migrate(URI uri, MigrationCallback callback) {
+        migrate(new Connection(uri, options), callback);
+    }
+
+    private void migrate(final Connection next, final MigrationCallback callback) {
+        EventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Exception e;
+                if (migration != null) {
+                    e = new IllegalStateException("Migration already in progress");
+                } else if (!connection.isOpen()) {
+                    e = new IllegalStateException("Must be connected to migrate");
+                } else {
+                    migration = new Migration(Consumer.this, connection, next, connectionListener,
+                            callback, options.migrationTimeout, options.migrationTimeUnit);
+                    migration.start();
+                    return;
+                }
+                if (callback != null) {
+                    callback.onFailure(e);
+                }
+            }
+        });
+    }
+
+    /*package*/ Options getOptions() {
+        return options;
+    }
+
+    /**
+     * @return Messages received, 0 unless {@link Options#jmx} is true
+     */
+    /*package*/ long getMessagesReceived() {
+        return messagesReceived != null ? messagesReceived.sum() : 0;
+    }
+
+    /*package*/ CallbackWatchdog getCallbackWatchdog() {
+        return callbackWatchdog;
+    }
+
+    /**
+     * Called by {@link CallbackWatchdog} on its own thread while a slow callback is still running on EventLoop.
+     */
+    /*package*/ void notifySlowCallback(SubscriptionProxy<?> subscriptionProxy, long duration, StackTraceElement[] stackTrace) {
+        if (options.isolateSlowCallbacks) {
+            subscriptionProxy.isolate();
+        }
+        final SlowCallbackCallback callback = onSlowCallback;
+        if (callback != null) {
+            callback.call(new SlowCallback(subscriptionProxy.getIdentifier(), duration, stackTrace, subscriptionProxy.isIsolated()));
+        }
+    }
+
+    /**
+     * Return the latencies of broadcasts, per channel name.
+     *
+     * @return Read-only view, empty unless {@link Options#timestampExtractor} is set
+     */
+    public Map<String, BroadcastLatency> getBroadcastLatencies() {
+        return subscriptions.getBroadcastLatencies();
+    }
+
+    /*package*/ Codec getCodec() {
+        return codec;
+    }
+
+    /*package*/ MetricsRecorder getMetricsRecorder() {
+        return metrics;
     }
 
     /*package*/ boolean send(Command command) {
-        return connection.send(command.toJson());
+        return send(connection, command);
+    }
+
+    /**
+     * Send a command encoded by {@link Options#codec}, as a binary frame if the codec encodes one.
+     */
+    /*package*/ boolean send(Connection connection, Command command) {
+        final ByteBuffer bytes = codec.encodeBinary(command);
+        return bytes != null ? connection.send(bytes) : connection.send(codec.encode(command));
     }
 
     public Connection getConnection() {
         return connection;
     }
 
+    /**
+     * Called on EventLoop by {@link Migration} once the new connection takes over.
+     */
+    /*package*/ void switchConnection(Connection next, Migration finished) {
+        connection = next;
+        connectionMonitor.setConnection(next);
+        connectionMonitor.recordConnect();
+        finishMigration(finished);
+    }
+
+    /*package*/ void finishMigration(Migration finished) {
+        if (migration == finished) {
+            migration = null;
+        }
+    }
+
+    /*package*/ void setStateListener(StateListener stateListener) {
+        this.stateListener = stateListener;
+    }
+
+    private void notifyStateChanged() {
+        if (stateListener != null) {
+            stateListener.onStateChanged(this);
+        }
+    }
+
+    private void stopCallbackWatchdog() {
+        if (callbackWatchdog != null) {
+            callbackWatchdog.stop();
+        }
+    }
+
+    private void stopRoundTripProbe() {
+        if (roundTripProbe != null) {
+            roundTripProbe.stop();
+        }
+    }
+
+    private synchronized void registerMBean() {
+        if (jmx == null) {
+            jmx = new ConsumerJmx(this, uri.toString(), options.jmxName);
+        }
+        jmx.register();
+    }
+
+    private synchronized void unregisterMBean() {
+        if (jmx != null) {
+            jmx.unregister();
+        }
+    }
+
+    /*package*/ synchronized ConsumerJmx getJmx() {
+        return jmx;
+    }
+
+    private Connection createConnection() {
+        if (options.endpoints != null && !options.endpoints.isEmpty()) {
+            return new Connection(new EndpointSelector(options.endpoints, options), options);
+        }
+        return new Connection(uri, options);
+    }
+
+    private void cancelMigration() {
+        EventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (migration != null) {
+                    migration.cancel();
+                }
+            }
+        });
+    }
+
     public ConnectionMonitor getConnectionMonitor() {
         return connectionMonitor;
     }
 
+    private void onServerDisconnect(String reason, boolean reconnect) {
+        if (reconnect && options.reconnection) {
+            // The server is about to close the socket, no need to wait for the monitor to notice.
+            connection.reopen();
+        } else if (ReconnectPolicy.Cause.UNAUTHORIZED.equals(reason) && options.reconnection && connection.invalidateCredentials()) {
+            // e.g. an expired token: once the server closes the socket,
+            // the ReconnectPolicy decides whether to retry with fresh credentials
+            connectionMonitor.recordServerDisconnect(reason);
+        } else {
+            // e.g. "unauthorized": reconnecting would only be rejected again
+            connectionMonitor.stop();
+        }
+
+        if (onServerDisconnect != null) {
+            onServerDisconnect.call(reason, reconnect);
+        }
+    }
+
     public boolean isConnected() {
         return this.connection != null && this.connection.isOpen() && !this.connectionMonitor.connectionIsStale();
     }
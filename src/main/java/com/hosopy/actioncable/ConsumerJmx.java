@@ -0,0 +1,181 @@
+package com.hosopy.actioncable;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * {@link ConsumerMXBean} of a consumer, registered with the platform MBeanServer.
+ * <p/>
+ * <p>Only referenced when {@link Consumer.Options#jmx} is true, so that platforms without JMX never load it.
+ * Attributes are computed when read, the hot path only increments the counters of the subscriptions.</p>
+ */
+/*package*/ class ConsumerJmx implements ConsumerMXBean {
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger(0);
+
+    private static final long RATE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final Consumer consumer;
+
+    private final String uri;
+
+    private final ObjectName objectName;
+
+    private final Map<SubscriptionProxy, Rate> rates = new ConcurrentHashMap<SubscriptionProxy, Rate>();
+
+    /*package*/ ConsumerJmx(Consumer consumer, String uri, String name) {
+        this.consumer = consumer;
+        this.uri = uri;
+        try {
+            this.objectName = new ObjectName("com.hosopy.actioncable:type=Consumer,name="
+                    + ObjectName.quote(name != null ? name : uri) + ",id=" + SEQUENCE.incrementAndGet());
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Invalid JMX name: " + name, e);
+        }
+    }
+
+    /*package*/ ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /*package*/ synchronized void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            return;
+        }
+        try {
+            server.registerMBean(this, objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered concurrently
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register " + objectName, e);
+        }
+    }
+
+    /*package*/ synchronized void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (InstanceNotFoundException e) {
+            // Not registered
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to unregister " + objectName, e);
+        }
+    }
+
+    @Override
+    public String getUri() {
+        return uri;
+    }
+
+    @Override
+    public String getEndpoint() {
+        final Endpoint endpoint = consumer.getConnection().getEndpoint();
+        return endpoint != null ? endpoint.getUri().toString() : null;
+    }
+
+    @Override
+    public String getConnectionState() {
+        return consumer.getConnection().getStateName();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return consumer.isConnected();
+    }
+
+    @Override
+    public boolean isStale() {
+        return consumer.getConnectionMonitor().connectionIsStale();
+    }
+
+    @Override
+    public int getReconnectAttempts() {
+        return consumer.getConnectionMonitor().getReconnectAttempts();
+    }
+
+    @Override
+    public int getStaleReconnectsAvoided() {
+        return consumer.getConnectionMonitor().getStaleReconnectsAvoided();
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return consumer.getMessagesReceived();
+    }
+
+    @Override
+    public List<SubscriptionInfo> getSubscriptions() {
+        final List<SubscriptionProxy> subscriptionProxies = consumer.getSubscriptions().getSubscriptionProxies();
+        rates.keySet().retainAll(subscriptionProxies);
+
+        final long now = System.nanoTime();
+        final List<SubscriptionInfo> infos = new ArrayList<SubscriptionInfo>(subscriptionProxies.size());
+        for (SubscriptionProxy subscriptionProxy : subscriptionProxies) {
+            final long received = subscriptionProxy.getReceivedCount();
+            Rate rate = rates.get(subscriptionProxy);
+            if (rate == null) {
+                rate = new Rate(received, now);
+                rates.put(subscriptionProxy, rate);
+            }
+            infos.add(new SubscriptionInfo(subscriptionProxy.getIdentifier(), subscriptionProxy.isConfirmed(),
+                    received, subscriptionProxy.getPerformedCount(), rate.update(received, now)));
+        }
+        return infos;
+    }
+
+    @Override
+    public void reconnect() {
+        consumer.getConnection().reopen();
+    }
+
+    @Override
+    public int unsubscribe(String identifier) {
+        int removed = 0;
+        final Subscriptions subscriptions = consumer.getSubscriptions();
+        for (SubscriptionProxy subscriptionProxy : subscriptions.getSubscriptionProxies()) {
+            if (subscriptionProxy.getIdentifier().equals(identifier)) {
+                subscriptions.remove(subscriptionProxy.getProxy());
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Rate between two reads at least {@link #RATE_INTERVAL} apart, so that concurrent readers see a stable value.
+     */
+    private static class Rate {
+
+        private long count;
+
+        private long sampledAt; // nanoseconds
+
+        private double rate = 0;
+
+        Rate(long count, long sampledAt) {
+            this.count = count;
+            this.sampledAt = sampledAt;
+        }
+
+        synchronized double update(long count, long now) {
+            final long elapsed = now - sampledAt;
+            if (elapsed >= RATE_INTERVAL) {
+                rate = (count - this.count) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+                this.count = count;
+                sampledAt = now;
+            }
+            return rate;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.hosopy.actioncable;
+
+import java.beans.ConstructorProperties;
+import java.util.List;
+
+/**
+ * Management interface of a {@link Consumer}, registered when {@link Consumer.Options#jmx} is true.
+ * <p/>
+ * <p>The object name is {@code com.hosopy.actioncable:type=Consumer,name=<jmxName or URI>,id=<n>}.</p>
+ *
+ * @author hosopy
+ */
+public interface ConsumerMXBean {
+
+    String getUri();
+
+    /**
+     * @return URI of the current or last connection attempt, null if never connected
+     */
+    String getEndpoint();
+
+    /**
+     * @return CONNECTING, OPEN, CLOSING or CLOSED
+     */
+    String getConnectionState();
+
+    boolean isConnected();
+
+    /**
+     * @return true if nothing has been received for longer than the stale threshold
+     */
+    boolean isStale();
+
+    /**
+     * @return Reconnection attempts since the last successful connection
+     */
+    int getReconnectAttempts();
+
+    int getStaleReconnectsAvoided();
+
+    /**
+     * @return Messages received since the consumer has been created
+     */
+    long getMessagesReceived();
+
+    List<SubscriptionInfo> getSubscriptions();
+
+    /**
+     * Close the connection and open it again, or open it if it is closed.
+     */
+    void reconnect();
+
+    /**
+     * Remove the subscriptions of an identifier.
+     *
+     * @param identifier Identifier of the subscriptions
+     * @return Number of subscriptions removed
+     */
+    int unsubscribe(String identifier);
+
+    /**
+     * Snapshot of a subscription.
+     */
+    class SubscriptionInfo {
+
+        private final String identifier;
+
+        private final boolean confirmed;
+
+        private final long received;
+
+        private final long performed;
+
+        private final double receivedRate;
+
+        @ConstructorProperties({"identifier", "confirmed", "received", "performed", "receivedRate"})
+        public SubscriptionInfo(String identifier, boolean confirmed, long received, long performed, double receivedRate) {
+            this.identifier = identifier;
+            this.confirmed = confirmed;
+            this.received = received;
+            this.performed = performed;
+            this.receivedRate = receivedRate;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        public boolean isConfirmed() {
+            return confirmed;
+        }
+
+        public long getReceived() {
+            return received;
+        }
+
+        public long getPerformed() {
+            return performed;
+        }
+
+        /**
+         * @return Messages received per second, averaged over at least one second
+         */
+        public double getReceivedRate() {
+            return receivedRate;
+        }
+    }
+}
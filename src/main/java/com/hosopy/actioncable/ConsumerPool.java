@@ -0,0 +1,202 @@
+package com.hosopy.actioncable;
+
+import com.hosopy.util.ConsistentHash;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ConsumerPool spreads subscriptions across several connections to the same server,
+ * so that one slow channel does not stall the others.
+ * <pre>{@code
+ * Consumer.Options options = new Consumer.Options();
+ * options.poolSize = 4;
+ * ConsumerPool pool = ActionCable.createConsumerPool(uri, options);
+ * Subscription subscription = pool.getSubscriptions().create(appearanceChannel);
+ * pool.connect();
+ * }</pre>
+ * <p/>
+ * <p>Each channel identifier is assigned to a consumer by consistent hashing.
+ * When a connection is lost its subscriptions move to the other consumers,
+ * and they move back once it is reconnected.</p>
+ *
+ * @author hosopy
+ */
+public class ConsumerPool {
+
+    private static final int REPLICAS = 64;
+
+    private final List<Consumer> consumers;
+
+    private final Map<Subscription, Consumer> owners = new HashMap<Subscription, Consumer>();
+
+    private final PooledSubscriptions subscriptions = new PooledSubscriptions();
+
+    private ConsistentHash<Consumer> ring;
+
+    /*package*/ ConsumerPool(URI uri, Consumer.Options options) {
+        final int size = Math.max(1, options.poolSize);
+        final List<Consumer> consumers = new ArrayList<Consumer>(size);
+        for (int i = 0; i < size; i++) {
+            final Consumer consumer = new Consumer(uri, options);
+            consumer.setStateListener(new Consumer.StateListener() {
+                @Override
+                public void onStateChanged(Consumer consumer) {
+                    rebalance();
+                }
+            });
+            consumers.add(consumer);
+        }
+        this.consumers = Collections.unmodifiableList(consumers);
+        this.ring = buildRing(consumers);
+    }
+
+    /**
+     * Get subscriptions container, shared by all consumers of the pool.
+     *
+     * @return {@link SubscriptionContainer} routing to the {@link Subscriptions} of the consumers
+     */
+    public SubscriptionContainer getSubscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * Get the consumers of the pool.
+     *
+     * @return Unmodifiable list of {@link Consumer}
+     */
+    public List<Consumer> getConsumers() {
+        return consumers;
+    }
+
+    /**
+     * Get the consumer the subscription is currently assigned to.
+     *
+     * @param subscription {@link Subscription} instance
+     * @return {@link Consumer}, or null if the subscription is not in the pool
+     */
+    public synchronized Consumer getConsumer(Subscription subscription) {
+        return owners.get(subscription);
+    }
+
+    /**
+     * Establish all connections.
+     */
+    public void connect() {
+        for (Consumer consumer : consumers) {
+            consumer.connect();
+        }
+    }
+
+    /**
+     * Disconnect all connections.
+     */
+    public void disconnect() {
+        for (Consumer consumer : consumers) {
+            consumer.disconnect();
+        }
+    }
+
+    public void unsubscribeAndDisconnect() {
+        subscriptions.removeAll();
+        disconnect();
+    }
+
+    /**
+     * Check if any connection is connected.
+     *
+     * @return true if connected
+     */
+    public boolean isConnected() {
+        for (Consumer consumer : consumers) {
+            if (consumer.isConnected()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reassign the subscriptions over the consumers which are connected or connecting,
+     * or over all of them if every connection is closed.
+     */
+    private synchronized void rebalance() {
+        final List<Consumer> available = new ArrayList<Consumer>();
+        for (Consumer consumer : consumers) {
+            if (!consumer.getConnection().isClosed()) {
+                available.add(consumer);
+            }
+        }
+        ring = buildRing(available.isEmpty() ? consumers : available);
+
+        for (Map.Entry<Subscription, Consumer> entry : owners.entrySet()) {
+            final Subscription subscription = entry.getKey();
+            final Consumer owner = entry.getValue();
+            final Consumer target = ring.get(subscription.getIdentifier());
+            if (target != owner) {
+                final SubscriptionProxy<?> subscriptionProxy = owner.getSubscriptions().detach(subscription);
+                if (subscriptionProxy != null) {
+                    target.getSubscriptions().attach(subscriptionProxy);
+                }
+                entry.setValue(target);
+            }
+        }
+    }
+
+    private ConsistentHash<Consumer> buildRing(List<Consumer> members) {
+        final ConsistentHash<Consumer> ring = new ConsistentHash<Consumer>(REPLICAS);
+        for (int i = 0; i < consumers.size(); i++) {
+            final Consumer consumer = consumers.get(i);
+            if (members.contains(consumer)) {
+                // Named by position so that a consumer always takes the same place on the ring
+                ring.add(String.valueOf(i), consumer);
+            }
+        }
+        return ring;
+    }
+
+    /**
+     * Subscriptions routed to the {@link Subscriptions} of the consumer assigned by the ring.
+     */
+    private class PooledSubscriptions implements SubscriptionContainer {
+
+        @Override
+        public <T extends Subscription> T create(Channel channel, Class<T> subscription) {
+            synchronized (ConsumerPool.this) {
+                final Consumer consumer = ring.get(channel.toIdentifier());
+                final T created = consumer.getSubscriptions().create(channel, subscription);
+                owners.put(created, consumer);
+                return created;
+            }
+        }
+
+        @Override
+        public Subscription create(Channel channel) {
+            return create(channel, Subscription.class);
+        }
+
+        @Override
+        public void remove(Subscription subscription) {
+            synchronized (ConsumerPool.this) {
+                final Consumer consumer = owners.remove(subscription);
+                if (consumer != null) {
+                    consumer.getSubscriptions().remove(subscription);
+                }
+            }
+        }
+
+        @Override
+        public void removeAll() {
+            synchronized (ConsumerPool.this) {
+                for (Consumer consumer : consumers) {
+                    consumer.getSubscriptions().removeAll();
+                }
+                owners.clear();
+            }
+        }
+    }
+}
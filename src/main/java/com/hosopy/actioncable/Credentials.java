@@ -0,0 +1,80 @@
+package com.hosopy.actioncable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headers and query parameters supplied by {@link CredentialsProvider}.
+ * <p/>
+ * <p>They are added to {@link Connection.Options#headers} and {@link Connection.Options#query},
+ * overriding entries with the same name.</p>
+ *
+ * @author hosopy
+ */
+public class Credentials {
+
+    private final Map<String, String> headers;
+
+    private final Map<String, String> query;
+
+    private final long expiresAt; // nanoseconds
+
+    private final boolean expires;
+
+    /**
+     * Constructor of credentials which never expire.
+     *
+     * @param headers HTTP headers, may be null
+     * @param query   Query parameters, may be null
+     */
+    public Credentials(Map<String, String> headers, Map<String, String> query) {
+        this.headers = headers != null ? headers : Collections.<String, String>emptyMap();
+        this.query = query != null ? query : Collections.<String, String>emptyMap();
+        this.expiresAt = 0;
+        this.expires = false;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param headers   HTTP headers, may be null
+     * @param query     Query parameters, may be null
+     * @param expiresIn Lifetime of the credentials
+     * @param unit      Time unit of expiresIn
+     */
+    public Credentials(Map<String, String> headers, Map<String, String> query, long expiresIn, TimeUnit unit) {
+        this.headers = headers != null ? headers : Collections.<String, String>emptyMap();
+        this.query = query != null ? query : Collections.<String, String>emptyMap();
+        this.expiresAt = System.nanoTime() + unit.toNanos(expiresIn);
+        this.expires = true;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public Map<String, String> getQuery() {
+        return query;
+    }
+
+    /**
+     * Check if the credentials have expired.
+     *
+     * @return true if expired
+     */
+    public boolean isExpired() {
+        return expires && System.nanoTime() - expiresAt >= 0;
+    }
+
+    /*package*/ boolean expires() {
+        return expires;
+    }
+
+    /**
+     * @return Remaining lifetime in nanoseconds
+     */
+    /*package*/ long getRemaining() {
+        return expiresAt - System.nanoTime();
+    }
+}
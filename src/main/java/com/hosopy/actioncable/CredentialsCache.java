@@ -0,0 +1,165 @@
+package com.hosopy.actioncable;
+
+import com.hosopy.concurrent.WheelTimer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the credentials of {@link CredentialsProvider} and refreshes them ahead of expiry.
+ * <p/>
+ * <p>Concurrent requests share a single fetch.</p>
+ */
+/*package*/ class CredentialsCache {
+
+    private final CredentialsProvider provider;
+
+    private final long refreshAhead; // nanoseconds
+
+    private final List<CredentialsProvider.Callback> waiting = new ArrayList<CredentialsProvider.Callback>();
+
+    private Credentials credentials;
+
+    private boolean fetching = false;
+
+    private boolean stopped = false;
+
+    private WheelTimer.Timeout refreshTimeout;
+
+    /*package*/ CredentialsCache(CredentialsProvider provider, long refreshAhead, TimeUnit unit) {
+        this.provider = provider;
+        this.refreshAhead = unit.toNanos(refreshAhead);
+    }
+
+    /**
+     * Call back with valid credentials, synchronously if they are cached.
+     *
+     * @param callback Callback
+     */
+    /*package*/ void get(CredentialsProvider.Callback callback) {
+        final Credentials cached;
+        synchronized (this) {
+            stopped = false;
+            cached = credentials != null && !credentials.isExpired() ? credentials : null;
+            if (cached != null) {
+                scheduleRefresh(cached);
+            } else {
+                waiting.add(callback);
+                if (fetching) {
+                    return;
+                }
+                fetching = true;
+            }
+        }
+
+        if (cached != null) {
+            callback.onCredentials(cached);
+        } else {
+            fetch();
+        }
+    }
+
+    /**
+     * Drop the cached credentials, e.g. when the server has rejected them.
+     */
+    /*package*/ synchronized void invalidate() {
+        credentials = null;
+    }
+
+    /**
+     * Stop refreshing until the credentials are requested again.
+     */
+    /*package*/ synchronized void stop() {
+        stopped = true;
+        cancelRefresh();
+    }
+
+    private void fetch() {
+        try {
+            provider.fetch(new CredentialsProvider.Callback() {
+                private boolean called = false;
+
+                @Override
+                public void onCredentials(Credentials newCredentials) {
+                    final List<CredentialsProvider.Callback> callbacks;
+                    synchronized (CredentialsCache.this) {
+                        if (called) {
+                            return;
+                        }
+                        called = true;
+                        credentials = newCredentials;
+                        fetching = false;
+                        callbacks = drainWaiting();
+                        cancelRefresh();
+                        scheduleRefresh(newCredentials);
+                    }
+                    for (CredentialsProvider.Callback callback : callbacks) {
+                        callback.onCredentials(newCredentials);
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    final List<CredentialsProvider.Callback> callbacks;
+                    synchronized (CredentialsCache.this) {
+                        if (called) {
+                            return;
+                        }
+                        called = true;
+                        fetching = false;
+                        callbacks = drainWaiting();
+                    }
+                    for (CredentialsProvider.Callback callback : callbacks) {
+                        callback.onFailure(e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            final List<CredentialsProvider.Callback> callbacks;
+            synchronized (this) {
+                fetching = false;
+                callbacks = drainWaiting();
+            }
+            for (CredentialsProvider.Callback callback : callbacks) {
+                callback.onFailure(e);
+            }
+        }
+    }
+
+    private void refresh() {
+        synchronized (this) {
+            refreshTimeout = null;
+            if (stopped || fetching) {
+                return;
+            }
+            fetching = true;
+        }
+        fetch();
+    }
+
+    private void scheduleRefresh(Credentials current) {
+        if (stopped || refreshTimeout != null || !current.expires()) {
+            return;
+        }
+        refreshTimeout = WheelTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, Math.max(0, current.getRemaining() - refreshAhead), TimeUnit.NANOSECONDS);
+    }
+
+    private void cancelRefresh() {
+        if (refreshTimeout != null) {
+            refreshTimeout.cancel();
+            refreshTimeout = null;
+        }
+    }
+
+    private List<CredentialsProvider.Callback> drainWaiting() {
+        final List<CredentialsProvider.Callback> callbacks = new ArrayList<CredentialsProvider.Callback>(waiting);
+        waiting.clear();
+        return callbacks;
+    }
+}
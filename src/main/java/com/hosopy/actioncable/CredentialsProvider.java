@@ -0,0 +1,47 @@
+package com.hosopy.actioncable;
+
+/**
+ * CredentialsProvider supplies headers and query parameters for each connection attempt.
+ * <p/>
+ * <p>Credentials are cached until they expire, and fetched again ahead of expiry in the background,
+ * so that a reconnect does not wait for a token round-trip.</p>
+ * <pre>{@code
+ * options.credentialsProvider = new CredentialsProvider() {
+ *     public void fetch(final CredentialsProvider.Callback callback) {
+ *         tokenService.requestToken(new TokenCallback() {
+ *             public void onToken(String token, long expiresInSeconds) {
+ *                 Map<String, String> headers = new HashMap<String, String>();
+ *                 headers.put("Authorization", "Bearer " + token);
+ *                 callback.onCredentials(new Credentials(headers, null, expiresInSeconds, TimeUnit.SECONDS));
+ *             }
+ *
+ *             public void onError(Exception e) {
+ *                 callback.onFailure(e);
+ *             }
+ *         });
+ *     }
+ * };
+ * }</pre>
+ *
+ * @author hosopy
+ */
+public interface CredentialsProvider {
+
+    /**
+     * Fetch credentials.
+     * <p/>
+     * <p>This method must not block. Call back from any thread once the credentials are available.</p>
+     *
+     * @param callback Callback to be called exactly once
+     */
+    void fetch(Callback callback);
+
+    /**
+     * Callback of {@link #fetch(Callback)}
+     */
+    interface Callback {
+        void onCredentials(Credentials credentials);
+
+        void onFailure(Exception e);
+    }
+}
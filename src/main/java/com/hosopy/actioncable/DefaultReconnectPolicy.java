@@ -0,0 +1,82 @@
+package com.hosopy.actioncable;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * DefaultReconnectPolicy reconnects with exponential backoff and jitter.
+ * <ul>
+ * <li>Stops when the server rejects the credentials (HTTP 401/403 or an "unauthorized" disconnect message)
+ * or closes with 1008 (policy violation). With a {@link CredentialsProvider}, rejected credentials are retried
+ * once right away with fresh credentials.</li>
+ * <li>Waits for the maximum delay when the server closes with 1013 (try again later).</li>
+ * <li>Stops after {@link Connection.Options#reconnectionMaxAttempts}.</li>
+ * </ul>
+ *
+ * @author hosopy
+ * @see <a href="https://aws.amazon.com/blogs/architecture/exponential-backoff-and-jitter/">Exponential Backoff And Jitter</a>
+ */
+public class DefaultReconnectPolicy implements ReconnectPolicy {
+
+    private static final int POLICY_VIOLATION = 1008;
+
+    private static final int TRY_AGAIN_LATER = 1013;
+
+    private final int maxAttempts;
+
+    private final long base; // milliseconds
+
+    private final long cap; // milliseconds
+
+    private final Connection.Options.Jitter jitter;
+
+    private final boolean refreshesCredentials;
+
+    /**
+     * Constructor
+     *
+     * @param options Options providing reconnectionMaxAttempts, reconnectionDelay, reconnectionDelayMax and reconnectionJitter
+     */
+    public DefaultReconnectPolicy(Connection.Options options) {
+        this.maxAttempts = options.reconnectionMaxAttempts;
+        this.base = options.reconnectionDelay * 1000L;
+        this.cap = Math.max(base, options.reconnectionDelayMax * 1000L);
+        this.jitter = options.reconnectionJitter != null ? options.reconnectionJitter : Connection.Options.Jitter.NONE;
+        this.refreshesCredentials = options.credentialsProvider != null;
+    }
+
+    @Override
+    public long nextDelay(Cause cause) {
+        if (cause.getAttempts() >= maxAttempts) {
+            return ABORT;
+        }
+
+        final boolean rejected = cause.isUnauthorized();
+        if (rejected && refreshesCredentials && !cause.isCredentialsRefreshed()) {
+            return 0;
+        }
+
+        if (rejected || cause.getCloseCode() == POLICY_VIOLATION) {
+            // Retrying with the same credentials is futile
+            return ABORT;
+        }
+
+        if (cause.getCloseCode() == TRY_AGAIN_LATER) {
+            return cap;
+        }
+
+        final long exponential = Math.min(cap, base << Math.min(cause.getAttempts(), 20));
+
+        switch (jitter) {
+            case FULL:
+                return random(0, exponential);
+            case DECORRELATED:
+                return Math.min(cap, random(base, Math.max(base, cause.getPreviousDelay() * 3)));
+            default:
+                return exponential;
+        }
+    }
+
+    private static long random(long min, long max) {
+        return min >= max ? min : ThreadLocalRandom.current().nextLong(min, max + 1);
+    }
+}
@@ -0,0 +1,163 @@
+package com.hosopy.actioncable;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A server to connect to, with its health observed by the client.
+ * <pre>{@code
+ * options.endpoints = Arrays.asList(
+ *         new Endpoint(new URI("wss://cable1.example.com/cable")),
+ *         new Endpoint(new URI("wss://cable2.example.com/cable"), 2));
+ * }</pre>
+ * <p/>
+ * <p>The health score combines the handshake latency, the failure rate and how late pings arrive.
+ * Lower is better. Endpoints which have never been connected are assumed to take one second to handshake.</p>
+ *
+ * @author hosopy
+ */
+public class Endpoint {
+
+    /**
+     * Weight of the latest sample in the moving averages
+     */
+    private static final double ALPHA = 0.3;
+
+    private static final double UNKNOWN_LATENCY = TimeUnit.SECONDS.toNanos(1);
+
+    private final URI uri;
+
+    private final int weight;
+
+    private boolean measured = false;
+
+    private double handshakeLatency = 0; // nanoseconds
+
+    private double pingDelay = 0; // nanoseconds
+
+    private double failureRate = 0;
+
+    private int consecutiveFailures = 0;
+
+    private long openUntil = 0; // nanoseconds
+
+    private boolean open = false;
+
+    /**
+     * Constructor
+     *
+     * @param uri URI to connect
+     */
+    public Endpoint(URI uri) {
+        this(uri, 1);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param uri    URI to connect
+     * @param weight Preference of this endpoint, the score is divided by it
+     */
+    public Endpoint(URI uri, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+        this.uri = uri;
+        this.weight = weight;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Return the health score. Lower is better.
+     *
+     * @return Score
+     */
+    public synchronized double getScore() {
+        final double latency = measured ? handshakeLatency : UNKNOWN_LATENCY;
+        return (latency + pingDelay) * (1 + 10 * failureRate) / weight;
+    }
+
+    /**
+     * Return the moving average of the handshake latency.
+     *
+     * @param unit Time unit of the result
+     * @return Latency, or -1 if never connected
+     */
+    public synchronized long getHandshakeLatency(TimeUnit unit) {
+        return measured ? unit.convert((long) handshakeLatency, TimeUnit.NANOSECONDS) : -1;
+    }
+
+    /**
+     * Return the moving average of how late pings arrive.
+     *
+     * @param unit Time unit of the result
+     * @return Delay
+     */
+    public synchronized long getPingDelay(TimeUnit unit) {
+        return unit.convert((long) pingDelay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Return the moving average of connection failures.
+     *
+     * @return Rate between 0 and 1
+     */
+    public synchronized double getFailureRate() {
+        return failureRate;
+    }
+
+    /**
+     * Check if the circuit is open, i.e. the endpoint is skipped after repeated failures.
+     *
+     * @return true if open
+     */
+    public synchronized boolean isCircuitOpen() {
+        return open && System.nanoTime() - openUntil < 0;
+    }
+
+    /*package*/ synchronized long getOpenUntil() {
+        return openUntil;
+    }
+
+    /*package*/ synchronized void recordSuccess(long latency) {
+        handshakeLatency = measured ? average(handshakeLatency, latency) : latency;
+        measured = true;
+        failureRate = average(failureRate, 0);
+        consecutiveFailures = 0;
+        open = false;
+    }
+
+    /**
+     * Record a failed connection attempt, opening the circuit after failureThreshold consecutive failures.
+     * <p/>
+     * <p>Once the open period has passed, a single attempt is let through. If it fails too, the circuit opens again.</p>
+     */
+    /*package*/ synchronized void recordFailure(int failureThreshold, long openTimeout) {
+        failureRate = average(failureRate, 1);
+        consecutiveFailures++;
+        if (consecutiveFailures >= failureThreshold) {
+            open = true;
+            openUntil = System.nanoTime() + openTimeout;
+        }
+    }
+
+    /*package*/ synchronized void recordPingDelay(long delay) {
+        pingDelay = average(pingDelay, Math.max(0, delay));
+    }
+
+    private static double average(double average, double sample) {
+        return average + ALPHA * (sample - average);
+    }
+
+    @Override
+    public String toString() {
+        return uri.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.hosopy.actioncable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects the endpoint of the next connection attempt.
+ * <p/>
+ * <p>Endpoints with a closed circuit are preferred, then the lowest score, then the order of the list.
+ * If every circuit is open, the endpoint whose circuit closes first is selected.</p>
+ */
+/*package*/ class EndpointSelector {
+
+    private final List<Endpoint> endpoints;
+
+    private final int failureThreshold;
+
+    private final long openTimeout; // nanoseconds
+
+    /*package*/ EndpointSelector(List<Endpoint> endpoints, Connection.Options options) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("endpoints must not be empty");
+        }
+        this.endpoints = new ArrayList<Endpoint>(endpoints);
+        this.failureThreshold = Math.max(1, options.endpointFailureThreshold);
+        this.openTimeout = options.endpointOpenTimeUnit.toNanos(options.endpointOpenTimeout);
+    }
+
+    /*package*/ Endpoint select() {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+
+        Endpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        Endpoint earliest = null;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isCircuitOpen()) {
+                if (earliest == null || endpoint.getOpenUntil() - earliest.getOpenUntil() < 0) {
+                    earliest = endpoint;
+                }
+                continue;
+            }
+            final double score = endpoint.getScore();
+            if (best == null || score < bestScore) {
+                best = endpoint;
+                bestScore = score;
+            }
+        }
+        return best != null ? best : earliest;
+    }
+
+    /*package*/ void recordFailure(Endpoint endpoint) {
+        endpoint.recordFailure(failureThreshold, openTimeout);
+    }
+
+    /*package*/ List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+}
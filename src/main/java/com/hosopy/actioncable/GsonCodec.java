@@ -0,0 +1,49 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * {@link Codec} of the JSON wire format of ActionCable, with Gson.
+ * <p/>
+ * <p>Binary frames are read as UTF-8 JSON, commands are sent as text frames.</p>
+ *
+ * @author hosopy
+ */
+public class GsonCodec implements Codec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Gson MESSAGE_GSON = new Gson();
+
+    private static final Gson COMMAND_GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+
+    @Override
+    public Message decode(String text) {
+        return MESSAGE_GSON.fromJson(text, Message.class);
+    }
+
+    @Override
+    public Message decode(Reader text) {
+        return MESSAGE_GSON.fromJson(text, Message.class);
+    }
+
+    @Override
+    public Message decode(ByteBuffer bytes) {
+        return decode(UTF_8.decode(bytes.duplicate()).toString());
+    }
+
+    @Override
+    public String encode(Command command) {
+        return COMMAND_GSON.toJson(command);
+    }
+
+    @Override
+    public ByteBuffer encodeBinary(Command command) {
+        return null;
+    }
+}
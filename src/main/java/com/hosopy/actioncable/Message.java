@@ -1,37 +1,76 @@
 package com.hosopy.actioncable;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 
-class Message {
+/**
+ * Message received from the server, decoded by a {@link Codec}.
+ *
+ * @author hosopy
+ */
+public class Message {
 
-    private static final Gson GSON = new Gson();
-
-    @SuppressWarnings("unused")
     private String identifier;
 
-    @SuppressWarnings("unused")
     private String type;
 
-    @SuppressWarnings("unused")
     private JsonElement message;
 
-    /*package*/ static Message fromJson(String json) {
-        return GSON.fromJson(json, Message.class);
+    private String reason;
+
+    private Boolean reconnect;
+
+    @SuppressWarnings("unused")
+    private Message() {
+        // For Gson
+    }
+
+    /**
+     * Constructor, for codecs
+     *
+     * @param type       Type (e.g. "welcome", "ping", "confirm_subscription"), null for a message to a subscription
+     * @param identifier Identifier of the subscription, may be null
+     * @param message    Payload, may be null
+     * @param reason     Reason of a disconnect, may be null
+     * @param reconnect  Whether the server allows to reconnect after a disconnect, may be null
+     */
+    public Message(String type, String identifier, JsonElement message, String reason, Boolean reconnect) {
+        this.type = type;
+        this.identifier = identifier;
+        this.message = message;
+        this.reason = reason;
+        this.reconnect = reconnect;
     }
 
-    /*package*/ String getIdentifier() {
+    public String getIdentifier() {
         return identifier;
     }
 
-    /*package*/ String getType() {
+    public String getType() {
         return type;
     }
 
-    /*package*/ JsonElement getMessage() {
+    public JsonElement getMessage() {
         return message;
     }
 
+    /**
+     * @return Server time carried by a ping, in seconds, 0 if none
+     */
+    /*package*/ long getTimestamp() {
+        if (message == null || !message.isJsonPrimitive() || !message.getAsJsonPrimitive().isNumber()) {
+            return 0;
+        }
+        return message.getAsLong();
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public boolean isReconnect() {
+        return reconnect != null && reconnect;
+    }
+
     /*package*/ boolean isWelcome() {
         return "welcome".equals(getType());
     }
@@ -47,4 +86,8 @@ class Message {
     /*package*/ boolean isRejection() {
         return "reject_subscription".equals(getType());
     }
+
+    /*package*/ boolean isDisconnect() {
+        return "disconnect".equals(getType());
+    }
 }
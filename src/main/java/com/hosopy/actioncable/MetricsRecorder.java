@@ -0,0 +1,148 @@
+package com.hosopy.actioncable;
+
+/**
+ * MetricsRecorder receives counters and timers from the hot paths of a {@link Consumer}.
+ * <p/>
+ * <p>Set it to {@link Connection.Options#metricsRecorder} and forward the values to the metrics library of your choice.
+ * Methods are called synchronously from the socket thread, the EventLoop or the timer thread, so they must be cheap
+ * and thread-safe, and must not block. Only primitives and strings already held by the library are passed, so nothing
+ * is allocated on behalf of the recorder. Extend {@link Adapter} to override only what you need.</p>
+ * <pre>{@code
+ * options.metricsRecorder = new MetricsRecorder.Adapter() {
+ *     public void onFrameReceived(int length) {
+ *         framesIn.increment();
+ *         bytesIn.add(length);
+ *     }
+ * };
+ * }</pre>
+ * <p/>
+ * <p>Durations are in nanoseconds.</p>
+ *
+ * @author hosopy
+ */
+public interface MetricsRecorder {
+
+    /**
+     * Default recorder, does nothing. Timers are not even read while it is in use.
+     */
+    MetricsRecorder NOOP = new Adapter();
+
+    /**
+     * A frame has been received, on the socket thread.
+     *
+     * @param length Bytes of the frame, a text frame counted in UTF-8
+     */
+    void onFrameReceived(int length);
+
+    /**
+     * A frame has been enqueued to the transport.
+     *
+     * @param length Bytes of the frame, a text frame counted in UTF-8
+     */
+    void onFrameSent(int length);
+
+    /**
+     * The WebSocket handshake has completed.
+     *
+     * @param nanos Time since the connection attempt started
+     */
+    void onConnectionOpened(long nanos);
+
+    /**
+     * The connection has been closed after a closing handshake, or cancelled while closing.
+     *
+     * @param code Close code
+     */
+    void onConnectionClosed(int code);
+
+    /**
+     * The connection or a connection attempt has failed.
+     *
+     * @param statusCode HTTP status of a failed handshake, -1 if none
+     */
+    void onConnectionFailed(int statusCode);
+
+    /**
+     * An inbound message has been parsed, on EventLoop.
+     *
+     * @param nanos Parse time
+     */
+    void onMessageParsed(long nanos);
+
+    /**
+     * A received message has been dispatched to the subscriptions of its identifier, on EventLoop.
+     *
+     * @param identifier Identifier of the subscription
+     * @param nanos      Time to find the subscriptions and run their callbacks
+     */
+    void onMessageDispatched(String identifier, long nanos);
+
+    /**
+     * The received callback of a subscription has returned, on EventLoop.
+     *
+     * @param identifier Identifier of the subscription
+     * @param nanos      Callback time
+     */
+    void onCallback(String identifier, long nanos);
+
+    /**
+     * Sampled whenever a received frame is queued for dispatch.
+     *
+     * @param depth Tasks pending on the EventLoop shared by all consumers, including this one
+     */
+    void onEventLoopQueueDepth(int depth);
+
+    /**
+     * The connection monitor is about to reconnect.
+     *
+     * @param attempt      Attempts since the last successful connection, starting at 1
+     * @param delayMillis  Delay before the attempt, 0 when a stale connection is reopened right away
+     */
+    void onReconnect(int attempt, long delayMillis);
+
+    /**
+     * Empty implementation of {@link MetricsRecorder}.
+     */
+    class Adapter implements MetricsRecorder {
+
+        @Override
+        public void onFrameReceived(int length) {
+        }
+
+        @Override
+        public void onFrameSent(int length) {
+        }
+
+        @Override
+        public void onConnectionOpened(long nanos) {
+        }
+
+        @Override
+        public void onConnectionClosed(int code) {
+        }
+
+        @Override
+        public void onConnectionFailed(int statusCode) {
+        }
+
+        @Override
+        public void onMessageParsed(long nanos) {
+        }
+
+        @Override
+        public void onMessageDispatched(String identifier, long nanos) {
+        }
+
+        @Override
+        public void onCallback(String identifier, long nanos) {
+        }
+
+        @Override
+        public void onEventLoopQueueDepth(int depth) {
+        }
+
+        @Override
+        public void onReconnect(int attempt, long delayMillis) {
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package com.hosopy.actioncable;
+
+import com.hosopy.actioncable.transport.FragmentedText;
+import com.hosopy.concurrent.EventLoop;
+import com.hosopy.concurrent.WheelTimer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Make-before-break migration of a {@link Consumer} to a new {@link Connection}.
+ * <p/>
+ * <p>The subscriptions are replayed onto the new connection while the previous one keeps dispatching.
+ * Once every subscription is confirmed, dispatch switches over and the previous connection is closed.
+ * Messages received by both connections during the overlap are delivered only once.</p>
+ * <p/>
+ * <p>Everything except {@link #start()} runs on EventLoop.</p>
+ */
+/*package*/ class Migration {
+
+    private final Consumer consumer;
+
+    private final Connection previous;
+
+    private final Connection next;
+
+    private final Connection.Listener delegate;
+
+    private final Consumer.MigrationCallback callback;
+
+    private final long timeout;
+
+    private final TimeUnit timeUnit;
+
+    private final Set<String> replayed = new LinkedHashSet<String>();
+
+    private final Set<String> pending = new HashSet<String>();
+
+    /**
+     * Frames received by the new connection before the switch, in order
+     */
+    private final List<Frame> buffered = new ArrayList<Frame>();
+
+    /**
+     * Multiset of frames delivered by the previous connection during the overlap
+     */
+    private final Map<Object, Integer> delivered = new HashMap<Object, Integer>();
+
+    private WheelTimer.Timeout migrationTimeout;
+
+    private boolean welcomed = false;
+
+    private boolean switched = false;
+
+    private boolean finished = false;
+
+    /*package*/ Migration(Consumer consumer, Connection previous, Connection next, Connection.Listener delegate,
+                          Consumer.MigrationCallback callback, long timeout, TimeUnit timeUnit) {
+        this.consumer = consumer;
+        this.previous = previous;
+        this.next = next;
+        this.delegate = delegate;
+        this.callback = callback;
+        this.timeout = timeout;
+        this.timeUnit = timeUnit;
+    }
+
+    /*package*/ void start() {
+        EventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                previous.setListener(new OverlapListener());
+                next.setListener(new NextListener());
+                next.open();
+
+                migrationTimeout = WheelTimer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        EventLoop.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                fail(new TimeoutException("Subscriptions were not confirmed within " + timeout + " " + timeUnit));
+                            }
+                        });
+                    }
+                }, timeout, timeUnit);
+            }
+        });
+    }
+
+    /**
+     * Give up the migration and keep the previous connection.
+     */
+    /*package*/ void cancel() {
+        EventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                fail(new IllegalStateException("Migration cancelled"));
+            }
+        });
+    }
+
+    private void replay() {
+        welcomed = true;
+        for (String identifier : consumer.getSubscriptions().getIdentifiers()) {
+            if (replayed.add(identifier)) {
+                pending.add(identifier);
+                consumer.send(next, Command.subscribe(identifier));
+            }
+        }
+        switchOverIfConfirmed();
+    }
+
+    private void switchOverIfConfirmed() {
+        if (finished || !welcomed || !pending.isEmpty()) {
+            return;
+        }
+        finished = true;
+        switched = true;
+        cancelTimeout();
+
+        previous.setListener(new RetiringListener());
+        consumer.switchConnection(next, this);
+
+        // Catch up with subscriptions changed during the overlap
+        final Set<String> identifiers = consumer.getSubscriptions().getIdentifiers();
+        for (String identifier : identifiers) {
+            if (!replayed.contains(identifier)) {
+                consumer.send(next, Command.subscribe(identifier));
+            }
+        }
+        for (String identifier : replayed) {
+            if (!identifiers.contains(identifier)) {
+                consumer.send(next, Command.unsubscribe(identifier));
+            }
+        }
+
+        for (Frame frame : buffered) {
+            deliver(frame.payload, frame.receivedAt);
+        }
+        buffered.clear();
+
+        previous.close();
+
+        if (callback != null) {
+            callback.onMigrated();
+        }
+    }
+
+    private void fail(Exception e) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        cancelTimeout();
+
+        previous.setListener(delegate);
+        next.setListener(null);
+        next.close();
+        delivered.clear();
+        buffered.clear();
+        consumer.finishMigration(this);
+
+        if (callback != null) {
+            callback.onFailure(e);
+        }
+    }
+
+    private void deliver(Object frame, long receivedAt) {
+        final Integer count = delivered.get(frame);
+        if (count != null) {
+            // Already delivered by the previous connection
+            if (count == 1) {
+                delivered.remove(frame);
+            } else {
+                delivered.put(frame, count - 1);
+            }
+            return;
+        }
+        dispatch(frame, receivedAt);
+    }
+
+    private void dispatch(Object frame, long receivedAt) {
+        if (frame instanceof ByteBuffer) {
+            delegate.onMessage((ByteBuffer) frame, receivedAt);
+        } else {
+            delegate.onMessage((String) frame, receivedAt);
+        }
+    }
+
+    private void record(Object frame) {
+        final Integer count = delivered.get(frame);
+        delivered.put(frame, count == null ? 1 : count + 1);
+    }
+
+    private void cancelTimeout() {
+        if (migrationTimeout != null) {
+            migrationTimeout.cancel();
+            migrationTimeout = null;
+        }
+    }
+
+    /**
+     * Listener of the previous connection during the overlap, recording what has been delivered.
+     */
+    private class OverlapListener implements Connection.Listener {
+        @Override
+        public void onOpen() {
+            delegate.onOpen();
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            delegate.onFailure(e);
+        }
+
+        @Override
+        public void onMessage(String string, long receivedAt) {
+            record(string);
+            delegate.onMessage(string, receivedAt);
+        }
+
+        @Override
+        public void onMessage(FragmentedText text, long receivedAt) {
+            // Joined, so that it compares equal to the same frame received whole by the other connection
+            onMessage(text.toString(), receivedAt);
+        }
+
+        @Override
+        public void onMessage(ByteBuffer bytes, long receivedAt) {
+            // ByteBuffer equality is by content, keep a copy of the position the codec may move
+            record(bytes.duplicate());
+            delegate.onMessage(bytes, receivedAt);
+        }
+
+        @Override
+        public void onClosing() {
+            delegate.onClosing();
+        }
+
+        @Override
+        public void onClosed() {
+            delegate.onClosed();
+        }
+    }
+
+    /**
+     * Listener of the previous connection after the switch.
+     */
+    private class RetiringListener implements Connection.Listener {
+        @Override
+        public void onOpen() {
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            delivered.clear();
+        }
+
+        @Override
+        public void onMessage(String string, long receivedAt) {
+        }
+
+        @Override
+        public void onMessage(FragmentedText text, long receivedAt) {
+        }
+
+        @Override
+        public void onMessage(ByteBuffer bytes, long receivedAt) {
+        }
+
+        @Override
+        public void onClosing() {
+        }
+
+        @Override
+        public void onClosed() {
+            // Nothing more can be duplicated
+            delivered.clear();
+        }
+    }
+
+    /**
+     * Listener of the new connection, forwarding to the consumer after the switch.
+     */
+    private class NextListener implements Connection.Listener {
+        @Override
+        public void onOpen() {
+            if (switched) {
+                delegate.onOpen();
+            }
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            if (switched) {
+                delegate.onFailure(e);
+            } else {
+                fail(e);
+            }
+        }
+
+        @Override
+        public void onMessage(String string, long receivedAt) {
+            onFrame(string, null, receivedAt);
+        }
+
+        @Override
+        public void onMessage(FragmentedText text, long receivedAt) {
+            // Joined, so that it compares equal to the same frame received whole by the other connection
+            onMessage(text.toString(), receivedAt);
+        }
+
+        @Override
+        public void onMessage(ByteBuffer bytes, long receivedAt) {
+            onFrame(bytes, bytes, receivedAt);
+        }
+
+        /**
+         * @param frame      String or ByteBuffer
+         * @param bytes      The frame if binary, null otherwise
+         * @param receivedAt When the frame has been received, System.nanoTime() value
+         */
+        private void onFrame(Object frame, ByteBuffer bytes, long receivedAt) {
+            if (switched) {
+                if (delivered.isEmpty()) {
+                    dispatch(frame, receivedAt);
+                } else {
+                    deliver(frame, receivedAt);
+                }
+                return;
+            }
+
+            // Decode a duplicate, the frame may be buffered
+            final Codec codec = consumer.getCodec();
+            final Message message = bytes != null ? codec.decode(bytes.duplicate()) : codec.decode((String) frame);
+            if (message == null) {
+                return;
+            }
+            if (message.isWelcome()) {
+                replay();
+            } else if (message.isConfirmation()) {
+                pending.remove(message.getIdentifier());
+                switchOverIfConfirmed();
+            } else if (message.isRejection()) {
+                fail(new IllegalStateException("Subscription rejected: " + message.getIdentifier()));
+            } else if (message.isDisconnect()) {
+                fail(new IOException("Disconnected by server: " + message.getReason()));
+            } else if (message.getIdentifier() != null) {
+                buffered.add(new Frame(frame, receivedAt));
+            }
+        }
+
+        @Override
+        public void onClosing() {
+            if (switched) {
+                delegate.onClosing();
+            }
+        }
+
+        @Override
+        public void onClosed() {
+            if (switched) {
+                delegate.onClosed();
+            } else {
+                fail(new IOException("Connection closed during migration"));
+            }
+        }
+    }
+
+    /**
+     * A frame buffered along with its arrival, so that the latency of a broadcast includes the buffering.
+     */
+    private static class Frame {
+        /**
+         * String or ByteBuffer
+         */
+        private final Object payload;
+
+        private final long receivedAt; // System.nanoTime() value
+
+        private Frame(Object payload, long receivedAt) {
+            this.payload = payload;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.hosopy.actioncable;
+
+/**
+ * ReconnectPolicy decides whether and when to reconnect after the connection has been closed or has failed.
+ *
+ * <pre>{@code
+ * options.reconnectPolicy = new ReconnectPolicy() {
+ *     public long nextDelay(ReconnectPolicy.Cause cause) {
+ *         return cause.getAttempts() < 5 ? 1000 : ReconnectPolicy.ABORT;
+ *     }
+ * };
+ * }</pre>
+ *
+ * @author hosopy
+ * @see DefaultReconnectPolicy
+ */
+public interface ReconnectPolicy {
+
+    /**
+     * Returned by {@link #nextDelay(Cause)} to stop reconnecting.
+     */
+    long ABORT = -1;
+
+    /**
+     * Decide how long to wait before the next reconnection attempt.
+     *
+     * @param cause Why the connection was lost
+     * @return Delay in milliseconds, or {@link #ABORT} to stop reconnecting
+     */
+    long nextDelay(Cause cause);
+
+    /**
+     * Cause describes why the connection was lost.
+     */
+    class Cause {
+        /**
+         * Close code used when the connection was lost without a close frame.
+         */
+        public static final int ABNORMAL_CLOSURE = 1006;
+
+        /**
+         * Reason of the disconnect message of reject_unauthorized_connection.
+         */
+        public static final String UNAUTHORIZED = "unauthorized";
+
+        private final int attempts;
+
+        private final long previousDelay;
+
+        private final int closeCode;
+
+        private final String reason;
+
+        private final Exception failure;
+
+        private final int statusCode;
+
+        private final boolean credentialsRefreshed;
+
+        /*package*/ Cause(int attempts, long previousDelay, int closeCode, String reason, Exception failure, int statusCode,
+                          boolean credentialsRefreshed) {
+            this.attempts = attempts;
+            this.previousDelay = previousDelay;
+            this.closeCode = closeCode;
+            this.reason = reason;
+            this.failure = failure;
+            this.statusCode = statusCode;
+            this.credentialsRefreshed = credentialsRefreshed;
+        }
+
+        /**
+         * Return the number of attempts made since the last successful connection.
+         *
+         * @return The number of attempts
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * Return the delay returned for the previous attempt.
+         *
+         * @return Delay in milliseconds, 0 for the first attempt
+         */
+        public long getPreviousDelay() {
+            return previousDelay;
+        }
+
+        /**
+         * Return the WebSocket close code.
+         *
+         * @return Close code, {@link #ABNORMAL_CLOSURE} if no close frame was received
+         * @see <a href="https://tools.ietf.org/html/rfc6455#section-7.4.1">Defined Status Codes</a>
+         */
+        public int getCloseCode() {
+            return closeCode;
+        }
+
+        /**
+         * Return the WebSocket close reason, or the reason of the disconnect message sent by the server before closing
+         * (e.g. "unauthorized").
+         *
+         * @return Close reason, may be null
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * Return the failure.
+         *
+         * @return Exception, null if the connection was closed cleanly
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        /**
+         * Return the HTTP status of a failed handshake.
+         *
+         * @return HTTP status code, -1 if the handshake did not fail with an HTTP response
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * Return whether the connection has already been retried with fresh credentials
+         * since the last successful connection, i.e. the credentials have been rejected again.
+         *
+         * @return true if fresh credentials have already been tried
+         */
+        public boolean isCredentialsRefreshed() {
+            return credentialsRefreshed;
+        }
+
+        /**
+         * Return whether the server rejected the credentials, by HTTP 401/403 or an "unauthorized" disconnect message.
+         *
+         * @return true if the credentials have been rejected
+         */
+        public boolean isUnauthorized() {
+            return statusCode == 401 || statusCode == 403 || UNAUTHORIZED.equals(reason);
+        }
+    }
+}
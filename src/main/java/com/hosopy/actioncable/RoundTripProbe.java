@@ -0,0 +1,117 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.hosopy.concurrent.EventLoop;
+import com.hosopy.concurrent.WheelTimer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the round trip time to the server with performs echoed back by {@link Consumer.Options#rttProbeChannel}.
+ * <p/>
+ * <p>While the probe subscription is confirmed, it performs {@link Consumer.Options#rttProbeAction} with the send time
+ * every {@link Consumer.Options#rttProbeInterval}. The channel is expected to transmit the data back as is,
+ * the round trip is then recorded by {@link ConnectionMonitor#recordRoundTrip(long)}.</p>
+ */
+/*package*/ class RoundTripProbe {
+
+    /*package*/ static final String SENT_AT = "rtt_probe_sent_at";
+
+    private final Consumer consumer;
+
+    private final String action;
+
+    private final long interval; // nanoseconds
+
+    private Subscription subscription;
+
+    private WheelTimer.Timeout probeTimeout;
+
+    private boolean stopped = true;
+
+    /*package*/ RoundTripProbe(Consumer consumer, String action, long interval, TimeUnit unit) {
+        this.consumer = consumer;
+        this.action = action;
+        this.interval = Math.max(1, unit.toNanos(interval));
+    }
+
+    /*package*/ void subscribe(Channel channel) {
+        // Kept out of the subscriptions of the user, so that removeAll() or JMX do not see it
+        subscription = consumer.getSubscriptions().createInternal(channel)
+                .onConnected(new Subscription.ConnectedCallback() {
+                    @Override
+                    public void call() {
+                        start();
+                    }
+                })
+                .onDisconnected(new Subscription.DisconnectedCallback() {
+                    @Override
+                    public void call() {
+                        stop();
+                    }
+                })
+                .onReceived(new Subscription.ReceivedCallback() {
+                    @Override
+                    public void call(JsonElement data) {
+                        onEcho(data);
+                    }
+                });
+    }
+
+    /*package*/ synchronized void stop() {
+        stopped = true;
+        if (probeTimeout != null) {
+            probeTimeout.cancel();
+            probeTimeout = null;
+        }
+    }
+
+    private synchronized void start() {
+        if (stopped) {
+            stopped = false;
+            probe();
+        }
+    }
+
+    private void probe() {
+        final JsonObject data = new JsonObject();
+        data.addProperty(SENT_AT, System.nanoTime());
+        subscription.perform(action, data);
+        schedule();
+    }
+
+    private synchronized void schedule() {
+        if (stopped) {
+            return;
+        }
+        probeTimeout = WheelTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                // Perform on EventLoop, timer tasks must not block
+                EventLoop.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isStopped()) {
+                            probe();
+                        }
+                    }
+                });
+            }
+        }, interval, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    private void onEcho(JsonElement data) {
+        if (!data.isJsonObject()) {
+            return;
+        }
+        final JsonElement sentAt = data.getAsJsonObject().get(SENT_AT);
+        if (sentAt != null && sentAt.isJsonPrimitive() && sentAt.getAsJsonPrimitive().isNumber()) {
+            consumer.getConnectionMonitor().recordRoundTrip(System.nanoTime() - sentAt.getAsLong());
+        }
+    }
+}
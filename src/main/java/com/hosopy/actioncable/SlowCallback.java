@@ -0,0 +1,76 @@
+package com.hosopy.actioncable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A received callback that ran longer than {@link Consumer.Options#callbackBudget}, blocking the dispatch of every subscription.
+ *
+ * @author hosopy
+ * @see Consumer#onSlowCallback(Consumer.SlowCallbackCallback)
+ */
+public class SlowCallback {
+
+    private final String identifier;
+
+    private final long duration; // nanoseconds
+
+    private final StackTraceElement[] stackTrace;
+
+    private final boolean isolated;
+
+    /*package*/ SlowCallback(String identifier, long duration, StackTraceElement[] stackTrace, boolean isolated) {
+        this.identifier = identifier;
+        this.duration = duration;
+        this.stackTrace = stackTrace;
+        this.isolated = isolated;
+    }
+
+    /**
+     * Return the identifier of the subscription.
+     *
+     * @return Identifier
+     */
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * Return how long the callback had been running when it was reported.
+     *
+     * @param unit Time unit of the result
+     * @return Duration
+     */
+    public long getDuration(TimeUnit unit) {
+        return unit.convert(duration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Return the stack of EventLoop sampled while the callback was over budget.
+     *
+     * @return Stack trace
+     */
+    public StackTraceElement[] getStackTrace() {
+        return stackTrace;
+    }
+
+    /**
+     * Check if the subscription has been moved to its own thread because of this callback.
+     *
+     * @return true if isolated
+     */
+    public boolean isIsolated() {
+        return isolated;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder()
+                .append("Slow callback of ").append(identifier)
+                .append(" running for ").append(getDuration(TimeUnit.MILLISECONDS)).append("ms")
+                .append(isolated ? ", isolated" : "");
+        for (StackTraceElement element : stackTrace) {
+            builder.append("\n\tat ").append(element);
+        }
+        return builder.toString();
+    }
+}
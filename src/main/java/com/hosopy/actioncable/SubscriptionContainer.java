@@ -0,0 +1,39 @@
+package com.hosopy.actioncable;
+
+/**
+ * Container creating and removing channel subscriptions, of a {@link Consumer} or of a {@link ConsumerPool}.
+ *
+ * @author hosopy
+ * @see Subscriptions
+ */
+public interface SubscriptionContainer {
+
+    /**
+     * Create {@link Subscription} instance implements the specified interface.
+     *
+     * @param channel Channel to connect
+     * @param subscription Interface extends {@link Subscription}
+     * @return {@link Subscription} instance
+     */
+    <T extends Subscription> T create(Channel channel, Class<T> subscription);
+
+    /**
+     * Create {@link Subscription} instance implements {@link Subscription} interface.
+     *
+     * @param channel Channel to connect
+     * @return {@link Subscription} instance
+     */
+    Subscription create(Channel channel);
+
+    /**
+     * Remove subscription from collection.
+     *
+     * @param subscription {@link Subscription} instance to remove
+     */
+    void remove(Subscription subscription);
+
+    /**
+     * Remove all subscriptions from collection.
+     */
+    void removeAll();
+}
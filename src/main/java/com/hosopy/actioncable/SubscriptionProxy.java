@@ -5,15 +5,23 @@ import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
 import com.hosopy.actioncable.annotation.Data;
 import com.hosopy.actioncable.annotation.Perform;
+import com.hosopy.concurrent.EventLoop;
+import com.hosopy.concurrent.WheelTimer;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 public class SubscriptionProxy<T extends Subscription> {
 
-    private Consumer consumer;
+    private volatile Consumer consumer;
 
     private Channel channel;
 
@@ -25,10 +33,27 @@ public class SubscriptionProxy<T extends Subscription> {
     private Subscription.ReceivedCallback onReceived;
     private Subscription.FailedCallback onFailure;
 
+    private volatile boolean confirmed = false;
+
+    private WheelTimer.Timeout confirmationTimeout;
+
+    // Null unless Consumer.Options#jmx is true
+
+    private final LongAdder received;
+
+    private final LongAdder performed;
+
+    /**
+     * Runs the received callbacks once isolated because of a slow callback, written by the watchdog
+     */
+    private volatile ThreadPoolExecutor isolatedExecutor;
+
     @SuppressWarnings("unchecked")
     /*package*/ SubscriptionProxy(Consumer consumer, Channel channel, Class<T> subscription) {
         this.consumer = consumer;
         this.channel = channel;
+        this.received = consumer.getOptions().jmx ? new LongAdder() : null;
+        this.performed = consumer.getOptions().jmx ? new LongAdder() : null;
         // Create an implementation of the API defined by the Subscription interface.
         this.proxy = (T) Proxy.newProxyInstance(
                 subscription.getClassLoader(),
@@ -37,6 +62,10 @@ public class SubscriptionProxy<T extends Subscription> {
         );
     }
 
+    /*package*/ void setConsumer(Consumer consumer) {
+        this.consumer = consumer;
+    }
+
     /*package*/ T getProxy() {
         return proxy;
     }
@@ -45,6 +74,10 @@ public class SubscriptionProxy<T extends Subscription> {
         return channel.toIdentifier();
     }
 
+    /*package*/ String getChannelName() {
+        return channel.getName();
+    }
+
     /*package*/ void onConnected(Subscription.ConnectedCallback callback) {
         onConnected = callback;
     }
@@ -69,13 +102,82 @@ public class SubscriptionProxy<T extends Subscription> {
         // TODO data cannot include action key...
         data.addProperty("action", action);
         consumer.send(Command.message(channel.toIdentifier(), data));
+        if (performed != null) {
+            performed.increment();
+        }
     }
 
     /*package*/ void perform(String action) {
         perform(action, new JsonObject());
     }
 
+    /*package*/ long getReceivedCount() {
+        return received != null ? received.sum() : 0;
+    }
+
+    /*package*/ long getPerformedCount() {
+        return performed != null ? performed.sum() : 0;
+    }
+
+    /*package*/ boolean isIsolated() {
+        return isolatedExecutor != null;
+    }
+
+    /**
+     * Run the received callbacks on a thread of their own from now on, so that they no longer block EventLoop.
+     * <p/>
+     * <p>The thread is released while the subscription receives nothing.</p>
+     */
+    /*package*/ synchronized void isolate() {
+        if (isolatedExecutor != null) {
+            return;
+        }
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@SuppressWarnings("NullableProblems") Runnable runnable) {
+                final Thread thread = new Thread(runnable, "ActionCable-Isolated-" + channel.toIdentifier());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        isolatedExecutor = executor;
+    }
+
+    /*package*/ boolean isConfirmed() {
+        return confirmed;
+    }
+
+    /*package*/ synchronized void awaitConfirmation(final long timeout, final TimeUnit unit) {
+        cancelConfirmationTimeout();
+        confirmed = false;
+        confirmationTimeout = WheelTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                EventLoop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!confirmed) {
+                            notifyFailed(new ActionCableException(new TimeoutException(
+                                    "Subscription was not confirmed within " + timeout + " " + unit.toString().toLowerCase())));
+                        }
+                    }
+                });
+            }
+        }, timeout, unit);
+    }
+
+    /*package*/ synchronized void cancelConfirmationTimeout() {
+        if (confirmationTimeout != null) {
+            confirmationTimeout.cancel();
+            confirmationTimeout = null;
+        }
+    }
+
     /*package*/ void notifyConnected() {
+        confirmed = true;
+        cancelConfirmationTimeout();
         if (onConnected != null) {
             onConnected.call();
         }
@@ -87,13 +189,30 @@ public class SubscriptionProxy<T extends Subscription> {
         }
     }
 
-    /*package*/ void notifyReceived(JsonElement data) {
+    /*package*/ void notifyReceived(final JsonElement data) {
+        if (received != null) {
+            received.increment();
+        }
+        final ThreadPoolExecutor executor = isolatedExecutor;
+        if (executor != null) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (onReceived != null) {
+                        onReceived.call(data);
+                    }
+                }
+            });
+            return;
+        }
         if (onReceived != null) {
             onReceived.call(data);
         }
     }
 
     /*package*/ void notifyDisconnected() {
+        confirmed = false;
+        cancelConfirmationTimeout();
         if (onDisconnected != null) {
             onDisconnected.call();
         }
@@ -1,9 +1,16 @@
 package com.hosopy.actioncable;
 
 import com.google.gson.JsonElement;
+import com.hosopy.actioncable.jfr.JfrEvents;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Collection class for creating (and internally managing) channel subscriptions.
@@ -19,12 +26,22 @@ import java.util.concurrent.ConcurrentHashMap;
  *
  * @author hosopy
  */
-public class Subscriptions {
+public class Subscriptions implements SubscriptionContainer {
 
     private Consumer consumer;
 
     private final Map<Subscription, SubscriptionProxy> subscriptionProxies = new ConcurrentHashMap<Subscription, SubscriptionProxy>();
 
+    /**
+     * Subscriptions created by the library itself, e.g. by {@link RoundTripProbe}
+     */
+    private final Set<Subscription> internalSubscriptions = Collections.newSetFromMap(new ConcurrentHashMap<Subscription, Boolean>());
+
+    /**
+     * Keyed by channel name, only filled on EventLoop when {@link Consumer.Options#timestampExtractor} is set
+     */
+    private final Map<String, BroadcastLatency> broadcastLatencies = new ConcurrentHashMap<String, BroadcastLatency>();
+
     /*package*/ Subscriptions(Consumer consumer) {
         this.consumer = consumer;
     }
@@ -36,6 +53,7 @@ public class Subscriptions {
      * @param subscription Interface extends {@link Subscription}
      * @return {@link Subscription} instance
      */
+    @Override
     public <T extends Subscription> T create(Channel channel, Class<T> subscription) {
         final SubscriptionProxy<T> subscriptionProxy = new SubscriptionProxy<T>(consumer, channel, subscription);
         add(subscriptionProxy);
@@ -48,15 +66,33 @@ public class Subscriptions {
      * @param channel Channel to connect
      * @return {@link Subscription} instance
      */
+    @Override
     public Subscription create(Channel channel) {
         return create(channel, Subscription.class);
     }
 
+    /**
+     * Create a subscription of the library itself.
+     * <p/>
+     * <p>It is subscribed again on each connection like the others, but neither removed by {@link #removeAll()}
+     * nor listed by {@link #getSubscriptionProxies()}.</p>
+     *
+     * @param channel Channel to connect
+     * @return {@link Subscription} instance
+     */
+    /*package*/ Subscription createInternal(Channel channel) {
+        final SubscriptionProxy<Subscription> subscriptionProxy = new SubscriptionProxy<Subscription>(consumer, channel, Subscription.class);
+        internalSubscriptions.add(subscriptionProxy.getProxy());
+        add(subscriptionProxy);
+        return subscriptionProxy.getProxy();
+    }
+
     /**
      * Remove subscription from collection.
      *
      * @param subscription {@link Subscription} instance to remove
      */
+    @Override
     public void remove(Subscription subscription) {
         forget(subscription);
         if (!contains(subscription)) {
@@ -67,9 +103,12 @@ public class Subscriptions {
     /**
      * Remove all subscriptions from collection.
      */
+    @Override
     public void removeAll() {
         for (Subscription subscription : subscriptionProxies.keySet()) {
-            remove(subscription);
+            if (!internalSubscriptions.contains(subscription)) {
+                remove(subscription);
+            }
         }
     }
 
@@ -77,6 +116,55 @@ public class Subscriptions {
         return consumer;
     }
 
+    /**
+     * Move a subscription out of this collection, e.g. to another consumer of a {@link ConsumerPool}.
+     *
+     * @param subscription {@link Subscription} instance to move
+     * @return {@link SubscriptionProxy}, or null if not contained
+     */
+    /*package*/ SubscriptionProxy<?> detach(Subscription subscription) {
+        final SubscriptionProxy<?> subscriptionProxy = subscriptionProxies.get(subscription);
+        if (subscriptionProxy != null) {
+            remove(subscription);
+        }
+        return subscriptionProxy;
+    }
+
+    /**
+     * Move a subscription detached from another collection into this collection.
+     *
+     * @param subscriptionProxy {@link SubscriptionProxy} instance to move
+     */
+    /*package*/ void attach(SubscriptionProxy<?> subscriptionProxy) {
+        subscriptionProxy.setConsumer(consumer);
+        add(subscriptionProxy);
+    }
+
+    /*package*/ Set<String> getIdentifiers() {
+        final Set<String> identifiers = new LinkedHashSet<String>();
+        for (SubscriptionProxy subscriptionProxy : subscriptionProxies.values()) {
+            identifiers.add(subscriptionProxy.getIdentifier());
+        }
+        return identifiers;
+    }
+
+    /**
+     * @return Subscriptions created by the user
+     */
+    /*package*/ List<SubscriptionProxy> getSubscriptionProxies() {
+        final List<SubscriptionProxy> proxies = new ArrayList<SubscriptionProxy>(subscriptionProxies.size());
+        for (Map.Entry<Subscription, SubscriptionProxy> entry : subscriptionProxies.entrySet()) {
+            if (!internalSubscriptions.contains(entry.getKey())) {
+                proxies.add(entry.getValue());
+            }
+        }
+        return proxies;
+    }
+
+    /*package*/ Map<String, BroadcastLatency> getBroadcastLatencies() {
+        return Collections.unmodifiableMap(broadcastLatencies);
+    }
+
     /*package*/ void reload() {
         for (final SubscriptionProxy subscriptionProxy : subscriptionProxies.values()) {
             sendSubscribeCommand(subscriptionProxy);
@@ -93,11 +181,31 @@ public class Subscriptions {
     }
 
     /*package*/ void notifyReceived(String identifier, JsonElement data) {
+        notifyReceived(identifier, data, System.nanoTime());
+    }
+
+    /**
+     * @param receivedAt When the frame carrying the message has been received, System.nanoTime() value
+     */
+    /*package*/ void notifyReceived(String identifier, JsonElement data, long receivedAt) {
+        final MetricsRecorder metrics = consumer.getMetricsRecorder();
+        final boolean timed = metrics != MetricsRecorder.NOOP;
+        final TimestampExtractor extractor = consumer.getOptions().timestampExtractor;
+        final long sentAt = extractor != null ? extractor.extract(data) : -1;
+        final long startedAt = timed || sentAt >= 0 ? System.nanoTime() : 0;
+        String channel = null;
         for (final SubscriptionProxy subscriptionProxy : subscriptionProxies.values()) {
             if (subscriptionProxy.getIdentifier().equals(identifier)) {
-                subscriptionProxy.notifyReceived(data);
+                dispatch(subscriptionProxy, identifier, data, timed ? metrics : null);
+                channel = subscriptionProxy.getChannelName();
             }
         }
+        if (timed) {
+            metrics.onMessageDispatched(identifier, System.nanoTime() - startedAt);
+        }
+        if (sentAt >= 0 && channel != null) {
+            recordBroadcastLatency(channel, sentAt, receivedAt, startedAt);
+        }
     }
 
     /*package*/ void notifyConnected(String identifier) {
@@ -129,11 +237,68 @@ public class Subscriptions {
         sendSubscribeCommand(subscriptionProxy);
     }
 
+    /**
+     * Run the received callback of a subscription, instrumented.
+     *
+     * @param metrics MetricsRecorder, null if not timed
+     */
+    private void dispatch(SubscriptionProxy<?> subscriptionProxy, String identifier, JsonElement data, MetricsRecorder metrics) {
+        final CallbackWatchdog watchdog = subscriptionProxy.isIsolated() ? null : consumer.getCallbackWatchdog();
+        final Object event = JfrEvents.beginCallback();
+        final long startedAt = metrics != null ? System.nanoTime() : 0;
+        if (watchdog != null) {
+            watchdog.begin(subscriptionProxy);
+            try {
+                subscriptionProxy.notifyReceived(data);
+            } finally {
+                watchdog.end();
+            }
+        } else {
+            subscriptionProxy.notifyReceived(data);
+        }
+        if (metrics != null) {
+            metrics.onCallback(identifier, System.nanoTime() - startedAt);
+        }
+        JfrEvents.endCallback(event, identifier);
+    }
+
+    /**
+     * Record the latency of a broadcast once its callbacks have returned.
+     *
+     * @param channel    Channel name
+     * @param sentAt     Server time of the broadcast, milliseconds since the epoch
+     * @param receivedAt When the frame has been received, System.nanoTime() value
+     * @param startedAt  When the dispatch started, System.nanoTime() value
+     */
+    private void recordBroadcastLatency(String channel, long sentAt, long receivedAt, long startedAt) {
+        final long now = System.nanoTime();
+        // Local time of the arrival, minus the server time converted to local time
+        final long arrivedAtMillis = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(now - receivedAt);
+        final long skewMillis = consumer.getConnectionMonitor().getClockSkew(TimeUnit.MILLISECONDS);
+        final long network = TimeUnit.MILLISECONDS.toNanos(arrivedAtMillis - (sentAt - skewMillis));
+
+        BroadcastLatency latency = broadcastLatencies.get(channel);
+        if (latency == null) {
+            latency = new BroadcastLatency(channel);
+            broadcastLatencies.put(channel, latency);
+        }
+        latency.record(network, Math.max(0, startedAt - receivedAt), now - startedAt);
+    }
+
     private void forget(Subscription subscription) {
-        subscriptionProxies.remove(subscription);
+        internalSubscriptions.remove(subscription);
+        final SubscriptionProxy subscriptionProxy = subscriptionProxies.remove(subscription);
+        if (subscriptionProxy != null) {
+            subscriptionProxy.cancelConfirmationTimeout();
+        }
     }
 
     private boolean sendSubscribeCommand(SubscriptionProxy subscriptionProxy) {
-        return consumer.send(Command.subscribe(subscriptionProxy.getIdentifier()));
+        final boolean sent = consumer.send(Command.subscribe(subscriptionProxy.getIdentifier()));
+        final Consumer.Options options = consumer.getOptions();
+        if (sent && options.subscriptionTimeout != null && options.subscriptionTimeUnit != null) {
+            subscriptionProxy.awaitConfirmation(options.subscriptionTimeout, options.subscriptionTimeUnit);
+        }
+        return sent;
     }
 }
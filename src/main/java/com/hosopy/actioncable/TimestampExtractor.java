@@ -0,0 +1,101 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TimestampExtractor reads the time a message has been broadcast by the server from its payload.
+ * <p/>
+ * <p>Set it to {@link Consumer.Options#timestampExtractor} to track the latency of broadcasts,
+ * see {@link Consumer#getBroadcastLatencies()}. It is called on EventLoop for every received message,
+ * with the payload already parsed along with the frame, so it must only look up the value.</p>
+ * <pre>{@code
+ * // ActionCable.server.broadcast("chat", { body: "hello", sent_at: Time.now.to_f })
+ * options.timestampExtractor = new TimestampExtractor.JsonPointer("/sent_at");
+ * }</pre>
+ *
+ * @author hosopy
+ */
+public interface TimestampExtractor {
+
+    /**
+     * Extract the server time of a message.
+     *
+     * @param data Payload of the message
+     * @return Milliseconds since the epoch, or -1 if the payload carries no timestamp
+     */
+    long extract(JsonElement data);
+
+    /**
+     * Extracts a timestamp located by a JSON Pointer (RFC 6901), e.g. "/meta/sent_at".
+     * <p/>
+     * <p>The value may be a number of seconds (e.g. Ruby's {@code Time.now.to_f}) or of milliseconds since the epoch,
+     * told apart by their magnitude.</p>
+     */
+    class JsonPointer implements TimestampExtractor {
+
+        /**
+         * Numbers above this are milliseconds, below seconds
+         */
+        private static final double MILLISECONDS = 100000000000d;
+
+        private final String[] tokens;
+
+        /**
+         * Constructor
+         *
+         * @param pointer JSON Pointer, e.g. "/sent_at"
+         */
+        public JsonPointer(String pointer) {
+            if (pointer == null || (!pointer.isEmpty() && !pointer.startsWith("/"))) {
+                throw new IllegalArgumentException("Invalid JSON Pointer: " + pointer);
+            }
+            final List<String> tokens = new ArrayList<String>();
+            int start = 1;
+            while (start <= pointer.length()) {
+                int end = pointer.indexOf('/', start);
+                if (end < 0) {
+                    end = pointer.length();
+                }
+                tokens.add(pointer.substring(start, end).replace("~1", "/").replace("~0", "~"));
+                start = end + 1;
+            }
+            this.tokens = tokens.toArray(new String[tokens.size()]);
+        }
+
+        @Override
+        public long extract(JsonElement data) {
+            JsonElement element = data;
+            for (String token : tokens) {
+                if (element == null) {
+                    return -1;
+                } else if (element.isJsonObject()) {
+                    element = element.getAsJsonObject().get(token);
+                } else if (element.isJsonArray()) {
+                    element = get(element.getAsJsonArray(), token);
+                } else {
+                    return -1;
+                }
+            }
+            if (element == null || !element.isJsonPrimitive() || !element.getAsJsonPrimitive().isNumber()) {
+                return -1;
+            }
+            final JsonPrimitive primitive = element.getAsJsonPrimitive();
+            final double value = primitive.getAsDouble();
+            return value > MILLISECONDS ? primitive.getAsLong() : (long) (value * 1000);
+        }
+
+        private static JsonElement get(JsonArray array, String token) {
+            try {
+                final int index = Integer.parseInt(token);
+                return index >= 0 && index < array.size() ? array.get(index) : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.hosopy.actioncable.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The received callback of a subscription ran longer than the threshold, on EventLoop.
+ *
+ * @author hosopy
+ */
+@Name("com.hosopy.actioncable.Callback")
+@Label("Subscription Callback")
+@Category({"ActionCable", "Dispatch"})
+@Description("Received callback of a subscription, blocking EventLoop")
+@Threshold("10 ms")
+@StackTrace(false)
+public class CallbackEvent extends Event {
+
+    @Label("Identifier")
+    String identifier;
+}
@@ -0,0 +1,28 @@
+package com.hosopy.actioncable.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A task waited in the EventLoop queue longer than the threshold. Starts when the task is posted
+ * and is committed on EventLoop right before the task runs.
+ *
+ * @author hosopy
+ */
+@Name("com.hosopy.actioncable.EventLoopWait")
+@Label("EventLoop Queue Wait")
+@Category({"ActionCable", "Dispatch"})
+@Description("Time a task waited in the EventLoop queue")
+@Threshold("10 ms")
+@StackTrace(false)
+public class EventLoopWaitEvent extends Event {
+
+    @Label("Queue Depth")
+    @Description("Tasks pending when this one was posted")
+    int queueDepth;
+}
@@ -0,0 +1,27 @@
+package com.hosopy.actioncable.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A frame has been received, on the socket thread. Disabled by default because of its volume.
+ *
+ * @author hosopy
+ */
+@Name("com.hosopy.actioncable.FrameReceived")
+@Label("Frame Received")
+@Category({"ActionCable", "Connection"})
+@Description("Text or binary frame received by a connection")
+@Enabled(false)
+@StackTrace(false)
+public class FrameReceivedEvent extends Event {
+
+    @Label("Length")
+    @Description("Bytes of the frame, a text frame counted in UTF-8")
+    int length;
+}
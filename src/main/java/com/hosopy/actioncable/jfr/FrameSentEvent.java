@@ -0,0 +1,27 @@
+package com.hosopy.actioncable.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A text frame has been enqueued to the transport. Disabled by default because of its volume.
+ *
+ * @author hosopy
+ */
+@Name("com.hosopy.actioncable.FrameSent")
+@Label("Frame Sent")
+@Category({"ActionCable", "Connection"})
+@Description("Text frame sent by a connection")
+@Enabled(false)
+@StackTrace(false)
+public class FrameSentEvent extends Event {
+
+    @Label("Length")
+    @Description("Bytes of the frame, a text frame counted in UTF-8")
+    int length;
+}
@@ -0,0 +1,241 @@
+package com.hosopy.actioncable.jfr;
+
+import com.hosopy.actioncable.transport.FragmentedText;
+import com.hosopy.concurrent.EventLoop;
+import com.hosopy.util.Utf8Utils;
+
+/**
+ * Emits the JDK Flight Recorder events of this library.
+ * <p/>
+ * <p>Every method is a no-op when {@code jdk.jfr} is not available (e.g. on Android or JDK 8), in which case
+ * the event classes are never loaded. When JFR is available but an event is disabled, the cost is a flag check.
+ * Durations are measured by the events themselves, so that their thresholds apply:
+ * begin methods return a token, null if the event is disabled, to pass to the matching end method.</p>
+ * <p/>
+ * <p>Frame events are disabled by default. Enable them in a custom .jfc file or with
+ * {@code jfr configure +com.hosopy.actioncable.FrameReceived#enabled=true}.</p>
+ *
+ * @author hosopy
+ */
+public final class JfrEvents {
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private static final EventLoop.WaitListener EVENT_LOOP_WAIT_LISTENER = new EventLoop.WaitListener() {
+        @Override
+        public Object onPost(int queueDepth) {
+            return beginEventLoopWait(queueDepth);
+        }
+
+        @Override
+        public void onRun(Object token) {
+            endEventLoopWait(token);
+        }
+    };
+
+    private JfrEvents() {
+    }
+
+    /**
+     * Report the queue wait of EventLoop, if JFR is available.
+     */
+    public static void install() {
+        if (AVAILABLE) {
+            EventLoop.setWaitListener(EVENT_LOOP_WAIT_LISTENER);
+        }
+    }
+
+    /**
+     * @param length Bytes of a binary frame
+     */
+    public static void frameReceived(int length) {
+        if (AVAILABLE) {
+            Emitter.frameReceived(length);
+        }
+    }
+
+    /**
+     * @param text Text frame, counted in UTF-8 only if the event is enabled
+     */
+    public static void frameReceived(String text) {
+        if (AVAILABLE) {
+            Emitter.frameReceived(text);
+        }
+    }
+
+    /**
+     * @param text Text frame received in parts, counted in UTF-8 only if the event is enabled
+     */
+    public static void frameReceived(FragmentedText text) {
+        if (AVAILABLE) {
+            Emitter.frameReceived(text);
+        }
+    }
+
+    /**
+     * @param length Bytes of a binary frame
+     */
+    public static void frameSent(int length) {
+        if (AVAILABLE) {
+            Emitter.frameSent(length);
+        }
+    }
+
+    /**
+     * @param text Text frame, counted in UTF-8 only if the event is enabled
+     */
+    public static void frameSent(String text) {
+        if (AVAILABLE) {
+            Emitter.frameSent(text);
+        }
+    }
+
+    public static void staleConnection(long silence, long staleThreshold) {
+        if (AVAILABLE) {
+            Emitter.staleConnection(silence, staleThreshold);
+        }
+    }
+
+    public static void reconnect(int attempt, long backoffMillis, int closeCode) {
+        if (AVAILABLE) {
+            Emitter.reconnect(attempt, backoffMillis, closeCode);
+        }
+    }
+
+    /**
+     * @return Token for {@link #endCallback(Object, String)}, null if disabled
+     */
+    public static Object beginCallback() {
+        return AVAILABLE ? Emitter.beginCallback() : null;
+    }
+
+    public static void endCallback(Object token, String identifier) {
+        if (token != null) {
+            Emitter.endCallback(token, identifier);
+        }
+    }
+
+    /**
+     * @param queueDepth Tasks pending on EventLoop
+     * @return Token for {@link #endEventLoopWait(Object)}, null if disabled
+     */
+    public static Object beginEventLoopWait(int queueDepth) {
+        return AVAILABLE ? Emitter.beginEventLoopWait(queueDepth) : null;
+    }
+
+    public static void endEventLoopWait(Object token) {
+        if (token != null) {
+            Emitter.endEventLoopWait(token);
+        }
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    /**
+     * Only loaded when JFR is available.
+     */
+    private static class Emitter {
+
+        static void frameReceived(int length) {
+            final FrameReceivedEvent event = new FrameReceivedEvent();
+            if (event.isEnabled()) {
+                event.length = length;
+                event.commit();
+            }
+        }
+
+        static void frameReceived(String text) {
+            final FrameReceivedEvent event = new FrameReceivedEvent();
+            if (event.isEnabled()) {
+                event.length = text != null ? Utf8Utils.encodedLength(text) : 0;
+                event.commit();
+            }
+        }
+
+        static void frameReceived(FragmentedText text) {
+            final FrameReceivedEvent event = new FrameReceivedEvent();
+            if (event.isEnabled()) {
+                event.length = text.encodedLength();
+                event.commit();
+            }
+        }
+
+        static void frameSent(int length) {
+            final FrameSentEvent event = new FrameSentEvent();
+            if (event.isEnabled()) {
+                event.length = length;
+                event.commit();
+            }
+        }
+
+        static void frameSent(String text) {
+            final FrameSentEvent event = new FrameSentEvent();
+            if (event.isEnabled()) {
+                event.length = Utf8Utils.encodedLength(text);
+                event.commit();
+            }
+        }
+
+        static void staleConnection(long silence, long staleThreshold) {
+            final StaleConnectionEvent event = new StaleConnectionEvent();
+            if (event.isEnabled()) {
+                event.silence = silence;
+                event.staleThreshold = staleThreshold;
+                event.commit();
+            }
+        }
+
+        static void reconnect(int attempt, long backoffMillis, int closeCode) {
+            final ReconnectEvent event = new ReconnectEvent();
+            if (event.isEnabled()) {
+                event.attempt = attempt;
+                event.backoff = backoffMillis;
+                event.closeCode = closeCode;
+                event.commit();
+            }
+        }
+
+        static Object beginCallback() {
+            final CallbackEvent event = new CallbackEvent();
+            if (!event.isEnabled()) {
+                return null;
+            }
+            event.begin();
+            return event;
+        }
+
+        static void endCallback(Object token, String identifier) {
+            final CallbackEvent event = (CallbackEvent) token;
+            event.end();
+            if (event.shouldCommit()) {
+                event.identifier = identifier;
+                event.commit();
+            }
+        }
+
+        static Object beginEventLoopWait(int queueDepth) {
+            final EventLoopWaitEvent event = new EventLoopWaitEvent();
+            if (!event.isEnabled()) {
+                return null;
+            }
+            event.queueDepth = queueDepth;
+            event.begin();
+            return event;
+        }
+
+        static void endEventLoopWait(Object token) {
+            final EventLoopWaitEvent event = (EventLoopWaitEvent) token;
+            event.end();
+            if (event.shouldCommit()) {
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.hosopy.actioncable.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The connection monitor is about to reconnect.
+ *
+ * @author hosopy
+ */
+@Name("com.hosopy.actioncable.Reconnect")
+@Label("Reconnect")
+@Category({"ActionCable", "Connection"})
+@Description("Reconnection attempt scheduled by the connection monitor")
+@StackTrace(false)
+public class ReconnectEvent extends Event {
+
+    @Label("Attempt")
+    @Description("Attempts since the last successful connection, starting at 1")
+    int attempt;
+
+    @Label("Backoff")
+    @Description("Delay before the attempt, 0 when a stale connection is reopened right away")
+    @Timespan(Timespan.MILLISECONDS)
+    long backoff;
+
+    @Label("Close Code")
+    @Description("Close code of the lost connection, 1006 if it failed or went stale")
+    int closeCode;
+}
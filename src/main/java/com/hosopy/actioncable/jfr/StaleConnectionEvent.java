@@ -0,0 +1,31 @@
+package com.hosopy.actioncable.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The connection monitor found that nothing has been received for longer than the stale threshold.
+ *
+ * @author hosopy
+ */
+@Name("com.hosopy.actioncable.StaleConnection")
+@Label("Stale Connection")
+@Category({"ActionCable", "Connection"})
+@Description("Nothing has been received for longer than the stale threshold")
+@StackTrace(false)
+public class StaleConnectionEvent extends Event {
+
+    @Label("Silence")
+    @Description("Time since the last frame or ping")
+    @Timespan(Timespan.NANOSECONDS)
+    long silence;
+
+    @Label("Stale Threshold")
+    @Timespan(Timespan.NANOSECONDS)
+    long staleThreshold;
+}
@@ -0,0 +1,99 @@
+package com.hosopy.actioncable.transport;
+
+import com.hosopy.util.Utf8Utils;
+
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * A text frame received in several parts, read as they are without joining them into a single String.
+ * <p/>
+ * <p>A codec reading it with {@link com.hosopy.actioncable.Codec#decode(Reader)} never holds a second copy of a large
+ * frame. It is read once, by one thread at a time. The parts are not modified once passed on.</p>
+ *
+ * @author hosopy
+ */
+public class FragmentedText extends Reader {
+
+    private final List<String> fragments;
+
+    private final int length;
+
+    private int index = 0;
+
+    private int offset = 0;
+
+    /**
+     * @param fragments Parts of the frame in order, handed over
+     */
+    public FragmentedText(List<String> fragments) {
+        this.fragments = fragments;
+        int length = 0;
+        for (String fragment : fragments) {
+            length += fragment.length();
+        }
+        this.length = length;
+    }
+
+    /**
+     * Return the number of characters of the frame.
+     *
+     * @return Characters
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Return the number of bytes of the frame encoded in UTF-8.
+     *
+     * @return Bytes
+     */
+    public int encodedLength() {
+        int bytes = 0;
+        for (String fragment : fragments) {
+            bytes += Utf8Utils.encodedLength(fragment);
+        }
+        return bytes;
+    }
+
+    @Override
+    public int read(char[] buffer, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int read = 0;
+        while (read < len && index < fragments.size()) {
+            final String fragment = fragments.get(index);
+            final int count = Math.min(len - read, fragment.length() - offset);
+            fragment.getChars(offset, offset + count, buffer, off + read);
+            read += count;
+            offset += count;
+            if (offset == fragment.length()) {
+                index++;
+                offset = 0;
+            }
+        }
+        return read > 0 ? read : -1;
+    }
+
+    @Override
+    public void close() {
+        index = fragments.size();
+        offset = 0;
+    }
+
+    /**
+     * Join the parts, whatever has been read so far.
+     *
+     * @return The whole frame
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(length);
+        for (String fragment : fragments) {
+            builder.append(fragment);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,345 @@
+package com.hosopy.actioncable.transport;
+
+import com.hosopy.actioncable.Connection;
+import com.hosopy.util.Utf8Utils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.net.http.WebSocketHandshakeException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * {@link Transport} backed by {@code java.net.http.WebSocket} (JDK 11+), without OkHttp and okio.
+ * <p/>
+ * <p>Inbound frames are requested one at a time, and the next one only once {@link #request()} is called after
+ * the previous one has been processed, so the socket is not read faster than frames are dispatched.
+ * The parts of a fragmented text frame are passed on as {@link FragmentedText} and decoded without being joined,
+ * those of a binary frame are assembled in one buffer.</p>
+ * <p/>
+ * <p>Supports {@link Connection.Options#sslContext}. Options specific to OkHttp, such as
+ * {@link Connection.Options#cookieHandler}, {@link Connection.Options#hostnameVerifier} and
+ * {@link Connection.Options#pingInterval}, are ignored.</p>
+ *
+ * @author hosopy
+ */
+public class JdkWebSocketTransport implements Transport, Transport.FlowControlled {
+
+    /**
+     * Opens {@link JdkWebSocketTransport}, sharing one HttpClient.
+     */
+    public static class Factory implements Transport.Factory {
+
+        private final Connection.Options options;
+
+        private HttpClient client;
+
+        public Factory(Connection.Options options) {
+            this.options = options;
+        }
+
+        @Override
+        public Transport open(URI uri, Map<String, String> headers, Listener listener) {
+            final JdkWebSocketTransport transport = new JdkWebSocketTransport(listener);
+
+            final WebSocket.Builder builder = getClient().newWebSocketBuilder();
+            if (headers != null) {
+                for (Map.Entry<String, String> entry : headers.entrySet()) {
+                    builder.header(entry.getKey(), entry.getValue());
+                }
+            }
+
+            transport.connecting = builder.buildAsync(toWebSocketUri(uri), transport.new Adapter());
+            transport.connecting.whenComplete(new BiConsumer<WebSocket, Throwable>() {
+                @Override
+                public void accept(WebSocket webSocket, Throwable t) {
+                    if (t != null) {
+                        final Throwable cause = t.getCause() != null ? t.getCause() : t;
+                        final int statusCode = cause instanceof WebSocketHandshakeException
+                                ? ((WebSocketHandshakeException) cause).getResponse().statusCode()
+                                : -1;
+                        transport.fail(cause, statusCode);
+                    }
+                }
+            });
+            return transport;
+        }
+
+        /**
+         * Unlike OkHttp, the JDK only accepts ws and wss.
+         */
+        private static URI toWebSocketUri(URI uri) {
+            if ("http".equalsIgnoreCase(uri.getScheme())) {
+                return URI.create("ws" + uri.toString().substring(4));
+            } else if ("https".equalsIgnoreCase(uri.getScheme())) {
+                return URI.create("wss" + uri.toString().substring(5));
+            }
+            return uri;
+        }
+
+        private synchronized HttpClient getClient() {
+            if (client == null) {
+                final HttpClient.Builder clientBuilder = HttpClient.newBuilder();
+                if (options.sslContext != null) {
+                    clientBuilder.sslContext(options.sslContext);
+                }
+                client = clientBuilder.build();
+            }
+            return client;
+        }
+    }
+
+    private final Listener listener;
+
+    private final AtomicBoolean terminated = new AtomicBoolean(false);
+
+    private final AtomicLong queueSize = new AtomicLong(0);
+
+    private final Object sendLock = new Object();
+
+    private volatile WebSocket webSocket;
+
+    private volatile CompletableFuture<WebSocket> connecting;
+
+    /**
+     * Tail of the outgoing frames, a frame may only be sent once the previous one has completed
+     */
+    private CompletableFuture<WebSocket> tail;
+
+    private CompletableFuture<WebSocket> closed;
+
+    private JdkWebSocketTransport(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean send(final String text) {
+        return enqueue(Utf8Utils.encodedLength(text), new Function<WebSocket, CompletionStage<WebSocket>>() {
+            @Override
+            public CompletionStage<WebSocket> apply(WebSocket ignored) {
+                return webSocket.sendText(text, true);
+            }
+        });
+    }
+
+    @Override
+    public boolean send(final ByteBuffer bytes) {
+        return enqueue(bytes.remaining(), new Function<WebSocket, CompletionStage<WebSocket>>() {
+            @Override
+            public CompletionStage<WebSocket> apply(WebSocket ignored) {
+                return webSocket.sendBinary(bytes, true);
+            }
+        });
+    }
+
+    /**
+     * @param size  Size of the frame in bytes
+     * @param frame Sends the frame once the previous one has completed
+     */
+    private boolean enqueue(final long size, Function<WebSocket, CompletionStage<WebSocket>> frame) {
+        synchronized (sendLock) {
+            if (closed != null || terminated.get() || webSocket == null) {
+                return false;
+            }
+            if (queueSize.get() + size > Transport.MAX_QUEUE_SIZE) {
+                close(1001, null);
+                return false;
+            }
+            queueSize.addAndGet(size);
+            tail = tail.thenCompose(frame);
+            tail.whenComplete(new BiConsumer<WebSocket, Throwable>() {
+                @Override
+                public void accept(WebSocket webSocket, Throwable t) {
+                    queueSize.addAndGet(-size);
+                }
+            });
+            return true;
+        }
+    }
+
+    @Override
+    public boolean close(final int code, final String reason) {
+        synchronized (sendLock) {
+            if (closed != null || terminated.get() || webSocket == null) {
+                return false;
+            }
+            tail = closed = tail.thenCompose(new Function<WebSocket, CompletionStage<WebSocket>>() {
+                @Override
+                public CompletionStage<WebSocket> apply(WebSocket ignored) {
+                    return webSocket.sendClose(code, reason != null ? reason : "");
+                }
+            });
+            return true;
+        }
+    }
+
+    @Override
+    public void cancel() {
+        if (webSocket != null) {
+            webSocket.abort();
+        } else if (connecting != null) {
+            connecting.cancel(true);
+        }
+        fail(new IOException("Canceled"), -1);
+    }
+
+    @Override
+    public long queueSize() {
+        return queueSize.get();
+    }
+
+    @Override
+    public void request() {
+        final WebSocket webSocket = this.webSocket;
+        if (webSocket != null) {
+            webSocket.request(1);
+        }
+    }
+
+    private void fail(Throwable t, int statusCode) {
+        if (terminated.compareAndSet(false, true)) {
+            listener.onFailure(this, t, statusCode);
+        }
+    }
+
+    /**
+     * Translates JDK events, assembling partial frames.
+     */
+    private class Adapter implements WebSocket.Listener {
+
+        /**
+         * Parts of the current text frame, null unless it is fragmented
+         */
+        private List<String> text;
+
+        private ByteBuffer binary;
+
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            synchronized (sendLock) {
+                JdkWebSocketTransport.this.webSocket = webSocket;
+                tail = CompletableFuture.completedFuture(webSocket);
+            }
+            listener.onOpen(JdkWebSocketTransport.this);
+            webSocket.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            if (last && text == null) {
+                // Unfragmented frame, the next one is requested once it has been processed
+                listener.onMessage(JdkWebSocketTransport.this, data.toString());
+            } else {
+                if (text == null) {
+                    text = new ArrayList<String>();
+                }
+                // Copied, the JDK may reuse the buffer. The parts are decoded as they are, without joining them.
+                text.add(data.toString());
+                if (last) {
+                    final FragmentedText message = new FragmentedText(text);
+                    text = null;
+                    listener.onMessage(JdkWebSocketTransport.this, message);
+                } else {
+                    webSocket.request(1);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            if (last && binary == null) {
+                listener.onMessage(JdkWebSocketTransport.this, copy(data, 0));
+            } else {
+                binary = binary == null ? copy(data, Math.max(1024, data.remaining())) : append(binary, data);
+                if (last) {
+                    binary.flip();
+                    final ByteBuffer message = binary;
+                    binary = null;
+                    listener.onMessage(JdkWebSocketTransport.this, message);
+                } else {
+                    webSocket.request(1);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onPing(WebSocket webSocket, ByteBuffer message) {
+            // The JDK answers with a pong
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onPong(WebSocket webSocket, ByteBuffer message) {
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, final int statusCode, final String reason) {
+            listener.onClosing(JdkWebSocketTransport.this, statusCode, reason);
+
+            // Complete the closing handshake, unless it has already been started
+            close(1000, null);
+
+            final CompletableFuture<WebSocket> closed;
+            synchronized (sendLock) {
+                closed = JdkWebSocketTransport.this.closed;
+            }
+            if (closed == null) {
+                finish(statusCode, reason);
+                return null;
+            }
+            closed.whenComplete(new BiConsumer<WebSocket, Throwable>() {
+                @Override
+                public void accept(WebSocket webSocket, Throwable t) {
+                    finish(statusCode, reason);
+                }
+            });
+            return closed;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            fail(error, -1);
+        }
+
+        private void finish(int statusCode, String reason) {
+            if (terminated.compareAndSet(false, true)) {
+                listener.onClosed(JdkWebSocketTransport.this, statusCode, reason);
+            }
+        }
+
+        private ByteBuffer copy(ByteBuffer data, int extra) {
+            final ByteBuffer copy = ByteBuffer.allocate(data.remaining() + extra);
+            copy.put(data);
+            if (extra == 0) {
+                copy.flip();
+            }
+            return copy;
+        }
+
+        private ByteBuffer append(ByteBuffer buffer, ByteBuffer data) {
+            if (buffer.remaining() < data.remaining()) {
+                final ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + data.remaining()));
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            buffer.put(data);
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package com.hosopy.actioncable.transport;
+
+import com.hosopy.actioncable.Connection;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLEngine;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshaker;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketHandshakeException;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+
+/**
+ * {@link Transport} backed by Netty, for processes holding thousands of connections.
+ * <p/>
+ * <p>All sockets of a {@link Factory} are multiplexed onto a small event loop group, using native epoll
+ * when {@code netty-transport-native-epoll} is available and NIO otherwise. Only the handshake response is aggregated,
+ * and fragments are only assembled when a message actually spans several frames, so an idle connection holds a few KB.
+ * Text frames are decoded to a String straight from the socket buffer, binary frames copied once since
+ * the listener owns them.</p>
+ * <p/>
+ * <p>Netty is an optional dependency: add {@code io.netty:netty-codec-http} (and optionally
+ * {@code io.netty:netty-transport-native-epoll}) to use this transport.</p>
+ * <p/>
+ * <p>Supports {@link Connection.Options#sslContext}. Options specific to OkHttp are ignored.</p>
+ *
+ * @author hosopy
+ */
+public class NettyTransport implements Transport {
+
+    /**
+     * Largest message accepted from the server.
+     */
+    private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Only the handshake response is aggregated.
+     */
+    private static final int MAX_HANDSHAKE_SIZE = 8 * 1024;
+
+    /**
+     * Opens {@link NettyTransport}, sharing one event loop group.
+     */
+    public static class Factory implements Transport.Factory {
+
+        private final Connection.Options options;
+
+        private final int threads;
+
+        private EventLoopGroup group;
+
+        private Class<? extends SocketChannel> channelClass;
+
+        private SslContext sslContext;
+
+        /**
+         * Use two event loops per available processor.
+         */
+        public Factory(Connection.Options options) {
+            this(options, 0);
+        }
+
+        /**
+         * @param threads Number of event loops, 0 for Netty's default
+         */
+        public Factory(Connection.Options options, int threads) {
+            this.options = options;
+            this.threads = threads;
+        }
+
+        @Override
+        public Transport open(URI uri, final Map<String, String> headers, Listener listener) {
+            final URI webSocketUri = toWebSocketUri(uri);
+            final boolean secure = "wss".equalsIgnoreCase(webSocketUri.getScheme());
+            final String host = webSocketUri.getHost();
+            final int port = webSocketUri.getPort() != -1 ? webSocketUri.getPort() : (secure ? 443 : 80);
+
+            final HttpHeaders httpHeaders = new DefaultHttpHeaders();
+            if (headers != null) {
+                for (Map.Entry<String, String> entry : headers.entrySet()) {
+                    httpHeaders.add(entry.getKey(), entry.getValue());
+                }
+            }
+
+            final NettyTransport transport = new NettyTransport(listener,
+                    WebSocketClientHandshakerFactory.newHandshaker(webSocketUri, WebSocketVersion.V13, null, true,
+                            httpHeaders, MAX_FRAME_SIZE));
+
+            final Bootstrap bootstrap;
+            final SslContext sslContext;
+            try {
+                synchronized (this) {
+                    bootstrap = new Bootstrap().group(getGroup()).channel(channelClass);
+                }
+                sslContext = secure ? getSslContext() : null;
+            } catch (IOException e) {
+                transport.fail(e, -1);
+                return transport;
+            }
+
+            bootstrap.option(ChannelOption.TCP_NODELAY, true)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            final ChannelPipeline pipeline = ch.pipeline();
+                            if (secure) {
+                                pipeline.addLast(newSslHandler(ch, host, port, sslContext));
+                            }
+                            pipeline.addLast(new HttpClientCodec(),
+                                    new HttpObjectAggregator(MAX_HANDSHAKE_SIZE),
+                                    transport.new FrameHandler());
+                        }
+                    });
+
+            final ChannelFuture connect = bootstrap.connect(host, port);
+            transport.channel = connect.channel();
+            connect.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) {
+                    if (!future.isSuccess()) {
+                        transport.fail(future.cause(), -1);
+                    }
+                }
+            });
+            return transport;
+        }
+
+        /**
+         * Release the event loop group. Transports opened by this factory are closed.
+         */
+        public synchronized void shutdown() {
+            if (group != null) {
+                group.shutdownGracefully();
+                group = null;
+            }
+        }
+
+        /**
+         * Check if the native epoll transport is used.
+         *
+         * @return true on Linux with {@code netty-transport-native-epoll}
+         */
+        public static boolean isNative() {
+            try {
+                return Epoll.isAvailable();
+            } catch (Throwable e) {
+                // netty-transport-native-epoll is not on the classpath
+                return false;
+            }
+        }
+
+        private EventLoopGroup getGroup() {
+            if (group == null) {
+                if (isNative()) {
+                    group = Native.newGroup(threads);
+                    channelClass = Native.channelClass();
+                } else {
+                    group = new NioEventLoopGroup(threads);
+                    channelClass = NioSocketChannel.class;
+                }
+            }
+            return group;
+        }
+
+        /**
+         * @return Shared SslContext, null if {@link Connection.Options#sslContext} is set
+         */
+        private synchronized SslContext getSslContext() throws IOException {
+            if (sslContext == null && options.sslContext == null) {
+                sslContext = SslContextBuilder.forClient().build();
+            }
+            return sslContext;
+        }
+
+        private SslHandler newSslHandler(SocketChannel ch, String host, int port, SslContext sslContext) {
+            if (sslContext != null) {
+                return sslContext.newHandler(ch.alloc(), host, port);
+            }
+            // SslContextBuilder cannot wrap an SSLContext, use its engines as they are
+            final SSLEngine engine = options.sslContext.createSSLEngine(host, port);
+            engine.setUseClientMode(true);
+            return new SslHandler(engine);
+        }
+
+        private static URI toWebSocketUri(URI uri) {
+            if ("http".equalsIgnoreCase(uri.getScheme())) {
+                return URI.create("ws" + uri.toString().substring(4));
+            } else if ("https".equalsIgnoreCase(uri.getScheme())) {
+                return URI.create("wss" + uri.toString().substring(5));
+            }
+            return uri;
+        }
+    }
+
+    /**
+     * Kept apart so that the epoll classes are only loaded when they are available.
+     */
+    private static class Native {
+        static EventLoopGroup newGroup(int threads) {
+            return new EpollEventLoopGroup(threads);
+        }
+
+        static Class<? extends SocketChannel> channelClass() {
+            return EpollSocketChannel.class;
+        }
+    }
+
+    private final Listener listener;
+
+    private final WebSocketClientHandshaker handshaker;
+
+    private final AtomicBoolean terminated = new AtomicBoolean(false);
+
+    private final AtomicBoolean closeSent = new AtomicBoolean(false);
+
+    private final AtomicLong queueSize = new AtomicLong(0);
+
+    private volatile Channel channel;
+
+    private volatile boolean open = false;
+
+    private volatile CloseWebSocketFrame closeReceived;
+
+    private NettyTransport(Listener listener, WebSocketClientHandshaker handshaker) {
+        this.listener = listener;
+        this.handshaker = handshaker;
+    }
+
+    @Override
+    public boolean send(String text) {
+        if (!open || closeSent.get() || terminated.get()) {
+            return false;
+        }
+        final TextWebSocketFrame frame = new TextWebSocketFrame(text);
+        return enqueue(frame.content().readableBytes(), frame);
+    }
+
+    @Override
+    public boolean send(ByteBuffer bytes) {
+        if (!open || closeSent.get() || terminated.get()) {
+            return false;
+        }
+        return enqueue(bytes.remaining(), new BinaryWebSocketFrame(Unpooled.wrappedBuffer(bytes)));
+    }
+
+    private boolean enqueue(final long size, WebSocketFrame frame) {
+        if (queueSize.get() + size > Transport.MAX_QUEUE_SIZE) {
+            frame.release();
+            close(1001, null);
+            return false;
+        }
+        queueSize.addAndGet(size);
+        channel.writeAndFlush(frame).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                queueSize.addAndGet(-size);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean close(int code, String reason) {
+        if (!open || terminated.get() || !closeSent.compareAndSet(false, true)) {
+            return false;
+        }
+        channel.writeAndFlush(new CloseWebSocketFrame(code, reason)).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (closeReceived != null || !future.isSuccess()) {
+                    future.channel().close();
+                }
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public void cancel() {
+        fail(new IOException("Canceled"), -1);
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    @Override
+    public long queueSize() {
+        return queueSize.get();
+    }
+
+    private void fail(Throwable t, int statusCode) {
+        if (terminated.compareAndSet(false, true)) {
+            listener.onFailure(this, t, statusCode);
+        }
+    }
+
+    /**
+     * Completes the handshake, then decodes frames on the event loop of the channel.
+     */
+    private class FrameHandler extends SimpleChannelInboundHandler<Object> {
+
+        /**
+         * Fragments of the current message, null unless a message spans several frames
+         */
+        private CompositeByteBuf fragments;
+
+        private boolean fragmentedText;
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            handshaker.handshake(ctx.channel());
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, Object msg) {
+            if (!handshaker.isHandshakeComplete()) {
+                final FullHttpResponse response = (FullHttpResponse) msg;
+                try {
+                    handshaker.finishHandshake(ctx.channel(), response);
+                } catch (WebSocketHandshakeException e) {
+                    fail(e, response.status().code());
+                    ctx.close();
+                    return;
+                }
+                open = true;
+                listener.onOpen(NettyTransport.this);
+                return;
+            }
+
+            final WebSocketFrame frame = (WebSocketFrame) msg;
+            if (frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame) {
+                if (frame.isFinalFragment()) {
+                    deliver(frame instanceof TextWebSocketFrame, frame.content());
+                } else {
+                    fragmentedText = frame instanceof TextWebSocketFrame;
+                    fragments = ctx.alloc().compositeBuffer();
+                    fragments.addComponent(true, frame.content().retain());
+                }
+            } else if (frame instanceof ContinuationWebSocketFrame) {
+                if (fragments == null) {
+                    return;
+                }
+                fragments.addComponent(true, frame.content().retain());
+                if (fragments.readableBytes() > MAX_FRAME_SIZE) {
+                    releaseFragments();
+                    fail(new IOException("Message too large"), -1);
+                    ctx.close();
+                } else if (frame.isFinalFragment()) {
+                    try {
+                        deliver(fragmentedText, fragments);
+                    } finally {
+                        releaseFragments();
+                    }
+                }
+            } else if (frame instanceof PingWebSocketFrame) {
+                ctx.writeAndFlush(new PongWebSocketFrame(frame.content().retain()));
+            } else if (frame instanceof CloseWebSocketFrame) {
+                final CloseWebSocketFrame close = (CloseWebSocketFrame) frame;
+                closeReceived = close.retain();
+                listener.onClosing(NettyTransport.this, close.statusCode(), close.reasonText());
+
+                // Complete the closing handshake, unless it has already been started
+                if (!NettyTransport.this.close(1000, null)) {
+                    ctx.close();
+                }
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            releaseFragments();
+            final CloseWebSocketFrame close = closeReceived;
+            if (close != null) {
+                try {
+                    if (terminated.compareAndSet(false, true)) {
+                        listener.onClosed(NettyTransport.this, close.statusCode(), close.reasonText());
+                    }
+                } finally {
+                    close.release();
+                }
+            } else {
+                fail(new IOException("Connection closed without a close frame"), -1);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            fail(cause, -1);
+            ctx.close();
+        }
+
+        private void deliver(boolean text, ByteBuf content) {
+            if (text) {
+                listener.onMessage(NettyTransport.this, content.toString(StandardCharsets.UTF_8));
+            } else {
+                final ByteBuffer bytes = ByteBuffer.allocate(content.readableBytes());
+                content.getBytes(content.readerIndex(), bytes);
+                bytes.flip();
+                listener.onMessage(NettyTransport.this, bytes);
+            }
+        }
+
+        private void releaseFragments() {
+            if (fragments != null) {
+                fragments.release();
+                fragments = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.hosopy.actioncable.transport;
+
+import com.hosopy.actioncable.Connection;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * {@link Transport} backed by OkHttp, the default.
+ *
+ * @author hosopy
+ */
+public class OkHttpTransport implements Transport {
+
+    /**
+     * Opens {@link OkHttpTransport}, configured by {@link Connection.Options}.
+     */
+    public static class Factory implements Transport.Factory {
+
+        private final Connection.Options options;
+
+        public Factory(Connection.Options options) {
+            this.options = options;
+        }
+
+        @Override
+        public Transport open(URI uri, Map<String, String> headers, Listener listener) {
+            final OkHttpClient client = createClient();
+
+            final Request.Builder builder = new Request.Builder().url(uri.toString());
+            if (headers != null) {
+                for (Map.Entry<String, String> entry : headers.entrySet()) {
+                    builder.addHeader(entry.getKey(), entry.getValue());
+                }
+            }
+
+            final OkHttpTransport transport = new OkHttpTransport();
+            transport.webSocket = client.newWebSocket(builder.build(), transport.new Adapter(listener));
+            client.dispatcher().executorService().shutdown();
+            return transport;
+        }
+
+        private OkHttpClient createClient() {
+            if (options.okHttpClientFactory != null) {
+                return options.okHttpClientFactory.createOkHttpClient();
+            }
+
+            OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder();
+
+            if (options.sslContext != null) {
+                final SSLSocketFactory factory = options.sslContext.getSocketFactory();
+                clientBuilder.sslSocketFactory(factory);
+            }
+
+            if (options.hostnameVerifier != null) {
+                clientBuilder.hostnameVerifier(options.hostnameVerifier);
+            }
+
+            if (options.cookieHandler != null) {
+                clientBuilder.cookieJar(options.cookieHandler);
+            }
+
+            if (options.pingInterval != null && options.pingTimeUnit != null) {
+                clientBuilder.pingInterval(options.pingInterval, options.pingTimeUnit);
+            }
+
+            return clientBuilder.build();
+        }
+    }
+
+    private volatile WebSocket webSocket;
+
+    private OkHttpTransport() {
+    }
+
+    @Override
+    public boolean send(String text) {
+        return webSocket.send(text);
+    }
+
+    @Override
+    public boolean send(ByteBuffer bytes) {
+        return webSocket.send(ByteString.of(bytes));
+    }
+
+    @Override
+    public boolean close(int code, String reason) {
+        return webSocket.close(code, reason);
+    }
+
+    @Override
+    public void cancel() {
+        webSocket.cancel();
+    }
+
+    @Override
+    public long queueSize() {
+        return webSocket.queueSize();
+    }
+
+    /**
+     * Translates OkHttp events, which may arrive before {@link Factory#open} has returned.
+     */
+    private class Adapter extends WebSocketListener {
+
+        private final Listener listener;
+
+        Adapter(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            OkHttpTransport.this.webSocket = webSocket;
+            listener.onOpen(OkHttpTransport.this);
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            listener.onMessage(OkHttpTransport.this, text);
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, ByteString bytes) {
+            listener.onMessage(OkHttpTransport.this, bytes.asByteBuffer());
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            listener.onClosing(OkHttpTransport.this, code, reason);
+        }
+
+        @Override
+        public void onClosed(WebSocket webSocket, int code, String reason) {
+            listener.onClosed(OkHttpTransport.this, code, reason);
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            OkHttpTransport.this.webSocket = webSocket;
+            listener.onFailure(OkHttpTransport.this, t, response != null ? response.code() : -1);
+        }
+    }
+}
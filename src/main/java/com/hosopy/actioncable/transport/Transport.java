@@ -0,0 +1,121 @@
+package com.hosopy.actioncable.transport;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * A single WebSocket connection, as used by {@link com.hosopy.actioncable.Connection}.
+ * <p/>
+ * <p>Implementations may call the {@link Listener} from any thread, but never concurrently for the same transport.</p>
+ * <p/>
+ * <p>A ByteBuffer of a binary frame is handed over in both directions: the sender no longer touches it once passed on,
+ * and the receiver may retain it without copying, but must not modify its content.</p>
+ *
+ * @author hosopy
+ * @see OkHttpTransport
+ */
+public interface Transport {
+
+    /**
+     * Limit of {@link #queueSize()}, same as OkHttp: the connection is closed rather than buffering more.
+     */
+    long MAX_QUEUE_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Enqueue a text frame.
+     *
+     * @param text Text to send
+     * @return false if the transport is closing or closed, or the outgoing queue is full
+     */
+    boolean send(String text);
+
+    /**
+     * Enqueue a binary frame.
+     *
+     * @param bytes Frame from its position to its limit, handed over to the transport
+     * @return false if the transport is closing or closed, or the outgoing queue is full
+     */
+    boolean send(ByteBuffer bytes);
+
+    /**
+     * Start the closing handshake.
+     *
+     * @param code   Close code
+     * @param reason Close reason, may be null
+     * @return false if the closing handshake has already been started
+     */
+    boolean close(int code, String reason);
+
+    /**
+     * Release the connection immediately, discarding any queued frames.
+     */
+    void cancel();
+
+    /**
+     * Return the size of the frames waiting to be sent, text frames counted in UTF-8.
+     *
+     * @return Bytes
+     */
+    long queueSize();
+
+    /**
+     * Implemented by transports which read frames on demand only.
+     * <p/>
+     * <p>After a frame has been passed to {@link Listener#onMessage}, no further frame is read until {@link #request()}
+     * is called. {@link com.hosopy.actioncable.Connection} requests the next frame once the previous one has been
+     * dispatched on EventLoop, so that a slow consumer stops the socket from being read.</p>
+     */
+    interface FlowControlled {
+        /**
+         * Read the next frame.
+         */
+        void request();
+    }
+
+    /**
+     * Events of a transport.
+     */
+    interface Listener {
+        void onOpen(Transport transport);
+
+        void onMessage(Transport transport, String text);
+
+        /**
+         * A text frame has been received in several parts, by a transport which does not join them.
+         */
+        void onMessage(Transport transport, FragmentedText text);
+
+        /**
+         * A binary frame has been received. The buffer is handed over to the listener.
+         */
+        void onMessage(Transport transport, ByteBuffer bytes);
+
+        /**
+         * The peer has started the closing handshake.
+         */
+        void onClosing(Transport transport, int code, String reason);
+
+        void onClosed(Transport transport, int code, String reason);
+
+        /**
+         * @param statusCode HTTP status of a failed handshake, -1 if none
+         */
+        void onFailure(Transport transport, Throwable t, int statusCode);
+    }
+
+    /**
+     * Opens transports.
+     */
+    interface Factory {
+        /**
+         * Open a transport asynchronously. The listener is notified once it is open or has failed.
+         *
+         * @param uri      URI to connect, including the query
+         * @param headers  HTTP headers of the handshake, may be null
+         * @param listener Listener of the transport
+         * @return {@link Transport} instance, usable once {@link Listener#onOpen(Transport)} is called
+         */
+        Transport open(URI uri, Map<String, String> headers, Listener listener);
+    }
+}
@@ -6,6 +6,26 @@ import java.util.concurrent.ThreadFactory;
 
 public class EventLoop extends Thread {
 
+    /**
+     * Notified of the time each posted task waits in the queue, e.g. to emit profiling events.
+     */
+    public interface WaitListener {
+        /**
+         * Called on the posting thread when a task is posted.
+         *
+         * @param queueDepth Tasks pending when this one was posted
+         * @return Token passed to {@link #onRun(Object)}
+         */
+        Object onPost(int queueDepth);
+
+        /**
+         * Called on EventLoop right before the task runs.
+         *
+         * @param token Token returned by {@link #onPost(int)}
+         */
+        void onRun(Object token);
+    }
+
     private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
         @Override
         public Thread newThread(@SuppressWarnings("NullableProblems") Runnable runnable) {
@@ -19,7 +39,12 @@ public class EventLoop extends Thread {
 
     private static ExecutorService executorService;
 
-    private static int counter = 0;
+    /**
+     * Tasks posted and not finished yet, only written while holding the class lock
+     */
+    private static volatile int counter = 0;
+
+    private static volatile WaitListener waitListener;
 
     private EventLoop(Runnable runnable) {
         super(runnable);
@@ -34,6 +59,24 @@ public class EventLoop extends Thread {
         return currentThread() == eventLoop;
     }
 
+    /**
+     * Return the number of tasks posted to EventLoop and not finished yet, including the running one.
+     *
+     * @return Queue depth
+     */
+    public static int getPendingTasks() {
+        return counter;
+    }
+
+    /**
+     * Set the listener notified of the time tasks wait in the queue.
+     *
+     * @param listener {@link WaitListener}, or null to remove it
+     */
+    public static void setWaitListener(WaitListener listener) {
+        waitListener = listener;
+    }
+
     /**
      * Execute a task in EventLoop thread.
      *
@@ -54,17 +97,23 @@ public class EventLoop extends Thread {
      */
     public static void post(final Runnable task) {
         ExecutorService executor;
+        final int depth;
         synchronized (EventLoop.class) {
-            counter++;
+            depth = counter++;
             if (executorService == null) {
                 executorService = Executors.newSingleThreadExecutor(THREAD_FACTORY);
             }
             executor = executorService;
         }
+        final WaitListener listener = waitListener;
+        final Object token = listener != null ? listener.onPost(depth) : null;
 
         executor.execute(new Runnable() {
             @Override
             public void run() {
+                if (listener != null) {
+                    listener.onRun(token);
+                }
                 try {
                     task.run();
                 } finally {
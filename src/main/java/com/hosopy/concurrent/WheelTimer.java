@@ -0,0 +1,262 @@
+package com.hosopy.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed wheel timer shared by all consumers.
+ * <p/>
+ * <p>Timeouts are kept in doubly linked buckets so that both scheduling and cancellation are O(1).
+ * A single daemon thread advances the wheel and is stopped while no timeout is pending,
+ * so idle consumers do not hold any thread.</p>
+ * <p/>
+ * <p>Tasks run on the timer thread and must not block. Post heavier work to {@link EventLoop}.</p>
+ *
+ * @see <a href="http://www.cs.columbia.edu/~nahum/w6998/papers/sosp87-timing-wheels.pdf">Hashed and Hierarchical Timing Wheels</a>
+ */
+public class WheelTimer {
+
+    /**
+     * A handle of a scheduled task.
+     */
+    public interface Timeout {
+        /**
+         * Cancel the task if it has not been run yet.
+         *
+         * @return true if the task has been cancelled by this call.
+         */
+        boolean cancel();
+
+        /**
+         * Check if the task has been cancelled.
+         *
+         * @return true if the task has been cancelled.
+         */
+        boolean isCancelled();
+
+        /**
+         * Check if the task has been run or is running.
+         *
+         * @return true if the task has expired.
+         */
+        boolean isExpired();
+    }
+
+    private static final long TICK_DURATION = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final int WHEEL_SIZE = 512;
+
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private static final Object LOCK = new Object();
+
+    private static final Bucket[] wheel = new Bucket[WHEEL_SIZE];
+
+    private static Thread worker;
+
+    private static long startTime;
+
+    private static long tick;
+
+    private static int pending = 0;
+
+    static {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new Bucket();
+        }
+    }
+
+    private WheelTimer() {
+    }
+
+    /**
+     * Schedule a task to be run once after the delay.
+     *
+     * @param task  A task to be run.
+     * @param delay Delay before running the task.
+     * @param unit  Time unit of delay.
+     * @return {@link Timeout} handle to cancel the task.
+     */
+    public static Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+
+        final Entry entry = new Entry(task);
+        synchronized (LOCK) {
+            if (worker == null) {
+                startTime = System.nanoTime();
+                tick = 0;
+                worker = new Thread(new Worker(), "WheelTimer");
+                worker.setDaemon(true);
+                worker.start();
+            }
+
+            // The bucket of tick t is expired at startTime + (t + 1) * TICK_DURATION
+            final long deadline = System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay));
+            final long target = Math.max(tick, (deadline + TICK_DURATION - 1) / TICK_DURATION - 1);
+
+            entry.rounds = (target - tick) / WHEEL_SIZE;
+            wheel[(int) (target & MASK)].add(entry);
+            pending++;
+        }
+        return entry;
+    }
+
+    /**
+     * Return the number of tasks waiting to be run.
+     *
+     * @return The number of pending tasks.
+     */
+    public static int pendingTimeouts() {
+        synchronized (LOCK) {
+            return pending;
+        }
+    }
+
+    private static class Worker implements Runnable {
+        @Override
+        public void run() {
+            final List<Entry> expired = new ArrayList<Entry>();
+
+            while (true) {
+                final long deadline;
+                synchronized (LOCK) {
+                    deadline = startTime + (tick + 1) * TICK_DURATION;
+                }
+
+                long sleepNanos;
+                while ((sleepNanos = deadline - System.nanoTime()) > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                    } catch (InterruptedException ignored) {
+                        // Only the timer itself owns this thread
+                    }
+                }
+
+                final boolean idle;
+                synchronized (LOCK) {
+                    wheel[(int) (tick & MASK)].expire(expired);
+                    pending -= expired.size();
+                    tick++;
+
+                    idle = pending == 0;
+                    if (idle) {
+                        worker = null;
+                    }
+                }
+
+                for (Entry entry : expired) {
+                    try {
+                        entry.task.run();
+                    } catch (Throwable t) {
+                        final Thread thread = Thread.currentThread();
+                        thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+                    }
+                }
+                expired.clear();
+
+                if (idle) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static class Bucket {
+        private Entry head;
+
+        private Entry tail;
+
+        void add(Entry entry) {
+            entry.bucket = this;
+            if (tail == null) {
+                head = tail = entry;
+            } else {
+                tail.next = entry;
+                entry.prev = tail;
+                tail = entry;
+            }
+        }
+
+        void remove(Entry entry) {
+            if (entry.prev != null) {
+                entry.prev.next = entry.next;
+            } else {
+                head = entry.next;
+            }
+            if (entry.next != null) {
+                entry.next.prev = entry.prev;
+            } else {
+                tail = entry.prev;
+            }
+            entry.prev = entry.next = null;
+            entry.bucket = null;
+        }
+
+        void expire(List<Entry> expired) {
+            Entry entry = head;
+            while (entry != null) {
+                final Entry next = entry.next;
+                if (entry.rounds <= 0) {
+                    remove(entry);
+                    entry.state = Entry.EXPIRED;
+                    expired.add(entry);
+                } else {
+                    entry.rounds--;
+                }
+                entry = next;
+            }
+        }
+    }
+
+    private static class Entry implements Timeout {
+        static final int PENDING = 0;
+        static final int CANCELLED = 1;
+        static final int EXPIRED = 2;
+
+        final Runnable task;
+
+        long rounds;
+
+        int state = PENDING;
+
+        Bucket bucket;
+
+        Entry prev;
+
+        Entry next;
+
+        Entry(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public boolean cancel() {
+            synchronized (LOCK) {
+                if (state != PENDING) {
+                    return false;
+                }
+                state = CANCELLED;
+                bucket.remove(this);
+                pending--;
+                return true;
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            synchronized (LOCK) {
+                return state == CANCELLED;
+            }
+        }
+
+        @Override
+        public boolean isExpired() {
+            synchronized (LOCK) {
+                return state == EXPIRED;
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.hosopy.util;
+
+import java.nio.charset.Charset;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring
+ * <p/>
+ * <p>Each node is placed on the ring several times (virtual nodes),
+ * so that adding or removing a node only moves the keys of that node.</p>
+ *
+ * @author hosopy
+ */
+public class ConsistentHash<T> {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int replicas;
+
+    private final TreeMap<Long, T> ring = new TreeMap<Long, T>();
+
+    /**
+     * Constructor
+     *
+     * @param replicas Number of virtual nodes per node
+     */
+    public ConsistentHash(int replicas) {
+        this.replicas = replicas;
+    }
+
+    /**
+     * Add a node.
+     *
+     * @param name Stable name of the node, which decides its positions on the ring
+     * @param node Node
+     */
+    public void add(String name, T node) {
+        for (int i = 0; i < replicas; i++) {
+            ring.put(hash(name + "#" + i), node);
+        }
+    }
+
+    /**
+     * Return the node of the key.
+     *
+     * @param key Key
+     * @return Node, or null if the ring is empty
+     */
+    public T get(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        final SortedMap<Long, T> tail = ring.tailMap(hash(key));
+        return tail.isEmpty() ? ring.firstEntry().getValue() : tail.get(tail.firstKey());
+    }
+
+    public boolean isEmpty() {
+        return ring.isEmpty();
+    }
+
+    /**
+     * 64-bit FNV-1a followed by a finalizer to spread similar keys
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
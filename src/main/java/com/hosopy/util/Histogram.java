@@ -0,0 +1,206 @@
+package com.hosopy.util;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative values, e.g. latencies in nanoseconds, in the style of HdrHistogram.
+ * <p/>
+ * <p>Each power of two is split into 2^precisionBits linear buckets, so a recorded value is known within
+ * a relative error of 2^-precisionBits whatever its magnitude, with a fixed footprint.
+ * Recording is lock-free and allocation-free and may happen from any thread.</p>
+ *
+ * @author hosopy
+ */
+public class Histogram {
+
+    private final long highestTrackableValue;
+
+    private final int precisionBits;
+
+    private final int subBucketCount;
+
+    private final AtomicLongArray counts;
+
+    private final AtomicLong totalCount = new AtomicLong(0);
+
+    private final AtomicLong sum = new AtomicLong(0);
+
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Track up to one hour in nanoseconds within 1%.
+     */
+    public Histogram() {
+        this(TimeUnit.HOURS.toNanos(1), 7);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param highestTrackableValue Larger values are recorded as this value
+     * @param precisionBits         Linear buckets per power of two, as a power of two (1 to 14)
+     */
+    public Histogram(long highestTrackableValue, int precisionBits) {
+        if (highestTrackableValue < 1) {
+            throw new IllegalArgumentException("highestTrackableValue must be positive");
+        }
+        if (precisionBits < 1 || precisionBits > 14) {
+            throw new IllegalArgumentException("precisionBits must be between 1 and 14");
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        this.precisionBits = precisionBits;
+        this.subBucketCount = 1 << precisionBits;
+        this.counts = new AtomicLongArray(indexOf(highestTrackableValue) + 1);
+    }
+
+    /**
+     * Record a value. Negative values are recorded as 0.
+     *
+     * @param value Value
+     */
+    public void record(long value) {
+        final long clamped = Math.max(0, Math.min(value, highestTrackableValue));
+        counts.incrementAndGet(indexOf(clamped));
+        totalCount.incrementAndGet();
+        sum.addAndGet(clamped);
+
+        long current;
+        while (clamped > (current = max.get())) {
+            if (max.compareAndSet(current, clamped)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Return the number of recorded values.
+     *
+     * @return Count
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Return the largest recorded value.
+     *
+     * @return Exact maximum, 0 if nothing has been recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Return the mean of the recorded values.
+     *
+     * @return Mean, 0 if nothing has been recorded
+     */
+    public double getMean() {
+        final long count = totalCount.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * Return the value below which the given percentage of the recorded values fall.
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return Highest value equivalent to the bucket of the percentile, 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        final long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Add the values recorded by another histogram of the same shape.
+     *
+     * @param other Histogram to add
+     */
+    public void add(Histogram other) {
+        if (other.precisionBits != precisionBits || other.counts.length() != counts.length()) {
+            throw new IllegalArgumentException("Histograms of different shapes");
+        }
+        for (int i = 0; i < counts.length(); i++) {
+            final long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        sum.addAndGet(other.sum.get());
+
+        final long otherMax = other.max.get();
+        long current;
+        while (otherMax > (current = max.get())) {
+            if (max.compareAndSet(current, otherMax)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Forget all recorded values.
+     * <p/>
+     * <p>Values recorded concurrently may be partially lost.</p>
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Summarize the distribution with the usual percentiles, scaled to a unit.
+     *
+     * @param scale Divisor of the values, e.g. 1000 to print nanoseconds as microseconds
+     * @return e.g. "count=1000 mean=12.3 p50=11.0 p90=15.0 p99=40.0 p99.9=80.0 max=91.2"
+     */
+    public String toString(double scale) {
+        return String.format(Locale.US, "count=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+                getCount(), getMean() / scale,
+                getValueAtPercentile(50) / scale, getValueAtPercentile(90) / scale,
+                getValueAtPercentile(99) / scale, getValueAtPercentile(99.9) / scale,
+                getMax() / scale);
+    }
+
+    @Override
+    public String toString() {
+        return toString(1);
+    }
+
+    private int indexOf(long value) {
+        if (value < subBucketCount) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - precisionBits;
+        final int subBucket = (int) (value >>> shift) - subBucketCount;
+        return subBucketCount + shift * subBucketCount + subBucket;
+    }
+
+    private long highestValueOf(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+        final int shift = index / subBucketCount - 1;
+        final long subBucket = index % subBucketCount + subBucketCount;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -2,6 +2,7 @@ package com.hosopy.util;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -25,4 +26,22 @@ public class QueryStringUtils {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Encoder which reuses the last result while the parameters are unchanged.
+     */
+    public static class CachedEncoder {
+
+        private Map<String, String> params;
+
+        private String encoded;
+
+        public synchronized String encode(Map<String, String> params) {
+            if (!params.equals(this.params)) {
+                this.encoded = QueryStringUtils.encode(params);
+                this.params = new HashMap<String, String>(params);
+            }
+            return encoded;
+        }
+    }
 }
@@ -0,0 +1,38 @@
+package com.hosopy.util;
+
+/**
+ * UTF-8 utility
+ *
+ * @author hosopy
+ */
+public class Utf8Utils {
+
+    /**
+     * Return the number of bytes of a text encoded in UTF-8, without encoding it.
+     * <p/>
+     * <p>An unpaired surrogate is counted as 3 bytes.</p>
+     *
+     * @param text Text
+     * @return Bytes
+     */
+    public static int encodedLength(CharSequence text) {
+        final int length = text.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                // 4 bytes for 2 chars
+                bytes += 2;
+                i++;
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+}
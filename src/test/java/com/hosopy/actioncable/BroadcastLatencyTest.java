@@ -0,0 +1,97 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.hosopy.actioncable.loopback.LoopbackServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.net.URI;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class BroadcastLatencyTest {
+
+    private static final int TIMEOUT = 10000;
+
+    LoopbackServer server;
+
+    Consumer consumer;
+
+    final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+    @Before
+    public void setUp() {
+        // No pings, so that the clock skew stays 0
+        final LoopbackServer.Options serverOptions = new LoopbackServer.Options();
+        serverOptions.pingInterval = 0;
+        server = new LoopbackServer(serverOptions);
+
+        final Consumer.Options options = new Consumer.Options();
+        options.transportFactory = server.getTransportFactory();
+        options.timestampExtractor = new TimestampExtractor.JsonPointer("/sent_at");
+        consumer = ActionCable.createConsumer(URI.create("loopback://cable"), options);
+    }
+
+    @After
+    public void tearDown() {
+        consumer.disconnect();
+        server.close();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void recordLatencyPerChannel() throws InterruptedException {
+        final Channel channel = new Channel("ChatChannel");
+        channel.addParam("room", "lobby");
+        final Subscription subscription = consumer.getSubscriptions().create(channel)
+                .onConnected(new Subscription.ConnectedCallback() {
+                    @Override
+                    public void call() {
+                        events.offer("onConnected");
+                    }
+                })
+                .onReceived(new Subscription.ReceivedCallback() {
+                    @Override
+                    public void call(JsonElement data) {
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        events.offer("onReceived");
+                    }
+                });
+        consumer.connect();
+        assertThat(events.take(), is("onConnected"));
+
+        // Broadcast 100 ms ago
+        final JsonObject message = new JsonObject();
+        message.addProperty("sent_at", System.currentTimeMillis() - 100);
+        server.broadcast(subscription.getIdentifier(), message);
+        assertThat(events.take(), is("onReceived"));
+
+        // Without a timestamp
+        server.broadcast(subscription.getIdentifier(), new JsonObject());
+        assertThat(events.take(), is("onReceived"));
+
+        final BroadcastLatency latency = consumer.getBroadcastLatencies().get("ChatChannel");
+        assertThat(latency.getChannel(), is("ChatChannel"));
+        assertThat(latency.getEndToEnd().getCount(), is(1L));
+        assertThat(latency.getNetwork().getMax(), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(90)));
+        assertThat(latency.getNetwork().getMax(), lessThan(TimeUnit.SECONDS.toNanos(5)));
+        assertThat(latency.getCallback().getMax(), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(19)));
+        assertThat(latency.getEndToEnd().getMax(), greaterThanOrEqualTo(latency.getNetwork().getMax()));
+        assertThat(consumer.getBroadcastLatencies().size(), is(1));
+    }
+}
@@ -0,0 +1,197 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hosopy.actioncable.transport.FragmentedText;
+import com.hosopy.actioncable.transport.Transport;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class CodecTest {
+
+    private static final int TIMEOUT = 10000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void gsonCodecDecodesBinaryFrames() {
+        final Message message = Codec.GSON.decode(ByteBuffer.wrap(
+                "{\"identifier\":\"{\\\"channel\\\":\\\"CommentsChannel\\\"}\",\"message\":{\"foo\":\"bar\"}}".getBytes(UTF_8)));
+
+        assertThat(message.getIdentifier(), is("{\"channel\":\"CommentsChannel\"}"));
+        assertThat(message.getMessage().toString(), is("{\"foo\":\"bar\"}"));
+        assertThat(Codec.GSON.encode(Command.subscribe("identifier")), is("{\"command\":\"subscribe\",\"identifier\":\"identifier\"}"));
+        // Commands are sent as text frames
+        assertThat(Codec.GSON.encodeBinary(Command.subscribe("identifier")), is(nullValue()));
+    }
+
+    @Test
+    public void gsonCodecDecodesFragmentedFrames() {
+        // Split inside a string and inside the nested message
+        final Message message = Codec.GSON.decode(new FragmentedText(Arrays.asList(
+                "{\"identifier\":\"{\\\"channel\\\":\\\"Comm",
+                "entsChannel\\\"}\",\"message\":{\"fo",
+                "o\":\"bar\"}}")));
+
+        assertThat(message.getIdentifier(), is("{\"channel\":\"CommentsChannel\"}"));
+        assertThat(message.getMessage().toString(), is("{\"foo\":\"bar\"}"));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void customCodecOverBinaryFrames() throws InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.codec = new LineCodec();
+        options.transportFactory = new Transport.Factory() {
+            @Override
+            public Transport open(URI uri, Map<String, String> headers, final Transport.Listener listener) {
+                final Transport transport = new Transport() {
+                    @Override
+                    public boolean send(String text) {
+                        events.offer("sendText:" + text);
+                        return true;
+                    }
+
+                    @Override
+                    public boolean send(ByteBuffer bytes) {
+                        final String text = UTF_8.decode(bytes).toString();
+                        events.offer("send:" + text.substring(0, text.indexOf('\n')));
+                        final String[] fields = text.split("\n", -1);
+                        if (fields[0].equals("subscribe")) {
+                            listener.onMessage(this, binary("confirm_subscription\n" + fields[1] + "\n"));
+                        } else if (fields[0].equals("message")) {
+                            listener.onMessage(this, binary("\n" + fields[1] + "\n" + fields[2]));
+                        }
+                        return true;
+                    }
+
+                    @Override
+                    public boolean close(int code, String reason) {
+                        listener.onClosed(this, code, reason);
+                        return true;
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+
+                    @Override
+                    public long queueSize() {
+                        return 0;
+                    }
+                };
+                listener.onOpen(transport);
+                listener.onMessage(transport, binary("welcome\n\n"));
+                return transport;
+            }
+        };
+
+        final Consumer consumer = new Consumer(URI.create("ws://example.com:28080"), options);
+        final Subscription subscription = consumer.getSubscriptions().create(new Channel("ChatChannel"))
+                .onConnected(new Subscription.ConnectedCallback() {
+                    @Override
+                    public void call() {
+                        events.offer("onConnected");
+                    }
+                })
+                .onReceived(new Subscription.ReceivedCallback() {
+                    @Override
+                    public void call(JsonElement data) {
+                        events.offer("onReceived:" + data.getAsJsonObject().get("body").getAsString());
+                    }
+                });
+        consumer.connect();
+
+        assertThat(events.take(), is("send:subscribe"));
+        assertThat(events.take(), is("onConnected"));
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("body", "hello");
+        subscription.perform("speak", data);
+
+        // The subscribe on welcome is ignored once confirmed
+        String event;
+        while ((event = events.take()).equals("send:subscribe") || event.equals("onConnected")) {
+            // skip
+        }
+        assertThat(event, is("send:message"));
+        assertThat(events.take(), is("onReceived:hello"));
+
+        consumer.disconnect();
+    }
+
+    @Test
+    public void ignoreUndecodableFrames() {
+        final Codec codec = new LineCodec();
+        assertThat(codec.decode("not a frame"), is(nullValue()));
+    }
+
+    private static ByteBuffer binary(String text) {
+        return ByteBuffer.wrap(text.getBytes(UTF_8));
+    }
+
+    /**
+     * "type\nidentifier\npayload" frames, commands as "command\nidentifier\ndata" binary frames
+     */
+    private static class LineCodec implements Codec {
+
+        @Override
+        public Message decode(String text) {
+            final String[] fields = text.split("\n", -1);
+            if (fields.length != 3) {
+                return null;
+            }
+            return new Message(fields[0].isEmpty() ? null : fields[0], fields[1].isEmpty() ? null : fields[1],
+                    fields[2].isEmpty() ? null : new JsonParser().parse(fields[2]), null, null);
+        }
+
+        @Override
+        public Message decode(Reader text) {
+            final StringBuilder builder = new StringBuilder();
+            final char[] buffer = new char[1024];
+            try {
+                int read;
+                while ((read = text.read(buffer)) != -1) {
+                    builder.append(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                return null;
+            }
+            return decode(builder.toString());
+        }
+
+        @Override
+        public Message decode(ByteBuffer bytes) {
+            return decode(UTF_8.decode(bytes).toString());
+        }
+
+        @Override
+        public String encode(Command command) {
+            return command.getCommand() + "\n" + command.getIdentifier() + "\n" + (command.getData() != null ? command.getData() : "");
+        }
+
+        @Override
+        public ByteBuffer encodeBinary(Command command) {
+            return binary(encode(command));
+        }
+    }
+}
@@ -14,13 +14,13 @@ public class CommandTest {
     @Test
     public void subscribe() {
         final Command command = Command.subscribe("identifier");
-        assertThat(command.toJson(), is("{\"command\":\"subscribe\",\"identifier\":\"identifier\"}"));
+        assertThat(Codec.GSON.encode(command), is("{\"command\":\"subscribe\",\"identifier\":\"identifier\"}"));
     }
 
     @Test
     public void unsubscribe() {
         final Command command = Command.unsubscribe("identifier");
-        assertThat(command.toJson(), is("{\"command\":\"unsubscribe\",\"identifier\":\"identifier\"}"));
+        assertThat(Codec.GSON.encode(command), is("{\"command\":\"unsubscribe\",\"identifier\":\"identifier\"}"));
     }
 
     @Test
@@ -28,6 +28,6 @@ public class CommandTest {
         final JsonObject data = new JsonObject();
         data.addProperty("foo", "bar");
         final Command command = Command.message("identifier", data);
-        assertThat(command.toJson(), is("{\"command\":\"message\",\"identifier\":\"identifier\",\"data\":\"{\\\"foo\\\":\\\"bar\\\"}\"}"));
+        assertThat(Codec.GSON.encode(command), is("{\"command\":\"message\",\"identifier\":\"identifier\",\"data\":\"{\\\"foo\\\":\\\"bar\\\"}\"}"));
     }
 }
@@ -0,0 +1,300 @@
+package com.hosopy.actioncable;
+
+import com.hosopy.actioncable.loopback.LoopbackServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class ConnectionMonitorTest {
+
+    private static final int TIMEOUT = 10000;
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() {
+        mockWebServer = new MockWebServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer.shutdown();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void connectionIsStaleWithoutTraffic() throws URISyntaxException, InterruptedException {
+        final Consumer.Options options = new Consumer.Options();
+        options.staleThreshold = 200;
+        options.staleTimeUnit = TimeUnit.MILLISECONDS;
+
+        final ConnectionMonitor monitor = new ConnectionMonitor(new Connection(new URI("ws://example.com:28080"), options), options);
+        monitor.start();
+
+        assertThat(monitor.connectionIsStale(), is(false));
+        Thread.sleep(300);
+        assertThat(monitor.connectionIsStale(), is(true));
+
+        monitor.recordPing();
+        assertThat(monitor.connectionIsStale(), is(false));
+
+        monitor.stop();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void anyInboundTrafficKeepsConnectionFresh() throws IOException, InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        final MockResponse response = new MockResponse();
+        response.withWebSocketUpgrade(new WebSocketListener() {
+            @Override
+            public void onOpen(final WebSocket webSocket, Response response) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Broadcasts only, no pings
+                        for (int i = 0; i < 20; i++) {
+                            webSocket.send("{\"identifier\":\"{}\",\"message\":{}}");
+                            try {
+                                Thread.sleep(50);
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                        events.offer("done");
+                    }
+                }).start();
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                webSocket.close(1000, null);
+                events.offer("onClosing");
+            }
+        });
+        mockWebServer.enqueue(response);
+        mockWebServer.start();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.staleThreshold = 300;
+        options.staleTimeUnit = TimeUnit.MILLISECONDS;
+
+        final Consumer consumer = new Consumer(mockWebServer.url("/").uri(), options);
+        consumer.connect();
+
+        while (!consumer.getConnection().isOpen()) {
+            Thread.sleep(10);
+        }
+        consumer.getConnectionMonitor().recordConnect();
+
+        assertThat(events.take(), is("done"));
+        assertThat(consumer.getConnectionMonitor().connectionIsStale(), is(false));
+        assertTrue(consumer.getConnectionMonitor().getStaleReconnectsAvoided() >= 1);
+
+        consumer.disconnect();
+        assertThat(events.take(), is("onClosing"));
+    }
+
+    @Test
+    public void estimateClockSkewAndDelays() throws URISyntaxException {
+        final Consumer.Options options = new Consumer.Options();
+        final ConnectionMonitor monitor = new ConnectionMonitor(new Connection(new URI("ws://example.com:28080"), options), options);
+
+        assertThat(monitor.getClockSkew(TimeUnit.MILLISECONDS), is(0L));
+        assertThat(monitor.getRoundTripTime(TimeUnit.MILLISECONDS), is(-1L));
+        assertThat(monitor.getOneWayDelay(TimeUnit.MILLISECONDS), is(-1L));
+
+        // Server clock 5 seconds ahead, timestamps in milliseconds
+        monitor.recordRoundTrip(TimeUnit.MILLISECONDS.toNanos(20));
+        monitor.recordPing(System.currentTimeMillis() + 5000);
+        monitor.recordPing(System.currentTimeMillis() + 5000 - 50);
+
+        assertThat(monitor.getRoundTripTime(TimeUnit.MILLISECONDS), is(20L));
+        assertThat(monitor.getClockSkew(TimeUnit.MILLISECONDS), allOf(greaterThanOrEqualTo(4950L), lessThanOrEqualTo(5010L)));
+        assertThat(monitor.getPingDelay(TimeUnit.MILLISECONDS), allOf(greaterThanOrEqualTo(40L), lessThanOrEqualTo(60L)));
+        assertThat(monitor.getOneWayDelay(TimeUnit.MILLISECONDS), allOf(greaterThanOrEqualTo(50L), lessThanOrEqualTo(70L)));
+
+        // Reset on connect
+        monitor.recordConnect();
+        assertThat(monitor.getRoundTripTime(TimeUnit.MILLISECONDS), is(-1L));
+        assertThat(monitor.getPingDelay(TimeUnit.MILLISECONDS), is(0L));
+    }
+
+    @Test
+    public void staleThresholdAdaptsToJitter() throws URISyntaxException {
+        final Consumer.Options options = new Consumer.Options();
+        options.staleThreshold = 200;
+        options.staleTimeUnit = TimeUnit.MILLISECONDS;
+
+        final ConnectionMonitor adaptive = new ConnectionMonitor(new Connection(new URI("ws://example.com:28080"), options), options);
+        assertThat(adaptive.getStaleThreshold(TimeUnit.MILLISECONDS), is(200L));
+        // Two pings nearly 3 seconds early
+        adaptive.recordPing();
+        adaptive.recordPing();
+        assertThat(adaptive.getJitter(TimeUnit.MILLISECONDS), allOf(greaterThanOrEqualTo(150L), lessThan(190L)));
+        assertThat(adaptive.getStaleThreshold(TimeUnit.MILLISECONDS), is(400L));
+
+        options.adaptiveStaleThreshold = false;
+        final ConnectionMonitor fixed = new ConnectionMonitor(new Connection(new URI("ws://example.com:28080"), options), options);
+        fixed.recordPing();
+        fixed.recordPing();
+        assertThat(fixed.getStaleThreshold(TimeUnit.MILLISECONDS), is(200L));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void measureRoundTripWithProbes() throws InterruptedException {
+        final LoopbackServer.Options serverOptions = new LoopbackServer.Options();
+        serverOptions.pingInterval = 50;
+        serverOptions.pingTimeUnit = TimeUnit.MILLISECONDS;
+        final LoopbackServer server = new LoopbackServer(serverOptions);
+
+        final Consumer.Options options = new Consumer.Options();
+        options.transportFactory = server.getTransportFactory();
+        options.rttProbeChannel = new Channel("EchoChannel");
+        options.rttProbeInterval = 50;
+        options.rttProbeTimeUnit = TimeUnit.MILLISECONDS;
+        final Consumer consumer = new Consumer(URI.create("loopback://cable"), options);
+        consumer.connect();
+
+        final ConnectionMonitor monitor = consumer.getConnectionMonitor();
+        while (monitor.getRoundTripTime(TimeUnit.NANOSECONDS) < 0 || monitor.getOneWayDelay(TimeUnit.NANOSECONDS) < 0) {
+            Thread.sleep(10);
+        }
+        assertThat(monitor.getRoundTripTime(TimeUnit.SECONDS), is(0L));
+        // Same clock, pings carry whole seconds
+        assertThat(Math.abs(monitor.getClockSkew(TimeUnit.MILLISECONDS)), lessThanOrEqualTo(1000L));
+
+        consumer.disconnect();
+        server.close();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void roundTripProbeOutlivesUnsubscribeAll() throws InterruptedException {
+        final LoopbackServer server = new LoopbackServer(new LoopbackServer.Options());
+
+        final Consumer.Options options = new Consumer.Options();
+        options.transportFactory = server.getTransportFactory();
+        options.rttProbeChannel = new Channel("EchoChannel");
+        final Consumer consumer = new Consumer(URI.create("loopback://cable"), options);
+        final String identifier = options.rttProbeChannel.toIdentifier();
+        consumer.connect();
+
+        while (server.getSubscriberCount(identifier) != 1) {
+            Thread.sleep(10);
+        }
+        assertThat(consumer.getSubscriptions().getSubscriptionProxies().isEmpty(), is(true));
+
+        consumer.unsubscribeAndDisconnect();
+        while (server.getConnectionCount() != 0) {
+            Thread.sleep(10);
+        }
+        consumer.connect();
+
+        while (server.getSubscriberCount(identifier) != 1) {
+            Thread.sleep(10);
+        }
+
+        consumer.disconnect();
+        server.close();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void staleConnectionReconnectsThroughPolicy() throws InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        // No pings, so that the connection goes stale
+        final LoopbackServer.Options serverOptions = new LoopbackServer.Options();
+        serverOptions.pingInterval = 0;
+        final LoopbackServer server = new LoopbackServer(serverOptions);
+
+        final Consumer.Options options = new Consumer.Options();
+        options.transportFactory = server.getTransportFactory();
+        options.reconnection = true;
+        options.staleThreshold = 200;
+        options.staleTimeUnit = TimeUnit.MILLISECONDS;
+        options.adaptiveStaleThreshold = false;
+        options.reconnectPolicy = new ReconnectPolicy() {
+            @Override
+            public long nextDelay(Cause cause) {
+                events.offer("nextDelay:" + cause.getCloseCode());
+                return 50;
+            }
+        };
+        final Consumer consumer = new Consumer(URI.create("loopback://cable"), options);
+        consumer.getSubscriptions().create(new Channel("ChatChannel"))
+                .onConnected(new Subscription.ConnectedCallback() {
+                    @Override
+                    public void call() {
+                        events.offer("onConnected");
+                    }
+                });
+        consumer.connect();
+
+        assertThat(events.take(), is("onConnected"));
+        assertThat(events.take(), is("nextDelay:" + ReconnectPolicy.Cause.ABNORMAL_CLOSURE));
+        String event;
+        while ((event = events.take()).startsWith("nextDelay:")) {
+            // The close of the stale connection may ask again
+        }
+        assertThat(event, is("onConnected"));
+
+        consumer.disconnect();
+        server.close();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void disconnectCancelsPendingReconnect() throws InterruptedException {
+        final LoopbackServer server = new LoopbackServer(new LoopbackServer.Options());
+
+        final Consumer.Options options = new Consumer.Options();
+        options.transportFactory = server.getTransportFactory();
+        options.reconnection = true;
+        options.reconnectPolicy = new ReconnectPolicy() {
+            @Override
+            public long nextDelay(Cause cause) {
+                return 100;
+            }
+        };
+        final Consumer consumer = new Consumer(URI.create("loopback://cable"), options);
+        consumer.connect();
+        while (!consumer.getConnection().isOpen()) {
+            Thread.sleep(10);
+        }
+
+        server.disconnectAll(1012, "service restart");
+        while (consumer.getConnection().isOpen()) {
+            Thread.sleep(10);
+        }
+        consumer.disconnect();
+
+        Thread.sleep(300);
+        assertThat(consumer.getConnection().isClosed(), is(true));
+        assertThat(server.getConnectionCount(), is(0));
+
+        server.close();
+    }
+}
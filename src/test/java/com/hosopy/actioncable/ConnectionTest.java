@@ -1,5 +1,9 @@
 package com.hosopy.actioncable;
 
+import com.hosopy.actioncable.transport.FragmentedText;
+import com.hosopy.actioncable.transport.Transport;
+import com.hosopy.concurrent.EventLoop;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -9,17 +13,28 @@ import org.junit.runners.JUnit4;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import okhttp3.Response;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 import okio.ByteString;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 @RunWith(JUnit4.class)
@@ -92,7 +107,7 @@ public class ConnectionTest {
 
         connection.setListener(new DefaultConnectionListener() {
             @Override
-            public void onMessage(String textMessage) {
+            public void onMessage(String textMessage, long receivedAt) {
                 events.offer("onMessage:" + textMessage);
             }
         });
@@ -310,6 +325,363 @@ public class ConnectionTest {
         assertThat(connection.isOpen(), is(false));
     }
 
+    @Test(timeout = TIMEOUT)
+    public void shouldCancelWhenServerDoesNotCompleteClosingHandshake() throws InterruptedException, IOException {
+        final CountDownLatch halfDead = new CountDownLatch(1);
+        final MockResponse response = new MockResponse();
+        response.withWebSocketUpgrade(new DefaultWebSocketListener() {
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                // Half-dead peer never answers the close frame, nor closes the socket
+                try {
+                    halfDead.await();
+                } catch (InterruptedException ignored) {
+                }
+                webSocket.cancel();
+            }
+        });
+        mockWebServer.enqueue(response);
+        mockWebServer.start();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.closeTimeout = 300L;
+        options.closeTimeUnit = TimeUnit.MILLISECONDS;
+
+        final URI uri = mockWebServer.url("/").uri();
+        final Connection connection = new Connection(uri, options);
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        connection.setListener(new DefaultConnectionListener() {
+            @Override
+            public void onOpen() {
+                events.offer("onOpen");
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                events.offer("onFailure");
+            }
+
+            @Override
+            public void onClosed() {
+                events.offer("onClosed");
+            }
+        });
+
+        connection.open();
+        assertThat(events.take(), is("onOpen"));
+
+        final long closeStartedAt = System.nanoTime();
+        connection.close();
+
+        assertThat(events.take(), is("onClosed"));
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - closeStartedAt) < 5, is(true));
+        assertThat(connection.isClosed(), is(true));
+        assertThat(connection.getCloseTimings().isCancelled(), is(true));
+        assertThat(connection.getCloseTimings().getHandshakeTime(TimeUnit.MILLISECONDS), is(-1L));
+        assertThat(connection.getCloseTimings().getTotalTime(TimeUnit.MILLISECONDS) >= 300, is(true));
+
+        halfDead.countDown();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void shouldRecordCloseTimings() throws InterruptedException, IOException {
+        final MockResponse response = new MockResponse();
+        response.withWebSocketUpgrade(new DefaultWebSocketListener());
+        mockWebServer.enqueue(response);
+        mockWebServer.start();
+
+        final URI uri = mockWebServer.url("/").uri();
+        final Connection connection = new Connection(uri, new Consumer.Options());
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        connection.setListener(new DefaultConnectionListener() {
+            @Override
+            public void onOpen() {
+                events.offer("onOpen");
+            }
+
+            @Override
+            public void onClosed() {
+                events.offer("onClosed");
+            }
+        });
+
+        assertThat(connection.getCloseTimings(), is(nullValue()));
+
+        connection.open();
+        assertThat(events.take(), is("onOpen"));
+
+        connection.close();
+        assertThat(events.take(), is("onClosed"));
+
+        final BlockingQueue<Boolean> deadlinePending = new LinkedBlockingQueue<Boolean>();
+        EventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                deadlinePending.offer(connection.isCloseDeadlinePending());
+            }
+        });
+        assertThat(deadlinePending.take(), is(false));
+
+        final Connection.CloseTimings timings = connection.getCloseTimings();
+        assertThat(timings.isCancelled(), is(false));
+        assertThat(timings.getHandshakeTime(TimeUnit.NANOSECONDS) >= 0, is(true));
+        assertThat(timings.getTotalTime(TimeUnit.NANOSECONDS) >= timings.getHandshakeTime(TimeUnit.NANOSECONDS), is(true));
+    }
+
+    @Test(timeout = 60000)
+    public void shouldNeverOpenTwoSocketsConcurrently() throws InterruptedException, IOException {
+        final AtomicInteger liveSockets = new AtomicInteger();
+        final AtomicInteger maxLiveSockets = new AtomicInteger();
+        final AtomicInteger openedSockets = new AtomicInteger();
+
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().withWebSocketUpgrade(new DefaultWebSocketListener() {
+                    private final AtomicBoolean live = new AtomicBoolean(false);
+
+                    @Override
+                    public void onOpen(WebSocket webSocket, Response response) {
+                        live.set(true);
+                        openedSockets.incrementAndGet();
+                        final int count = liveSockets.incrementAndGet();
+                        int max;
+                        while (count > (max = maxLiveSockets.get()) && !maxLiveSockets.compareAndSet(max, count)) {
+                            // retry
+                        }
+                    }
+
+                    @Override
+                    public void onClosing(WebSocket webSocket, int code, String reason) {
+                        // Counted as dead before the server answers, so that the client cannot observe onClosed earlier
+                        if (live.compareAndSet(true, false)) {
+                            liveSockets.decrementAndGet();
+                        }
+                        super.onClosing(webSocket, code, reason);
+                    }
+
+                    @Override
+                    public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                        if (live.compareAndSet(true, false)) {
+                            liveSockets.decrementAndGet();
+                        }
+                    }
+                });
+            }
+        });
+        mockWebServer.start();
+
+        final URI uri = mockWebServer.url("/").uri();
+        final Connection connection = new Connection(uri, new Consumer.Options());
+        connection.setListener(new DefaultConnectionListener());
+
+        final int threads = 8;
+        final int iterations = 100;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            final Random random = new Random(i);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < iterations; j++) {
+                            switch (random.nextInt(3)) {
+                                case 0:
+                                    connection.open();
+                                    break;
+                                case 1:
+                                    connection.close();
+                                    break;
+                                default:
+                                    connection.reopen();
+                                    break;
+                            }
+                            Thread.sleep(random.nextInt(5));
+                        }
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.countDown();
+        done.await();
+
+        // Settle down
+        connection.open();
+        while (!connection.isOpen()) {
+            Thread.sleep(10);
+        }
+        connection.close();
+        while (!connection.isClosed()) {
+            Thread.sleep(10);
+        }
+
+        assertThat(openedSockets.get() > 1, is(true));
+        assertThat(maxLiveSockets.get(), is(1));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void shouldConnectWithCredentialsOfProvider() throws InterruptedException, IOException {
+        final MockResponse response = new MockResponse();
+        response.withWebSocketUpgrade(new DefaultWebSocketListener());
+        mockWebServer.enqueue(response);
+        mockWebServer.start();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.headers = new HashMap<String, String>();
+        options.headers.put("X-Static", "static");
+        options.credentialsProvider = new CredentialsProvider() {
+            @Override
+            public void fetch(final Callback callback) {
+                new Thread() {
+                    @Override
+                    public void run() {
+                        final Map<String, String> headers = new HashMap<String, String>();
+                        headers.put("Authorization", "Bearer token");
+                        final Map<String, String> query = new HashMap<String, String>();
+                        query.put("access_token", "token");
+                        callback.onCredentials(new Credentials(headers, query, 1, TimeUnit.HOURS));
+                    }
+                }.start();
+            }
+        };
+
+        final Connection connection = new Connection(mockWebServer.url("/").uri(), options);
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        connection.setListener(new DefaultConnectionListener() {
+            @Override
+            public void onOpen() {
+                events.offer("onOpen");
+            }
+        });
+        connection.open();
+
+        assertThat(events.take(), is("onOpen"));
+
+        final RecordedRequest request = mockWebServer.takeRequest();
+        assertThat(request.getPath(), is("/?access_token=token"));
+        assertThat(request.getHeader("Authorization"), is("Bearer token"));
+        assertThat(request.getHeader("X-Static"), is("static"));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void shouldFireOnFailureWhenCredentialsAreUnavailable() throws InterruptedException, IOException {
+        mockWebServer.start();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.credentialsProvider = new CredentialsProvider() {
+            @Override
+            public void fetch(Callback callback) {
+                callback.onFailure(new IOException("token service unavailable"));
+            }
+        };
+
+        final Connection connection = new Connection(mockWebServer.url("/").uri(), options);
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        connection.setListener(new DefaultConnectionListener() {
+            @Override
+            public void onFailure(Exception e) {
+                events.offer("onFailure:" + e.getMessage());
+            }
+        });
+        connection.open();
+
+        assertThat(events.take(), is("onFailure:token service unavailable"));
+        assertThat(connection.isClosed(), is(true));
+        assertThat(mockWebServer.getRequestCount(), is(0));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void shouldOpenThroughTransportFactory() throws URISyntaxException, InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.query = new HashMap<String, String>();
+        options.query.put("token", "xxx");
+        options.transportFactory = new Transport.Factory() {
+            @Override
+            public Transport open(URI uri, Map<String, String> headers, final Transport.Listener listener) {
+                events.offer("open:" + uri);
+                final Transport transport = new Transport() {
+                    @Override
+                    public boolean send(String text) {
+                        events.offer("send:" + text);
+                        listener.onMessage(this, text);
+                        return true;
+                    }
+
+                    @Override
+                    public boolean send(ByteBuffer bytes) {
+                        events.offer("send:" + bytes.remaining() + " bytes");
+                        listener.onMessage(this, bytes);
+                        return true;
+                    }
+
+                    @Override
+                    public boolean close(int code, String reason) {
+                        listener.onClosed(this, code, reason);
+                        return true;
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+
+                    @Override
+                    public long queueSize() {
+                        return 0;
+                    }
+                };
+                listener.onOpen(transport);
+                return transport;
+            }
+        };
+
+        final Connection connection = new Connection(new URI("ws://example.com:28080"), options);
+        connection.setListener(new DefaultConnectionListener() {
+            @Override
+            public void onOpen() {
+                events.offer("onOpen");
+            }
+
+            @Override
+            public void onMessage(String string, long receivedAt) {
+                events.offer("onMessage:" + string);
+            }
+
+            @Override
+            public void onClosed() {
+                events.offer("onClosed");
+            }
+        });
+        connection.open();
+
+        assertThat(events.take(), is("open:ws://example.com:28080?token=xxx"));
+        assertThat(events.take(), is("onOpen"));
+
+        connection.send("{}");
+        assertThat(events.take(), is("send:{}"));
+        assertThat(events.take(), is("onMessage:{}"));
+
+        connection.close();
+        assertThat(events.take(), is("onClosed"));
+        assertThat(connection.isClosed(), is(true));
+    }
+
     private static class DefaultConnectionListener implements Connection.Listener {
 
 
@@ -322,7 +694,15 @@ public class ConnectionTest {
         }
 
         @Override
-        public void onMessage(String textMessage) {
+        public void onMessage(String textMessage, long receivedAt) {
+        }
+
+        @Override
+        public void onMessage(FragmentedText text, long receivedAt) {
+        }
+
+        @Override
+        public void onMessage(ByteBuffer bytes, long receivedAt) {
         }
 
         @Override
@@ -0,0 +1,120 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.hosopy.actioncable.loopback.LoopbackServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class ConsumerMXBeanTest {
+
+    private static final int TIMEOUT = 10000;
+
+    LoopbackServer server;
+
+    Consumer consumer;
+
+    final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+    @Before
+    public void setUp() {
+        server = new LoopbackServer(new LoopbackServer.Options());
+
+        final Consumer.Options options = new Consumer.Options();
+        options.transportFactory = server.getTransportFactory();
+        options.jmx = true;
+        options.jmxName = "test";
+        consumer = ActionCable.createConsumer(URI.create("loopback://cable"), options);
+    }
+
+    @After
+    public void tearDown() {
+        consumer.disconnect();
+        server.close();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void attributesAndOperations() throws Exception {
+        final Subscription subscription = subscribe(new Channel("ChatChannel"));
+        subscribe(new Channel("NotificationChannel"));
+        consumer.connect();
+        assertThat(events.take(), is("onConnected"));
+        assertThat(events.take(), is("onConnected"));
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("body", "hello");
+        subscription.perform("speak", data);
+        assertThat(events.take(), is("onReceived"));
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName objectName = consumer.getJmx().getObjectName();
+        assertThat(objectName.getKeyProperty("type"), is("Consumer"));
+        assertThat(server.isRegistered(objectName), is(true));
+
+        final ConsumerMXBean bean = JMX.newMXBeanProxy(server, objectName, ConsumerMXBean.class);
+        assertThat(bean.getUri(), is("loopback://cable"));
+        assertThat(bean.getConnectionState(), is("OPEN"));
+        assertThat(bean.isConnected(), is(true));
+        assertThat(bean.getReconnectAttempts(), is(0));
+        assertThat(bean.getMessagesReceived(), is(1L));
+
+        final List<ConsumerMXBean.SubscriptionInfo> infos = bean.getSubscriptions();
+        assertThat(infos.size(), is(2));
+        for (ConsumerMXBean.SubscriptionInfo info : infos) {
+            final boolean chat = info.getIdentifier().equals(subscription.getIdentifier());
+            assertThat(info.isConfirmed(), is(true));
+            assertThat(info.getReceived(), is(chat ? 1L : 0L));
+            assertThat(info.getPerformed(), is(chat ? 1L : 0L));
+        }
+
+        assertThat(bean.unsubscribe(subscription.getIdentifier()), is(1));
+        assertThat(bean.getSubscriptions().size(), is(1));
+
+        bean.reconnect();
+        assertThat(events.take(), is("onDisconnected"));
+        assertThat(events.take(), is("onConnected"));
+
+        consumer.disconnect();
+        assertThat(server.isRegistered(objectName), is(false));
+    }
+
+    private Subscription subscribe(Channel channel) {
+        return consumer.getSubscriptions().create(channel)
+                .onConnected(new Subscription.ConnectedCallback() {
+                    @Override
+                    public void call() {
+                        events.offer("onConnected");
+                    }
+                })
+                .onDisconnected(new Subscription.DisconnectedCallback() {
+                    @Override
+                    public void call() {
+                        events.offer("onDisconnected");
+                    }
+                })
+                .onReceived(new Subscription.ReceivedCallback() {
+                    @Override
+                    public void call(JsonElement data) {
+                        events.offer("onReceived");
+                    }
+                });
+    }
+}
@@ -0,0 +1,126 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Throughput of {@link ConsumerPool} for pool sizes 1 to 8.
+ * <p/>
+ * <p>Skipped unless run with {@code gradle test -Dbenchmark=true --tests '*ConsumerPoolBenchmarkTest'}.</p>
+ */
+@RunWith(JUnit4.class)
+public class ConsumerPoolBenchmarkTest {
+
+    private static final int CHANNELS = 32;
+
+    // Keeps a single socket below the 16 MiB outgoing queue of the server
+    private static final int MESSAGES_PER_CHANNEL = 1000;
+
+    private static final String PAYLOAD = new String(new char[200]).replace('\0', 'x');
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void throughput() throws IOException, InterruptedException {
+        for (int poolSize = 1; poolSize <= 8; poolSize++) {
+            // Warm up once, then measure
+            run(poolSize);
+            final long nanos = run(poolSize);
+            final long messages = (long) CHANNELS * MESSAGES_PER_CHANNEL;
+            System.out.println(String.format("poolSize=%d messages=%d time=%dms throughput=%d msg/s",
+                    poolSize, messages, TimeUnit.NANOSECONDS.toMillis(nanos), messages * TimeUnit.SECONDS.toNanos(1) / nanos));
+        }
+    }
+
+    private long run(int poolSize) throws IOException, InterruptedException {
+        final MockWebServer mockWebServer = new MockWebServer();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().withWebSocketUpgrade(new BroadcastingListener());
+            }
+        });
+        mockWebServer.start();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.poolSize = poolSize;
+        final ConsumerPool pool = ActionCable.createConsumerPool(mockWebServer.url("/").uri(), options);
+
+        final CountDownLatch received = new CountDownLatch(CHANNELS * MESSAGES_PER_CHANNEL);
+        for (int i = 0; i < CHANNELS; i++) {
+            final Channel channel = new Channel("BenchmarkChannel");
+            channel.addParam("id", i);
+            pool.getSubscriptions().create(channel).onReceived(new Subscription.ReceivedCallback() {
+                @Override
+                public void call(JsonElement data) {
+                    received.countDown();
+                }
+            });
+        }
+
+        final long startedAt = System.nanoTime();
+        pool.connect();
+        assertTrue(received.await(60, TimeUnit.SECONDS));
+        final long elapsed = System.nanoTime() - startedAt;
+
+        pool.disconnect();
+        Thread.sleep(500);
+        mockWebServer.shutdown();
+        return elapsed;
+    }
+
+    /**
+     * Confirms every subscription and broadcasts to it right away.
+     */
+    private static class BroadcastingListener extends WebSocketListener {
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            final JsonObject command = new JsonParser().parse(text).getAsJsonObject();
+            if (!"subscribe".equals(command.get("command").getAsString())) {
+                return;
+            }
+            final String identifier = command.get("identifier").getAsString();
+
+            final JsonObject confirmation = new JsonObject();
+            confirmation.addProperty("identifier", identifier);
+            confirmation.addProperty("type", "confirm_subscription");
+            webSocket.send(confirmation.toString());
+
+            final JsonObject message = new JsonObject();
+            message.addProperty("identifier", identifier);
+            message.addProperty("message", PAYLOAD);
+            final String broadcast = message.toString();
+            for (int i = 0; i < MESSAGES_PER_CHANNEL; i++) {
+                webSocket.send(broadcast);
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            webSocket.close(1000, null);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class ConsumerPoolTest {
+
+    private static final int TIMEOUT = 10000;
+
+    private static final int CHANNELS = 16;
+
+    MockWebServer mockWebServer;
+
+    /**
+     * Identifiers subscribed on each server side socket
+     */
+    final Map<WebSocket, Set<String>> subscribed = new ConcurrentHashMap<WebSocket, Set<String>>();
+
+    @Before
+    public void setUp() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().withWebSocketUpgrade(new ServerListener());
+            }
+        });
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer.shutdown();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void spreadSubscriptionsAcrossConnections() throws InterruptedException {
+        final Consumer.Options options = new Consumer.Options();
+        options.poolSize = 2;
+        final ConsumerPool pool = ActionCable.createConsumerPool(mockWebServer.url("/").uri(), options);
+
+        final List<Subscription> subscriptions = createSubscriptions(pool);
+        pool.connect();
+
+        while (!isSpread(2)) {
+            Thread.sleep(10);
+        }
+
+        for (Subscription subscription : subscriptions) {
+            assertThat(pool.getConsumers().contains(pool.getConsumer(subscription)), is(true));
+        }
+
+        disconnect(pool);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void rebalanceWhenConnectionIsLost() throws InterruptedException {
+        final Consumer.Options options = new Consumer.Options();
+        options.poolSize = 2;
+        final ConsumerPool pool = ActionCable.createConsumerPool(mockWebServer.url("/").uri(), options);
+
+        final List<Subscription> subscriptions = createSubscriptions(pool);
+        pool.connect();
+
+        while (!isSpread(2)) {
+            Thread.sleep(10);
+        }
+
+        // The server drops one of the connections
+        final WebSocket dropped = subscribed.keySet().iterator().next();
+        dropped.close(1000, null);
+
+        while (!isSpread(1)) {
+            Thread.sleep(10);
+        }
+
+        final Consumer survivor = pool.getConsumer(subscriptions.get(0));
+        for (Subscription subscription : subscriptions) {
+            assertThat(pool.getConsumer(subscription), is(survivor));
+        }
+
+        disconnect(pool);
+    }
+
+    private List<Subscription> createSubscriptions(ConsumerPool pool) {
+        final List<Subscription> subscriptions = new ArrayList<Subscription>();
+        for (int i = 0; i < CHANNELS; i++) {
+            final Channel channel = new Channel("CommentsChannel");
+            channel.addParam("id", i);
+            subscriptions.add(pool.getSubscriptions().create(channel));
+        }
+        return subscriptions;
+    }
+
+    /**
+     * Check if every channel is subscribed exactly once over the given number of sockets.
+     */
+    private boolean isSpread(int sockets) {
+        final Set<String> all = new HashSet<String>();
+        int total = 0;
+        for (Set<String> identifiers : subscribed.values()) {
+            if (identifiers.isEmpty()) {
+                return false;
+            }
+            synchronized (identifiers) {
+                all.addAll(identifiers);
+                total += identifiers.size();
+            }
+        }
+        return subscribed.size() == sockets && all.size() == CHANNELS && total == CHANNELS;
+    }
+
+    private void disconnect(ConsumerPool pool) throws InterruptedException {
+        pool.disconnect();
+        while (!subscribed.isEmpty()) {
+            Thread.sleep(10);
+        }
+    }
+
+    private class ServerListener extends WebSocketListener {
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            subscribed.put(webSocket, Collections.synchronizedSet(new HashSet<String>()));
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            final JsonObject command = new JsonParser().parse(text).getAsJsonObject();
+            final String identifier = command.get("identifier").getAsString();
+            final Set<String> identifiers = subscribed.get(webSocket);
+            if ("subscribe".equals(command.get("command").getAsString())) {
+                identifiers.add(identifier);
+                final JsonObject confirmation = new JsonObject();
+                confirmation.addProperty("identifier", identifier);
+                confirmation.addProperty("type", "confirm_subscription");
+                webSocket.send(confirmation.toString());
+            } else if ("unsubscribe".equals(command.get("command").getAsString())) {
+                identifiers.remove(identifier);
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            webSocket.close(1000, null);
+            subscribed.remove(webSocket);
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            subscribed.remove(webSocket);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.hosopy.actioncable;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -7,8 +11,16 @@ import org.junit.runners.JUnit4;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import okhttp3.Response;
 import okhttp3.ResponseBody;
@@ -20,8 +32,10 @@ import okio.Buffer;
 import okio.BufferedSource;
 import okio.ByteString;
 
+import static org.hamcrest.CoreMatchers.hasItems;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.isA;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertThat;
 
@@ -152,6 +166,414 @@ public class ConsumerTest {
         mockWebServer.shutdown();
     }
 
+    @Test(timeout = TIMEOUT)
+    public void reconnectWhenClosedByServer() throws IOException, InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        final MockWebServer mockWebServer = new MockWebServer();
+        final MockResponse response = new MockResponse();
+        response.withWebSocketUpgrade(new DefaultWebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                events.offer("onOpen");
+                webSocket.close(1000, "Reason");
+            }
+        });
+        mockWebServer.enqueue(response);
+        final MockResponse secondResponse = new MockResponse();
+        secondResponse.withWebSocketUpgrade(new DefaultWebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                events.offer("onReopen");
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                webSocket.close(code, reason);
+                events.offer("onClosing");
+            }
+        });
+        mockWebServer.enqueue(secondResponse);
+        mockWebServer.start();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.reconnection = true;
+        options.reconnectionDelay = 0;
+        options.reconnectionDelayMax = 1;
+
+        final Consumer consumer = new Consumer(mockWebServer.url("/").uri(), options);
+        consumer.connect();
+
+        assertThat(events.take(), is("onOpen"));
+        // Reconnected by the close event well before the stale threshold
+        assertThat(events.take(), is("onReopen"));
+
+        while (!consumer.getConnection().isOpen()) {
+            Thread.sleep(100);
+        }
+        consumer.disconnect();
+
+        assertThat(events.take(), is("onClosing"));
+
+        mockWebServer.shutdown();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void notReconnectWhenServerDisconnectsWithoutReconnect() throws IOException, InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        final MockWebServer mockWebServer = new MockWebServer();
+        final MockResponse response = new MockResponse();
+        response.withWebSocketUpgrade(new DefaultWebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                webSocket.send("{\"type\":\"disconnect\",\"reason\":\"unauthorized\",\"reconnect\":false}");
+                webSocket.close(1000, null);
+            }
+        });
+        mockWebServer.enqueue(response);
+        mockWebServer.enqueue(new MockResponse().withWebSocketUpgrade(new DefaultWebSocketListener()));
+        mockWebServer.start();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.reconnection = true;
+        options.reconnectionDelay = 0;
+        options.reconnectionDelayMax = 1;
+
+        final Consumer consumer = new Consumer(mockWebServer.url("/").uri(), options);
+        consumer.onServerDisconnect(new Consumer.ServerDisconnectCallback() {
+            @Override
+            public void call(String reason, boolean reconnect) {
+                events.offer("onServerDisconnect:" + reason + ":" + reconnect);
+            }
+        });
+        consumer.connect();
+
+        assertThat(events.take(), is("onServerDisconnect:unauthorized:false"));
+
+        Thread.sleep(1500);
+        assertThat(mockWebServer.getRequestCount(), is(1));
+
+        mockWebServer.shutdown();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void notReconnectWhenHandshakeIsUnauthorized() throws IOException, InterruptedException {
+        final MockWebServer mockWebServer = new MockWebServer();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(401));
+        mockWebServer.enqueue(new MockResponse().withWebSocketUpgrade(new DefaultWebSocketListener()));
+        mockWebServer.start();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.reconnection = true;
+        options.reconnectionDelay = 0;
+        options.reconnectionDelayMax = 1;
+
+        final Consumer consumer = new Consumer(mockWebServer.url("/").uri(), options);
+        consumer.connect();
+
+        mockWebServer.takeRequest();
+        Thread.sleep(1500);
+        assertThat(mockWebServer.getRequestCount(), is(1));
+
+        mockWebServer.shutdown();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void retryRejectedReconnectWithFreshCredentials() throws IOException, InterruptedException {
+        final BlockingQueue<String> serverEvents = new LinkedBlockingQueue<String>();
+        final MockWebServer mockWebServer = new MockWebServer();
+        mockWebServer.enqueue(new MockResponse().withWebSocketUpgrade(new DefaultWebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                webSocket.send("{\"type\":\"welcome\"}");
+                webSocket.close(1012, "service restart");
+            }
+        }));
+        // The token has expired in the meantime
+        mockWebServer.enqueue(new MockResponse().setResponseCode(401));
+        mockWebServer.enqueue(new MockResponse().withWebSocketUpgrade(new DefaultWebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                serverEvents.offer("onOpen");
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                webSocket.close(code, reason);
+                serverEvents.offer("onClosing");
+            }
+        }));
+        mockWebServer.start();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.reconnection = true;
+        options.reconnectionDelay = 0;
+        options.reconnectionDelayMax = 1;
+        options.credentialsProvider = new SequentialCredentialsProvider();
+
+        final Consumer consumer = new Consumer(mockWebServer.url("/").uri(), options);
+        consumer.connect();
+
+        assertThat(mockWebServer.takeRequest().getPath(), is("/?access_token=token1"));
+        assertThat(mockWebServer.takeRequest().getPath(), is("/?access_token=token1"));
+        assertThat(mockWebServer.takeRequest().getPath(), is("/?access_token=token2"));
+        assertThat(serverEvents.take(), is("onOpen"));
+
+        consumer.disconnect();
+        assertThat(serverEvents.take(), is("onClosing"));
+        mockWebServer.shutdown();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void retryUnauthorizedDisconnectOnceWithFreshCredentials() throws IOException, InterruptedException {
+        final MockWebServer mockWebServer = new MockWebServer();
+        final MockResponse unauthorized = new MockResponse().withWebSocketUpgrade(new DefaultWebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                webSocket.send("{\"type\":\"disconnect\",\"reason\":\"unauthorized\",\"reconnect\":false}");
+                webSocket.close(1000, null);
+            }
+        });
+        mockWebServer.enqueue(unauthorized);
+        mockWebServer.enqueue(unauthorized);
+        mockWebServer.enqueue(new MockResponse().withWebSocketUpgrade(new DefaultWebSocketListener()));
+        mockWebServer.start();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.reconnection = true;
+        options.reconnectionDelay = 0;
+        options.reconnectionDelayMax = 1;
+        options.credentialsProvider = new SequentialCredentialsProvider();
+
+        final Consumer consumer = new Consumer(mockWebServer.url("/").uri(), options);
+        consumer.connect();
+
+        assertThat(mockWebServer.takeRequest().getPath(), is("/?access_token=token1"));
+        assertThat(mockWebServer.takeRequest().getPath(), is("/?access_token=token2"));
+
+        // Rejected again: give up
+        Thread.sleep(1500);
+        assertThat(mockWebServer.getRequestCount(), is(2));
+
+        consumer.disconnect();
+        mockWebServer.shutdown();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void notReconnectWhenClosedWithPolicyViolation() throws IOException, InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        final MockWebServer mockWebServer = new MockWebServer();
+        final MockResponse response = new MockResponse();
+        response.withWebSocketUpgrade(new DefaultWebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                webSocket.close(1008, "policy violation");
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                events.offer("onClosing");
+            }
+        });
+        mockWebServer.enqueue(response);
+        mockWebServer.enqueue(new MockResponse().withWebSocketUpgrade(new DefaultWebSocketListener()));
+        mockWebServer.start();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.reconnection = true;
+        options.reconnectionDelay = 0;
+        options.reconnectionDelayMax = 1;
+
+        final Consumer consumer = new Consumer(mockWebServer.url("/").uri(), options);
+        consumer.connect();
+
+        assertThat(events.take(), is("onClosing"));
+
+        Thread.sleep(1500);
+        assertThat(mockWebServer.getRequestCount(), is(1));
+
+        mockWebServer.shutdown();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void migrateWithoutGapOrDuplicates() throws IOException, InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        final BlockingQueue<String> serverEvents = new LinkedBlockingQueue<String>();
+        final AtomicReference<WebSocket> firstSocket = new AtomicReference<WebSocket>();
+        final AtomicBoolean broadcasted = new AtomicBoolean(false);
+
+        final MockWebServer mockWebServer = new MockWebServer();
+        mockWebServer.enqueue(new MockResponse().withWebSocketUpgrade(new DefaultWebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                firstSocket.set(webSocket);
+                webSocket.send("{\"type\":\"welcome\"}");
+            }
+
+            @Override
+            public void onMessage(WebSocket webSocket, String text) {
+                final String identifier = identifierOf(text);
+                webSocket.send(confirmation(identifier));
+                // The client subscribes again on welcome
+                if (!broadcasted.getAndSet(true)) {
+                    webSocket.send(broadcast(identifier, "a"));
+                }
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                webSocket.close(1000, null);
+                serverEvents.offer("first:onClosing");
+            }
+        }));
+        mockWebServer.enqueue(new MockResponse().withWebSocketUpgrade(new DefaultWebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                webSocket.send("{\"type\":\"welcome\"}");
+            }
+
+            @Override
+            public void onMessage(WebSocket webSocket, String text) {
+                final String identifier = identifierOf(text);
+                // Broadcast while both connections are subscribed
+                firstSocket.get().send(broadcast(identifier, "b"));
+                webSocket.send(broadcast(identifier, "b"));
+                webSocket.send(confirmation(identifier));
+                serverEvents.offer("second:confirmed");
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                webSocket.close(1000, null);
+                serverEvents.offer("second:onClosing");
+            }
+        }));
+        mockWebServer.start();
+
+        final Consumer consumer = new Consumer(mockWebServer.url("/").uri());
+        final Subscription subscription = consumer.getSubscriptions().create(new Channel("CommentsChannel"));
+        subscription.onReceived(new Subscription.ReceivedCallback() {
+            @Override
+            public void call(JsonElement data) {
+                events.offer("onReceived:" + data.getAsString());
+            }
+        });
+        consumer.connect();
+
+        assertThat(events.take(), is("onReceived:a"));
+        final Connection first = consumer.getConnection();
+
+        consumer.migrate(new Consumer.MigrationCallback() {
+            @Override
+            public void onMigrated() {
+                events.offer("onMigrated");
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                events.offer("onFailure:" + e.getMessage());
+            }
+        });
+
+        assertThat(serverEvents.take(), is("second:confirmed"));
+        assertThat(serverEvents.take(), is("first:onClosing"));
+
+        final List<String> received = new ArrayList<String>();
+        received.add(events.take());
+        received.add(events.take());
+        assertThat(received, hasItems("onReceived:b", "onMigrated"));
+        assertThat(consumer.getConnection(), is(not(first)));
+
+        // No duplicate of "b" from the other connection
+        Thread.sleep(500);
+        assertThat(events.isEmpty(), is(true));
+
+        consumer.disconnect();
+        assertThat(serverEvents.take(), is("second:onClosing"));
+
+        mockWebServer.shutdown();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void failOverToHealthyEndpoint() throws IOException, InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        final MockWebServer unavailable = new MockWebServer();
+        for (int i = 0; i < 5; i++) {
+            unavailable.enqueue(new MockResponse().setResponseCode(503));
+        }
+        unavailable.start();
+
+        final MockWebServer healthy = new MockWebServer();
+        healthy.enqueue(new MockResponse().withWebSocketUpgrade(new DefaultWebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                events.offer("onOpen");
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                webSocket.close(1000, null);
+                events.offer("onClosing");
+            }
+        }));
+        healthy.start();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.reconnection = true;
+        options.reconnectionDelay = 0;
+        options.reconnectionDelayMax = 1;
+        options.endpoints = Arrays.asList(new Endpoint(unavailable.url("/").uri()), new Endpoint(healthy.url("/").uri()));
+
+        final Consumer consumer = new Consumer(unavailable.url("/").uri(), options);
+        consumer.connect();
+
+        assertThat(events.take(), is("onOpen"));
+        assertThat(unavailable.getRequestCount(), is(1));
+        assertThat(consumer.getConnection().getEndpoint(), is(options.endpoints.get(1)));
+        assertThat(options.endpoints.get(0).getFailureRate() > 0, is(true));
+
+        consumer.disconnect();
+        assertThat(events.take(), is("onClosing"));
+
+        unavailable.shutdown();
+        healthy.shutdown();
+    }
+
+    private static String identifierOf(String command) {
+        return new JsonParser().parse(command).getAsJsonObject().get("identifier").getAsString();
+    }
+
+    private static String confirmation(String identifier) {
+        final JsonObject message = new JsonObject();
+        message.addProperty("identifier", identifier);
+        message.addProperty("type", "confirm_subscription");
+        return message.toString();
+    }
+
+    private static String broadcast(String identifier, String data) {
+        final JsonObject message = new JsonObject();
+        message.addProperty("identifier", identifier);
+        message.addProperty("message", data);
+        return message.toString();
+    }
+
+    /**
+     * Provides "token1", "token2", ... valid for an hour
+     */
+    private static class SequentialCredentialsProvider implements CredentialsProvider {
+
+        private final AtomicInteger fetched = new AtomicInteger(0);
+
+        @Override
+        public void fetch(Callback callback) {
+            callback.onCredentials(new Credentials(null,
+                    Collections.singletonMap("access_token", "token" + fetched.incrementAndGet()), 1, TimeUnit.HOURS));
+        }
+    }
+
     private static class DefaultWebSocketListener extends WebSocketListener {
     }
 }
@@ -0,0 +1,90 @@
+package com.hosopy.actioncable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class CredentialsCacheTest {
+
+    private static final int TIMEOUT = 10000;
+
+    @Test(timeout = TIMEOUT)
+    public void shareSingleFetch() throws InterruptedException {
+        final AtomicInteger fetches = new AtomicInteger();
+        final BlockingQueue<CredentialsProvider.Callback> pending = new LinkedBlockingQueue<CredentialsProvider.Callback>();
+        final CredentialsCache cache = new CredentialsCache(new CredentialsProvider() {
+            @Override
+            public void fetch(Callback callback) {
+                fetches.incrementAndGet();
+                pending.offer(callback);
+            }
+        }, 0, TimeUnit.SECONDS);
+
+        final BlockingQueue<Credentials> results = new LinkedBlockingQueue<Credentials>();
+        cache.get(new QueueCallback(results));
+        cache.get(new QueueCallback(results));
+
+        final Credentials credentials = new Credentials(null, null);
+        pending.take().onCredentials(credentials);
+
+        assertThat(results.take(), is(credentials));
+        assertThat(results.take(), is(credentials));
+
+        // Served from the cache without fetching again
+        cache.get(new QueueCallback(results));
+        assertThat(results.take(), is(credentials));
+        assertThat(fetches.get(), is(1));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void refreshAheadOfExpiry() throws InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        final CredentialsCache cache = new CredentialsCache(new CredentialsProvider() {
+            @Override
+            public void fetch(Callback callback) {
+                callback.onCredentials(new Credentials(null, null, 10, TimeUnit.SECONDS));
+                events.offer("fetch");
+            }
+        }, 9800, TimeUnit.MILLISECONDS);
+
+        final BlockingQueue<Credentials> results = new LinkedBlockingQueue<Credentials>();
+        cache.get(new QueueCallback(results));
+        final Credentials first = results.take();
+        assertThat(events.take(), is("fetch"));
+
+        // Refreshed in the background about 200ms later, long before expiry
+        assertThat(events.take(), is("fetch"));
+        cache.stop();
+
+        cache.get(new QueueCallback(results));
+        assertThat(results.take(), is(not(sameInstance(first))));
+    }
+
+    private static class QueueCallback implements CredentialsProvider.Callback {
+        private final BlockingQueue<Credentials> results;
+
+        QueueCallback(BlockingQueue<Credentials> results) {
+            this.results = results;
+        }
+
+        @Override
+        public void onCredentials(Credentials credentials) {
+            results.offer(credentials);
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hosopy.util.Histogram;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a real {@link Consumer} over a localhost WebSocket against a MockWebServer scripted as an ActionCable server.
+ * <p/>
+ * <p>For each combination of subscription count, payload size and callback cost, it reports</p>
+ * <ul>
+ * <li>the broadcast-to-callback latency percentiles at a steady rate, from the moment the server enqueues a frame
+ * until the callback runs, and</li>
+ * <li>the sustained throughput with a bounded number of frames in flight.</li>
+ * </ul>
+ * <p>Both ends share the JVM, so {@link System#nanoTime()} timestamps carried in the payload are comparable.
+ * Runs offline. Skipped unless run with {@code gradle test -Dbenchmark=true --tests '*EndToEndBenchmarkTest'}.</p>
+ */
+@RunWith(JUnit4.class)
+public class EndToEndBenchmarkTest {
+
+    private static final int LATENCY_MESSAGES = 20000;
+
+    private static final int LATENCY_RATE = 10000; // messages per second
+
+    private static final int THROUGHPUT_MESSAGES = 50000;
+
+    /**
+     * Frames in flight, keeps the socket below the 16 MiB outgoing queue of the server
+     */
+    private static final int WINDOW = 2000;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void latencyAndThroughput() throws IOException, InterruptedException {
+        for (int subscriptions : new int[]{1, 100}) {
+            for (int payloadSize : new int[]{100, 4096}) {
+                for (int callbackMicros : new int[]{0, 50}) {
+                    // Warm up once, then measure
+                    run(subscriptions, payloadSize, callbackMicros, false);
+                    run(subscriptions, payloadSize, callbackMicros, true);
+                }
+            }
+        }
+    }
+
+    private void run(int subscriptionCount, int payloadSize, final int callbackMicros, boolean report)
+            throws IOException, InterruptedException {
+        final CableServer cable = new CableServer(subscriptionCount);
+        final MockWebServer mockWebServer = new MockWebServer();
+        mockWebServer.enqueue(new MockResponse().withWebSocketUpgrade(cable));
+        mockWebServer.start();
+
+        final Consumer consumer = ActionCable.createConsumer(mockWebServer.url("/").uri(), new Consumer.Options());
+        final Histogram latency = new Histogram();
+        final AtomicLong received = new AtomicLong(0);
+        final CountDownLatch confirmed = new CountDownLatch(subscriptionCount);
+        for (int i = 0; i < subscriptionCount; i++) {
+            final Channel channel = new Channel("BenchmarkChannel");
+            channel.addParam("id", i);
+            consumer.getSubscriptions().create(channel)
+                    .onConnected(new Subscription.ConnectedCallback() {
+                        @Override
+                        public void call() {
+                            confirmed.countDown();
+                        }
+                    })
+                    .onReceived(new Subscription.ReceivedCallback() {
+                        @Override
+                        public void call(JsonElement data) {
+                            final long sentAt = data.getAsJsonObject().get("sent_at").getAsLong();
+                            latency.record(System.nanoTime() - sentAt);
+                            spin(callbackMicros);
+                            received.incrementAndGet();
+                        }
+                    });
+        }
+        consumer.connect();
+        assertTrue(confirmed.await(10, TimeUnit.SECONDS));
+
+        final String payload = new String(new char[payloadSize]).replace('\0', 'x');
+
+        // Latency at a steady rate, below saturation unless the callback is too slow
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / LATENCY_RATE;
+        final long startedAt = System.nanoTime();
+        for (int i = 0; i < LATENCY_MESSAGES; i++) {
+            // Park rather than spin, the sender must not take the CPU from the consumer
+            long wait;
+            while ((wait = startedAt + i * intervalNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            cable.broadcast(i, payload);
+        }
+        await(received, LATENCY_MESSAGES);
+        final Histogram steadyLatency = new Histogram();
+        steadyLatency.add(latency);
+
+        // Sustained throughput
+        received.set(0);
+        latency.reset();
+        final long throughputStartedAt = System.nanoTime();
+        for (int i = 0; i < THROUGHPUT_MESSAGES; i++) {
+            while (i - received.get() >= WINDOW) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+            }
+            cable.broadcast(i, payload);
+        }
+        await(received, THROUGHPUT_MESSAGES);
+        final long elapsed = System.nanoTime() - throughputStartedAt;
+
+        if (report) {
+            System.out.println(String.format("subscriptions=%d payload=%dB callback=%dus rate=%d msg/s latency(us): %s",
+                    subscriptionCount, payloadSize, callbackMicros, LATENCY_RATE, steadyLatency.toString(1000)));
+            System.out.println(String.format("subscriptions=%d payload=%dB callback=%dus throughput=%d msg/s latency(us): %s",
+                    subscriptionCount, payloadSize, callbackMicros,
+                    THROUGHPUT_MESSAGES * TimeUnit.SECONDS.toNanos(1) / elapsed, latency.toString(1000)));
+        }
+
+        consumer.disconnect();
+        cable.awaitClosing();
+        mockWebServer.shutdown();
+    }
+
+    private static void await(AtomicLong received, long count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (received.get() < count) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void spin(int micros) {
+        if (micros > 0) {
+            final long until = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros);
+            while (System.nanoTime() < until) {
+                // Busy callback
+            }
+        }
+    }
+
+    /**
+     * Welcomes the consumer, confirms its subscriptions and broadcasts round-robin to them.
+     */
+    private static class CableServer extends WebSocketListener {
+
+        private final List<String> identifiers = new CopyOnWriteArrayList<String>();
+
+        private final CountDownLatch closing = new CountDownLatch(1);
+
+        private final int subscriptionCount;
+
+        private volatile WebSocket webSocket;
+
+        CableServer(int subscriptionCount) {
+            this.subscriptionCount = subscriptionCount;
+        }
+
+        void broadcast(int seq, String payload) {
+            final JsonObject message = new JsonObject();
+            message.addProperty("seq", seq);
+            message.addProperty("payload", payload);
+            message.addProperty("sent_at", System.nanoTime());
+
+            final JsonObject frame = new JsonObject();
+            frame.addProperty("identifier", identifiers.get(seq % subscriptionCount));
+            frame.add("message", message);
+            webSocket.send(frame.toString());
+        }
+
+        void awaitClosing() throws InterruptedException {
+            closing.await(10, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            this.webSocket = webSocket;
+            webSocket.send("{\"type\":\"welcome\"}");
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            final JsonObject command = new JsonParser().parse(text).getAsJsonObject();
+            final String identifier = command.get("identifier").getAsString();
+            if ("subscribe".equals(command.get("command").getAsString()) && !identifiers.contains(identifier)) {
+                identifiers.add(identifier);
+                final JsonObject confirmation = new JsonObject();
+                confirmation.addProperty("identifier", identifier);
+                confirmation.addProperty("type", "confirm_subscription");
+                webSocket.send(confirmation.toString());
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            webSocket.close(1000, null);
+            closing.countDown();
+        }
+    }
+}
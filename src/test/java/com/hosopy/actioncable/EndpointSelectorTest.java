@@ -0,0 +1,96 @@
+package com.hosopy.actioncable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class EndpointSelectorTest {
+
+    @Test
+    public void selectInOrderWhenUnknown() throws URISyntaxException {
+        final Endpoint first = new Endpoint(new URI("ws://cable1.example.com"));
+        final Endpoint second = new Endpoint(new URI("ws://cable2.example.com"));
+        final EndpointSelector selector = new EndpointSelector(Arrays.asList(first, second), new Consumer.Options());
+
+        assertThat(selector.select(), is(sameInstance(first)));
+    }
+
+    @Test
+    public void selectLowestLatency() throws URISyntaxException {
+        final Endpoint first = new Endpoint(new URI("ws://cable1.example.com"));
+        final Endpoint second = new Endpoint(new URI("ws://cable2.example.com"));
+        final EndpointSelector selector = new EndpointSelector(Arrays.asList(first, second), new Consumer.Options());
+
+        first.recordSuccess(TimeUnit.MILLISECONDS.toNanos(200));
+        second.recordSuccess(TimeUnit.MILLISECONDS.toNanos(20));
+
+        assertThat(selector.select(), is(sameInstance(second)));
+    }
+
+    @Test
+    public void selectByWeight() throws URISyntaxException {
+        final Endpoint first = new Endpoint(new URI("ws://cable1.example.com"));
+        final Endpoint second = new Endpoint(new URI("ws://cable2.example.com"), 4);
+        final EndpointSelector selector = new EndpointSelector(Arrays.asList(first, second), new Consumer.Options());
+
+        first.recordSuccess(TimeUnit.MILLISECONDS.toNanos(20));
+        second.recordSuccess(TimeUnit.MILLISECONDS.toNanos(40));
+
+        assertThat(selector.select(), is(sameInstance(second)));
+    }
+
+    @Test
+    public void failOverAfterFailure() throws URISyntaxException {
+        final Endpoint first = new Endpoint(new URI("ws://cable1.example.com"));
+        final Endpoint second = new Endpoint(new URI("ws://cable2.example.com"));
+        final EndpointSelector selector = new EndpointSelector(Arrays.asList(first, second), new Consumer.Options());
+
+        selector.recordFailure(selector.select());
+
+        assertThat(selector.select(), is(sameInstance(second)));
+    }
+
+    @Test
+    public void skipEndpointWithOpenCircuit() throws URISyntaxException {
+        final Consumer.Options options = new Consumer.Options();
+        options.endpointFailureThreshold = 2;
+        final Endpoint first = new Endpoint(new URI("ws://cable1.example.com"));
+        final Endpoint second = new Endpoint(new URI("ws://cable2.example.com"));
+        final EndpointSelector selector = new EndpointSelector(Arrays.asList(first, second), options);
+
+        first.recordSuccess(TimeUnit.MILLISECONDS.toNanos(1));
+        second.recordSuccess(TimeUnit.MILLISECONDS.toNanos(100));
+
+        selector.recordFailure(first);
+        assertThat(first.isCircuitOpen(), is(false));
+        assertThat(selector.select(), is(sameInstance(first)));
+
+        selector.recordFailure(first);
+        assertThat(first.isCircuitOpen(), is(true));
+        assertThat(selector.select(), is(sameInstance(second)));
+    }
+
+    @Test
+    public void selectEarliestClosingCircuitWhenAllOpen() throws URISyntaxException {
+        final Consumer.Options options = new Consumer.Options();
+        options.endpointFailureThreshold = 1;
+        final Endpoint first = new Endpoint(new URI("ws://cable1.example.com"));
+        final Endpoint second = new Endpoint(new URI("ws://cable2.example.com"));
+        final EndpointSelector selector = new EndpointSelector(Arrays.asList(first, second), options);
+
+        selector.recordFailure(second);
+        selector.recordFailure(first);
+
+        assertThat(selector.select(), is(sameInstance(second)));
+    }
+}
@@ -0,0 +1,104 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.hosopy.actioncable.loopback.LoopbackServer;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pushes a million frames through {@link Consumer}, {@link Subscriptions} and the callbacks over
+ * {@link com.hosopy.actioncable.loopback.LoopbackTransport}, so that the numbers do not depend on the network stack.
+ * <p/>
+ * <p>Skipped unless run with {@code gradle test -Dbenchmark=true --tests '*LoopbackBenchmarkTest'}.</p>
+ */
+@RunWith(JUnit4.class)
+public class LoopbackBenchmarkTest {
+
+    private static final int MESSAGES = 1000000;
+
+    /**
+     * Frames in flight, bounds the memory held by the queues
+     */
+    private static final int WINDOW = 10000;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void throughput() throws InterruptedException {
+        for (int subscriptions : new int[]{1, 100}) {
+            for (int payloadSize : new int[]{64, 1024}) {
+                // Warm up once, then measure
+                run(subscriptions, payloadSize);
+                final long nanos = run(subscriptions, payloadSize);
+                System.out.println(String.format("subscriptions=%d payload=%dB messages=%d time=%dms throughput=%d msg/s",
+                        subscriptions, payloadSize, MESSAGES, TimeUnit.NANOSECONDS.toMillis(nanos),
+                        MESSAGES * TimeUnit.SECONDS.toNanos(1) / nanos));
+            }
+        }
+    }
+
+    private long run(int subscriptionCount, int payloadSize) throws InterruptedException {
+        final LoopbackServer server = new LoopbackServer(new LoopbackServer.Options());
+        final Consumer.Options options = new Consumer.Options();
+        options.transportFactory = server.getTransportFactory();
+        final Consumer consumer = ActionCable.createConsumer(URI.create("loopback://cable"), options);
+
+        final CountDownLatch confirmed = new CountDownLatch(subscriptionCount);
+        final AtomicLong received = new AtomicLong(0);
+        final List<String> identifiers = new ArrayList<String>();
+        for (int i = 0; i < subscriptionCount; i++) {
+            final Channel channel = new Channel("BenchmarkChannel");
+            channel.addParam("id", i);
+            final Subscription subscription = consumer.getSubscriptions().create(channel)
+                    .onConnected(new Subscription.ConnectedCallback() {
+                        @Override
+                        public void call() {
+                            confirmed.countDown();
+                        }
+                    })
+                    .onReceived(new Subscription.ReceivedCallback() {
+                        @Override
+                        public void call(JsonElement data) {
+                            received.incrementAndGet();
+                        }
+                    });
+            identifiers.add(subscription.getIdentifier());
+        }
+        consumer.connect();
+        assertTrue(confirmed.await(10, TimeUnit.SECONDS));
+
+        final JsonPrimitive payload = new JsonPrimitive(new String(new char[payloadSize]).replace('\0', 'x'));
+        final long startedAt = System.nanoTime();
+        for (int sent = 0; sent < MESSAGES; sent++) {
+            while (sent - received.get() >= WINDOW) {
+                Thread.yield();
+            }
+            server.broadcast(identifiers.get(sent % subscriptionCount), payload);
+        }
+        while (received.get() < MESSAGES) {
+            Thread.yield();
+        }
+        final long elapsed = System.nanoTime() - startedAt;
+
+        consumer.disconnect();
+        server.close();
+        return elapsed;
+    }
+}
@@ -12,10 +12,20 @@ public class MessageTest {
 
     @Test
     public void fromJson() {
-        final Message message = Message.fromJson(
+        final Message message = Codec.GSON.decode(
                 "{\"identifier\":\"{\\\"channel\\\":\\\"CommentsChannel\\\"}\",\"message\":{\"foo\":\"bar\"}}");
 
         assertThat(message.getIdentifier(), is("{\"channel\":\"CommentsChannel\"}"));
         assertThat(message.getMessage().toString(), is("{\"foo\":\"bar\"}"));
     }
+
+    @Test
+    public void fromJsonDisconnect() {
+        final Message message = Codec.GSON.decode(
+                "{\"type\":\"disconnect\",\"reason\":\"unauthorized\",\"reconnect\":false}");
+
+        assertThat(message.isDisconnect(), is(true));
+        assertThat(message.getReason(), is("unauthorized"));
+        assertThat(message.isReconnect(), is(false));
+    }
 }
@@ -0,0 +1,192 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.hosopy.actioncable.loopback.LoopbackServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class MetricsRecorderTest {
+
+    private static final int TIMEOUT = 10000;
+
+    LoopbackServer server;
+
+    Consumer consumer;
+
+    final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+    final AtomicLong framesIn = new AtomicLong(0);
+
+    final AtomicLong bytesIn = new AtomicLong(0);
+
+    final AtomicLong framesOut = new AtomicLong(0);
+
+    final AtomicLong bytesOut = new AtomicLong(0);
+
+    final AtomicLong parsed = new AtomicLong(0);
+
+    final AtomicLong queueDepths = new AtomicLong(0);
+
+    @Before
+    public void setUp() {
+        server = new LoopbackServer(new LoopbackServer.Options());
+
+        final Consumer.Options options = new Consumer.Options();
+        options.transportFactory = server.getTransportFactory();
+        options.reconnection = true;
+        options.reconnectionDelay = 0;
+        options.reconnectionDelayMax = 1;
+        options.reconnectionJitter = Connection.Options.Jitter.NONE;
+        options.metricsRecorder = new MetricsRecorder.Adapter() {
+            @Override
+            public void onFrameReceived(int length) {
+                framesIn.incrementAndGet();
+                bytesIn.addAndGet(length);
+            }
+
+            @Override
+            public void onFrameSent(int length) {
+                framesOut.incrementAndGet();
+                bytesOut.addAndGet(length);
+            }
+
+            @Override
+            public void onConnectionOpened(long nanos) {
+                events.offer("onConnectionOpened");
+            }
+
+            @Override
+            public void onConnectionClosed(int code) {
+                events.offer("onConnectionClosed:" + code);
+            }
+
+            @Override
+            public void onMessageParsed(long nanos) {
+                parsed.incrementAndGet();
+            }
+
+            @Override
+            public void onMessageDispatched(String identifier, long nanos) {
+                events.offer("onMessageDispatched:" + identifier);
+            }
+
+            @Override
+            public void onCallback(String identifier, long nanos) {
+                events.offer("onCallback:" + identifier);
+            }
+
+            @Override
+            public void onEventLoopQueueDepth(int depth) {
+                queueDepths.incrementAndGet();
+            }
+
+            @Override
+            public void onReconnect(int attempt, long delayMillis) {
+                events.offer("onReconnect:" + attempt);
+            }
+        };
+        consumer = ActionCable.createConsumer(URI.create("loopback://cable"), options);
+    }
+
+    @After
+    public void tearDown() {
+        consumer.disconnect();
+        server.close();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void recordFramesAndDispatch() throws InterruptedException {
+        final Subscription subscription = subscribe();
+        consumer.connect();
+
+        assertThat(events.take(), is("onConnectionOpened"));
+        assertThat(events.take(), is("onConnected"));
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("body", "hello");
+        subscription.perform("speak", data);
+
+        assertThat(events.take(), is("onReceived"));
+        assertThat(events.take(), is("onCallback:" + subscription.getIdentifier()));
+        assertThat(events.take(), is("onMessageDispatched:" + subscription.getIdentifier()));
+
+        // welcome, confirmation and the echo, maybe pings
+        assertThat(framesIn.get(), greaterThanOrEqualTo(3L));
+        assertThat(bytesIn.get(), greaterThan(framesIn.get()));
+        assertThat(parsed.get(), is(framesIn.get()));
+        assertThat(queueDepths.get(), is(framesIn.get()));
+        // subscribe twice (on open and on welcome) and the perform
+        assertThat(framesOut.get(), is(3L));
+        assertThat(bytesOut.get(), greaterThan(framesOut.get()));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void countTextFramesInUtf8Bytes() throws InterruptedException, UnsupportedEncodingException {
+        final Subscription subscription = subscribe();
+        consumer.connect();
+
+        assertThat(events.take(), is("onConnectionOpened"));
+        assertThat(events.take(), is("onConnected"));
+        while (framesOut.get() != 2) {
+            Thread.sleep(10);
+        }
+        final long sentBefore = bytesOut.get();
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("body", "caf\u00e9 \u3053\u3093\u306b\u3061\u306f");
+        subscription.perform("speak", data);
+
+        assertThat(events.take(), is("onReceived"));
+        final String command = Codec.GSON.encode(Command.message(subscription.getIdentifier(), data));
+        assertThat(bytesOut.get() - sentBefore, is((long) command.getBytes("UTF-8").length));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void recordCloseAndReconnect() throws InterruptedException {
+        subscribe();
+        consumer.connect();
+
+        assertThat(events.take(), is("onConnectionOpened"));
+        assertThat(events.take(), is("onConnected"));
+
+        server.disconnectAll(1012, "service restart");
+
+        assertThat(events.take(), is("onConnectionClosed:1012"));
+        assertThat(events.take(), is("onReconnect:1"));
+        assertThat(events.take(), is("onConnectionOpened"));
+        assertThat(events.take(), is("onConnected"));
+    }
+
+    private Subscription subscribe() {
+        return consumer.getSubscriptions().create(new Channel("ChatChannel"))
+                .onConnected(new Subscription.ConnectedCallback() {
+                    @Override
+                    public void call() {
+                        events.offer("onConnected");
+                    }
+                })
+                .onReceived(new Subscription.ReceivedCallback() {
+                    @Override
+                    public void call(JsonElement data) {
+                        events.offer("onReceived");
+                    }
+                });
+    }
+}
@@ -0,0 +1,183 @@
+package com.hosopy.actioncable;
+
+import com.hosopy.actioncable.transport.FragmentedText;
+import com.hosopy.actioncable.transport.NettyTransport;
+import com.hosopy.actioncable.transport.Transport;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Holds many {@link NettyTransport} connections against a local Netty server on a couple of event loops.
+ * <p/>
+ * <p>Skipped unless run with {@code gradle test -Dbenchmark=true --tests '*NettySoakTest'}.
+ * Both ends live in the same process, so the open file limit must exceed twice the number of connections.</p>
+ */
+@RunWith(JUnit4.class)
+public class NettySoakTest {
+
+    private static final int CONNECTIONS = 10000;
+
+    private static final int CLIENT_THREADS = 2;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void holdTenThousandConnections() throws InterruptedException {
+        final EventLoopGroup serverGroup = new NioEventLoopGroup(2);
+        final ChannelGroup serverChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+        final NettyTransport.Factory factory = new NettyTransport.Factory(new Connection.Options(), CLIENT_THREADS);
+        try {
+            final Channel server = new ServerBootstrap()
+                    .group(serverGroup)
+                    .channel(NioServerSocketChannel.class)
+                    .option(ChannelOption.SO_BACKLOG, 4096)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(8192),
+                                    new WebSocketServerProtocolHandler("/cable"),
+                                    new SimpleChannelInboundHandler<TextWebSocketFrame>() {
+                                        @Override
+                                        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                                            if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
+                                                serverChannels.add(ctx.channel());
+                                                ctx.writeAndFlush(new TextWebSocketFrame("{\"type\":\"welcome\"}"));
+                                            }
+                                        }
+
+                                        @Override
+                                        protected void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame frame) {
+                                        }
+                                    });
+                        }
+                    })
+                    .bind("127.0.0.1", 0).sync().channel();
+            final URI uri = URI.create("ws://127.0.0.1:" + ((InetSocketAddress) server.localAddress()).getPort() + "/cable");
+
+            final CountDownLatch welcomed = new CountDownLatch(CONNECTIONS);
+            final CountDownLatch broadcasted = new CountDownLatch(CONNECTIONS);
+            final CountDownLatch closed = new CountDownLatch(CONNECTIONS);
+            final AtomicInteger failures = new AtomicInteger();
+            final Transport.Listener listener = new Transport.Listener() {
+                @Override
+                public void onOpen(Transport transport) {
+                }
+
+                @Override
+                public void onMessage(Transport transport, String text) {
+                    if (text.contains("welcome")) {
+                        welcomed.countDown();
+                    } else {
+                        broadcasted.countDown();
+                    }
+                }
+
+                @Override
+                public void onMessage(Transport transport, FragmentedText text) {
+                }
+
+                @Override
+                public void onMessage(Transport transport, ByteBuffer bytes) {
+                }
+
+                @Override
+                public void onClosing(Transport transport, int code, String reason) {
+                }
+
+                @Override
+                public void onClosed(Transport transport, int code, String reason) {
+                    closed.countDown();
+                }
+
+                @Override
+                public void onFailure(Transport transport, Throwable t, int statusCode) {
+                    failures.incrementAndGet();
+                    welcomed.countDown();
+                    broadcasted.countDown();
+                    closed.countDown();
+                }
+            };
+
+            final long heapBefore = usedHeap();
+            final long startedAt = System.nanoTime();
+            final List<Transport> transports = new ArrayList<Transport>(CONNECTIONS);
+            for (int i = 0; i < CONNECTIONS; i++) {
+                transports.add(factory.open(uri, null, listener));
+                if (i % 500 == 499) {
+                    // Stay within the accept backlog
+                    Thread.sleep(50);
+                }
+            }
+            assertTrue(welcomed.await(120, TimeUnit.SECONDS));
+            final long connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            final long heapPerConnection = (usedHeap() - heapBefore) / CONNECTIONS;
+
+            final long broadcastAt = System.nanoTime();
+            serverChannels.writeAndFlush(new TextWebSocketFrame("{\"identifier\":\"{}\",\"message\":{}}"));
+            assertTrue(broadcasted.await(60, TimeUnit.SECONDS));
+            final long broadcastMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - broadcastAt);
+
+            System.out.println(String.format("connections=%d native=%s threads=%d connect=%dms broadcast=%dms heap=%dB/connection (both ends) failures=%d",
+                    CONNECTIONS, NettyTransport.Factory.isNative(), CLIENT_THREADS, connectMillis, broadcastMillis,
+                    heapPerConnection, failures.get()));
+
+            for (Transport transport : transports) {
+                transport.close(1000, null);
+            }
+            assertTrue(closed.await(60, TimeUnit.SECONDS));
+            assertThat(failures.get(), is(0));
+
+            server.close().sync();
+        } finally {
+            factory.shutdown();
+            serverGroup.shutdownGracefully();
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,177 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.hosopy.actioncable.loopback.LoopbackServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.net.URI;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class SlowCallbackTest {
+
+    private static final int TIMEOUT = 10000;
+
+    LoopbackServer server;
+
+    Consumer consumer;
+
+    final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+    final BlockingQueue<SlowCallback> slowCallbacks = new LinkedBlockingQueue<SlowCallback>();
+
+    @Before
+    public void setUp() {
+        server = new LoopbackServer(new LoopbackServer.Options());
+    }
+
+    @After
+    public void tearDown() {
+        consumer.disconnect();
+        server.close();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void reportSlowCallbackWithStackSample() throws InterruptedException {
+        createConsumer(false);
+        final Subscription subscription = subscribe(new Channel("SlowChannel"));
+        consumer.connect();
+        assertThat(events.take(), is("onConnected"));
+
+        server.broadcast(subscription.getIdentifier(), new JsonPrimitive(200));
+
+        // Reported while still running
+        final SlowCallback slowCallback = slowCallbacks.take();
+        assertThat(events.isEmpty(), is(true));
+        assertThat(slowCallback.getIdentifier(), is(subscription.getIdentifier()));
+        assertThat(slowCallback.getDuration(TimeUnit.MILLISECONDS), greaterThanOrEqualTo(50L));
+        assertThat(slowCallback.isIsolated(), is(false));
+        assertThat(containsSleep(slowCallback.getStackTrace()), is(true));
+        assertThat(events.take(), startsWith("onReceived:200:EventLoop"));
+
+        // Fast callbacks are not reported
+        server.broadcast(subscription.getIdentifier(), new JsonPrimitive(0));
+        assertThat(events.take(), startsWith("onReceived:0:EventLoop"));
+        assertThat(slowCallbacks.poll(100, TimeUnit.MILLISECONDS) == null, is(true));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void reportHungCallbackBeforeItReturns() throws InterruptedException {
+        createConsumer(false);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Subscription subscription = consumer.getSubscriptions().create(new Channel("HungChannel"))
+                .onConnected(new Subscription.ConnectedCallback() {
+                    @Override
+                    public void call() {
+                        events.offer("onConnected");
+                    }
+                })
+                .onReceived(new Subscription.ReceivedCallback() {
+                    @Override
+                    public void call(JsonElement data) {
+                        try {
+                            release.await();
+                        } catch (InterruptedException ignored) {
+                        }
+                        events.offer("onReceived:" + data);
+                    }
+                });
+        consumer.connect();
+        assertThat(events.take(), is("onConnected"));
+
+        server.broadcast(subscription.getIdentifier(), new JsonPrimitive(1));
+        final SlowCallback slowCallback = slowCallbacks.take();
+        assertThat(slowCallback.getIdentifier(), is(subscription.getIdentifier()));
+        assertThat(containsMethod(slowCallback.getStackTrace(), CountDownLatch.class, "await"), is(true));
+        assertThat(events.isEmpty(), is(true));
+
+        // Reported once, however long it hangs
+        assertThat(slowCallbacks.poll(200, TimeUnit.MILLISECONDS) == null, is(true));
+        release.countDown();
+        assertThat(events.take(), is("onReceived:1"));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void isolateSlowSubscription() throws InterruptedException {
+        createConsumer(true);
+        final Subscription slow = subscribe(new Channel("SlowChannel"));
+        final Subscription fast = subscribe(new Channel("FastChannel"));
+        consumer.connect();
+        assertThat(events.take(), is("onConnected"));
+        assertThat(events.take(), is("onConnected"));
+
+        server.broadcast(slow.getIdentifier(), new JsonPrimitive(200));
+        assertThat(events.take(), startsWith("onReceived:200:EventLoop"));
+        assertThat(slowCallbacks.take().isIsolated(), is(true));
+
+        // From now on the slow subscription no longer blocks the others
+        server.broadcast(slow.getIdentifier(), new JsonPrimitive(500));
+        server.broadcast(fast.getIdentifier(), new JsonPrimitive(0));
+        assertThat(events.take(), startsWith("onReceived:0:EventLoop"));
+        assertThat(events.take(), startsWith("onReceived:500:ActionCable-Isolated-"));
+        assertThat(slowCallbacks.isEmpty(), is(true));
+    }
+
+    private void createConsumer(boolean isolate) {
+        final Consumer.Options options = new Consumer.Options();
+        options.transportFactory = server.getTransportFactory();
+        options.callbackBudget = 50L;
+        options.callbackBudgetTimeUnit = TimeUnit.MILLISECONDS;
+        options.isolateSlowCallbacks = isolate;
+        consumer = ActionCable.createConsumer(URI.create("loopback://cable"), options);
+        consumer.onSlowCallback(new Consumer.SlowCallbackCallback() {
+            @Override
+            public void call(SlowCallback slowCallback) {
+                slowCallbacks.offer(slowCallback);
+            }
+        });
+    }
+
+    private Subscription subscribe(Channel channel) {
+        return consumer.getSubscriptions().create(channel)
+                .onConnected(new Subscription.ConnectedCallback() {
+                    @Override
+                    public void call() {
+                        events.offer("onConnected");
+                    }
+                })
+                .onReceived(new Subscription.ReceivedCallback() {
+                    @Override
+                    public void call(JsonElement data) {
+                        try {
+                            // Takes as many milliseconds as received
+                            Thread.sleep(data.getAsLong());
+                        } catch (InterruptedException ignored) {
+                        }
+                        events.offer("onReceived:" + data + ":" + Thread.currentThread().getName());
+                    }
+                });
+    }
+
+    private static boolean containsSleep(StackTraceElement[] stackTrace) {
+        return containsMethod(stackTrace, Thread.class, "sleep");
+    }
+
+    private static boolean containsMethod(StackTraceElement[] stackTrace, Class<?> clazz, String method) {
+        for (StackTraceElement element : stackTrace) {
+            if (element.getClassName().equals(clazz.getName()) && element.getMethodName().startsWith(method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -51,7 +51,7 @@ public class SubscriptionsTest {
         final Subscription subscription = subscriptions.create(new Channel("CommentsChannel"));
 
         // Callback test
-        assertThat(events.take(), is("onMessage:" + Command.subscribe(subscription.getIdentifier()).toJson()));
+        assertThat(events.take(), is("onMessage:" + Codec.GSON.encode(Command.subscribe(subscription.getIdentifier()))));
 
         mockWebServer.shutdown();
     }
@@ -79,7 +79,7 @@ public class SubscriptionsTest {
         consumer.connect();
 
         // Callback test
-        assertThat(events.take(), is("onMessage:" + Command.subscribe(subscription.getIdentifier()).toJson()));
+        assertThat(events.take(), is("onMessage:" + Codec.GSON.encode(Command.subscribe(subscription.getIdentifier()))));
 
         mockWebServer.shutdown();
     }
@@ -125,7 +125,7 @@ public class SubscriptionsTest {
         assertThat(subscriptions.contains(subscription1), is(false));
         assertThat(subscriptions.contains(subscription2), is(true));
 
-        assertThat(events.take(), is("onMessage:" + Command.unsubscribe(subscription1.getIdentifier()).toJson()));
+        assertThat(events.take(), is("onMessage:" + Codec.GSON.encode(Command.unsubscribe(subscription1.getIdentifier()))));
 
         mockWebServer.shutdown();
     }
@@ -161,7 +161,7 @@ public class SubscriptionsTest {
         assertThat(subscriptions.contains(subscription1), is(false));
         assertThat(subscriptions.contains(subscription2), is(true));
 
-        assertThat(events.take(), is("onMessage:" + Command.unsubscribe(subscription1.getIdentifier()).toJson()));
+        assertThat(events.take(), is("onMessage:" + Codec.GSON.encode(Command.unsubscribe(subscription1.getIdentifier()))));
 
         mockWebServer.shutdown();
     }
@@ -371,6 +371,42 @@ public class SubscriptionsTest {
         assertThat(events.take(), anyOf(is("failed_1:" + e.getMessage()), is("failed_2:" + e.getMessage())));
     }
 
+    @Test(timeout = TIMEOUT)
+    public void notifyFailedWhenConfirmationTimedOut() throws IOException, InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        final MockWebServer mockWebServer = new MockWebServer();
+        final MockResponse response = new MockResponse();
+        response.withWebSocketUpgrade(new DefaultWebSocketListener() {
+            @Override
+            public void onMessage(WebSocket webSocket, String text) {
+                // Never confirm
+                events.offer("onMessage");
+            }
+        });
+        mockWebServer.enqueue(response);
+        mockWebServer.start();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.subscriptionTimeout = 200L;
+        options.subscriptionTimeUnit = TimeUnit.MILLISECONDS;
+
+        final Consumer consumer = new Consumer(mockWebServer.url("/").uri(), options);
+        final Subscription subscription = consumer.getSubscriptions().create(new Channel("CommentsChannel"));
+        subscription.onFailed(new Subscription.FailedCallback() {
+            @Override
+            public void call(ActionCableException e) {
+                events.offer("failed:" + e.getCause().getClass().getSimpleName());
+            }
+        });
+        consumer.connect();
+
+        assertThat(events.take(), is("onMessage"));
+        assertThat(events.take(), is("failed:TimeoutException"));
+
+        mockWebServer.shutdown();
+    }
+
     private class DefaultWebSocketListener extends WebSocketListener {
     }
 }
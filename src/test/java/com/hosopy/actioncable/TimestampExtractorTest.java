@@ -0,0 +1,47 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class TimestampExtractorTest {
+
+    @Test
+    public void extractSecondsAndMilliseconds() {
+        final TimestampExtractor extractor = new TimestampExtractor.JsonPointer("/sent_at");
+        assertThat(extractor.extract(json("{\"sent_at\":1700000000.25}")), is(1700000000250L));
+        assertThat(extractor.extract(json("{\"sent_at\":1700000000}")), is(1700000000000L));
+        assertThat(extractor.extract(json("{\"sent_at\":1700000000123}")), is(1700000000123L));
+    }
+
+    @Test
+    public void followPointer() {
+        final JsonElement data = json("{\"meta\":{\"a/b\":[0,{\"m~n\":1700000000}]}}");
+        assertThat(new TimestampExtractor.JsonPointer("/meta/a~1b/1/m~0n").extract(data), is(1700000000000L));
+    }
+
+    @Test
+    public void returnMinusOneWithoutTimestamp() {
+        final TimestampExtractor extractor = new TimestampExtractor.JsonPointer("/meta/sent_at");
+        assertThat(extractor.extract(json("{\"meta\":{}}")), is(-1L));
+        assertThat(extractor.extract(json("{\"meta\":{\"sent_at\":\"yesterday\"}}")), is(-1L));
+        assertThat(extractor.extract(json("{\"meta\":1}")), is(-1L));
+        assertThat(extractor.extract(json("\"hello\"")), is(-1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidPointer() {
+        new TimestampExtractor.JsonPointer("sent_at");
+    }
+
+    private static JsonElement json(String json) {
+        return new JsonParser().parse(json);
+    }
+}
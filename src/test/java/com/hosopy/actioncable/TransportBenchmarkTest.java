@@ -0,0 +1,108 @@
+package com.hosopy.actioncable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hosopy.actioncable.transport.JdkWebSocketTransport;
+import com.hosopy.actioncable.transport.OkHttpTransport;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link OkHttpTransport} with {@link JdkWebSocketTransport} end to end, from the socket to the callbacks.
+ * <p/>
+ * <p>Skipped unless run with {@code gradle test -Dbenchmark=true --tests '*TransportBenchmarkTest'}.</p>
+ */
+@RunWith(JUnit4.class)
+public class TransportBenchmarkTest {
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+    }
+
+    @Test
+    public void smallFrames() throws IOException, InterruptedException {
+        compare(50000, 200);
+    }
+
+    @Test
+    public void largeFrames() throws IOException, InterruptedException {
+        compare(200, 64 * 1024);
+    }
+
+    private void compare(int messages, int payloadSize) throws IOException, InterruptedException {
+        for (String name : new String[]{"okhttp", "jdk"}) {
+            // Warm up once, then measure
+            run(name, messages, payloadSize);
+            final long nanos = run(name, messages, payloadSize);
+            System.out.println(String.format("transport=%s messages=%d payload=%dB time=%dms throughput=%d msg/s",
+                    name, messages, payloadSize, TimeUnit.NANOSECONDS.toMillis(nanos),
+                    messages * TimeUnit.SECONDS.toNanos(1) / nanos));
+        }
+    }
+
+    private long run(String transport, final int messages, int payloadSize) throws IOException, InterruptedException {
+        final String payload = new String(new char[payloadSize]).replace('\0', 'x');
+
+        final MockWebServer mockWebServer = new MockWebServer();
+        mockWebServer.enqueue(new MockResponse().withWebSocketUpgrade(new WebSocketListener() {
+            @Override
+            public void onMessage(WebSocket webSocket, String text) {
+                final String identifier = new JsonParser().parse(text).getAsJsonObject().get("identifier").getAsString();
+                final JsonObject message = new JsonObject();
+                message.addProperty("identifier", identifier);
+                message.addProperty("message", payload);
+                final String broadcast = message.toString();
+                for (int i = 0; i < messages; i++) {
+                    webSocket.send(broadcast);
+                }
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                webSocket.close(1000, null);
+            }
+        }));
+        mockWebServer.start();
+
+        final Consumer.Options options = new Consumer.Options();
+        options.transportFactory = "jdk".equals(transport)
+                ? new JdkWebSocketTransport.Factory(options)
+                : new OkHttpTransport.Factory(options);
+        final Consumer consumer = new Consumer(mockWebServer.url("/").uri(), options);
+
+        final CountDownLatch received = new CountDownLatch(messages);
+        consumer.getSubscriptions().create(new Channel("BenchmarkChannel")).onReceived(new Subscription.ReceivedCallback() {
+            @Override
+            public void call(JsonElement data) {
+                received.countDown();
+            }
+        });
+
+        final long startedAt = System.nanoTime();
+        consumer.connect();
+        assertTrue(received.await(60, TimeUnit.SECONDS));
+        final long elapsed = System.nanoTime() - startedAt;
+
+        consumer.disconnect();
+        Thread.sleep(500);
+        mockWebServer.shutdown();
+        return elapsed;
+    }
+}
@@ -0,0 +1,124 @@
+package com.hosopy.actioncable.jfr;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.hosopy.actioncable.ActionCable;
+import com.hosopy.actioncable.Channel;
+import com.hosopy.actioncable.Consumer;
+import com.hosopy.actioncable.Subscription;
+import com.hosopy.actioncable.loopback.LoopbackServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class JfrEventsTest {
+
+    private static final int TIMEOUT = 10000;
+
+    LoopbackServer server;
+
+    Consumer consumer;
+
+    Recording recording;
+
+    @Before
+    public void setUp() {
+        server = new LoopbackServer(new LoopbackServer.Options());
+
+        final Consumer.Options options = new Consumer.Options();
+        options.transportFactory = server.getTransportFactory();
+        options.reconnection = true;
+        options.reconnectionDelay = 0;
+        options.reconnectionDelayMax = 1;
+        consumer = ActionCable.createConsumer(URI.create("loopback://cable"), options);
+
+        recording = new Recording();
+        recording.enable(FrameReceivedEvent.class);
+        recording.enable(FrameSentEvent.class);
+        recording.enable(ReconnectEvent.class);
+        recording.enable(CallbackEvent.class).withThreshold(Duration.ZERO);
+        recording.enable(EventLoopWaitEvent.class).withThreshold(Duration.ZERO);
+    }
+
+    @After
+    public void tearDown() {
+        consumer.disconnect();
+        server.close();
+        recording.close();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void recordEvents() throws InterruptedException, IOException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        final Subscription subscription = consumer.getSubscriptions().create(new Channel("ChatChannel"))
+                .onConnected(new Subscription.ConnectedCallback() {
+                    @Override
+                    public void call() {
+                        events.offer("onConnected");
+                    }
+                })
+                .onReceived(new Subscription.ReceivedCallback() {
+                    @Override
+                    public void call(JsonElement data) {
+                        events.offer("onReceived");
+                    }
+                });
+
+        recording.start();
+        consumer.connect();
+        assertThat(events.take(), is("onConnected"));
+
+        subscription.perform("speak", new JsonObject());
+        assertThat(events.take(), is("onReceived"));
+
+        server.disconnectAll(1012, "service restart");
+        assertThat(events.take(), is("onConnected"));
+        recording.stop();
+
+        final File file = File.createTempFile("actioncable", ".jfr");
+        try {
+            recording.dump(file.toPath());
+            final Map<String, Integer> counts = new HashMap<String, Integer>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                final String name = event.getEventType().getName();
+                counts.put(name, counts.containsKey(name) ? counts.get(name) + 1 : 1);
+                if (name.equals("com.hosopy.actioncable.Callback")) {
+                    assertThat(event.getString("identifier"), is(subscription.getIdentifier()));
+                } else if (name.equals("com.hosopy.actioncable.Reconnect")) {
+                    assertThat(event.getInt("attempt"), is(1));
+                    assertThat(event.getInt("closeCode"), is(1012));
+                }
+            }
+
+            // welcome, confirmation and the echo on each connection, maybe pings
+            assertThat(counts.get("com.hosopy.actioncable.FrameReceived"), greaterThanOrEqualTo(5));
+            assertThat(counts.get("com.hosopy.actioncable.FrameSent"), greaterThanOrEqualTo(5));
+            assertThat(counts.get("com.hosopy.actioncable.Callback"), is(1));
+            assertThat(counts.get("com.hosopy.actioncable.Reconnect"), is(1));
+            assertThat(counts.get("com.hosopy.actioncable.EventLoopWait"), greaterThanOrEqualTo(1));
+        } finally {
+            file.delete();
+        }
+    }
+}
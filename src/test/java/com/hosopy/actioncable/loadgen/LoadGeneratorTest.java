@@ -0,0 +1,79 @@
+package com.hosopy.actioncable.loadgen;
+
+import com.hosopy.actioncable.loopback.LoopbackServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class LoadGeneratorTest {
+
+    private static final int TIMEOUT = 10000;
+
+    LoopbackServer server;
+
+    @Before
+    public void setUp() {
+        server = new LoopbackServer(new LoopbackServer.Options());
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void connectSubscribeAndPerform() throws InterruptedException {
+        final LoadGenerator.Options options = new LoadGenerator.Options();
+        options.uri = URI.create("loopback://cable");
+        options.clients = 20;
+        options.subscriptions = 2;
+        options.performRate = 20;
+        options.rampUp = 200;
+        options.duration = 500;
+        options.timeUnit = TimeUnit.MILLISECONDS;
+        options.transportFactory = server.getTransportFactory();
+
+        final Report report = new LoadGenerator(options).run();
+
+        assertThat(report.getClients(), is(20));
+        assertThat(report.getConnectTimes().getCount(), is(20L));
+        assertThat(report.getConfirmTimes().getCount(), is(20L));
+        assertThat(report.getFailures(), is(0L));
+        assertThat(report.getPerformed(), greaterThan(0L));
+        assertThat(report.getRtts().getCount(), greaterThan(0L));
+        assertThat(report.getReceived(), is(report.getRtts().getCount()));
+    }
+
+    @Test
+    public void parse() {
+        final LoadGenerator.Options options = LoadGenerator.parse(new String[]{
+                "ws://localhost:3000/cable", "--clients=1000", "--ramp-up=30", "--subscriptions=3",
+                "--channel=ChatChannel", "--perform-rate=0.5", "--transport=jdk", "--header=Authorization: Bearer x"
+        });
+
+        assertThat(options.uri, is(URI.create("ws://localhost:3000/cable")));
+        assertThat(options.clients, is(1000));
+        assertThat(options.rampUp, is(30L));
+        assertThat(options.subscriptions, is(3));
+        assertThat(options.channel, is("ChatChannel"));
+        assertThat(options.performRate, is(0.5));
+        assertThat(options.transport, is("jdk"));
+        assertThat(options.headers.get("Authorization"), is("Bearer x"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseUnknownOption() {
+        LoadGenerator.parse(new String[]{"ws://localhost:3000/cable", "--unknown=1"});
+    }
+}
@@ -0,0 +1,178 @@
+package com.hosopy.actioncable.loopback;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.hosopy.actioncable.ActionCable;
+import com.hosopy.actioncable.Channel;
+import com.hosopy.actioncable.Consumer;
+import com.hosopy.actioncable.MetricsRecorder;
+import com.hosopy.actioncable.Subscription;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.net.URI;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class LoopbackServerTest {
+
+    private static final int TIMEOUT = 10000;
+
+    LoopbackServer server;
+
+    Consumer consumer;
+
+    @Before
+    public void setUp() {
+        final LoopbackServer.Options serverOptions = new LoopbackServer.Options();
+        serverOptions.pingInterval = 100;
+        serverOptions.pingTimeUnit = TimeUnit.MILLISECONDS;
+        serverOptions.rejectedChannels.add("SecretChannel");
+        server = new LoopbackServer(serverOptions);
+
+        final Consumer.Options options = new Consumer.Options();
+        options.transportFactory = server.getTransportFactory();
+        options.reconnection = true;
+        options.reconnectionDelay = 0;
+        options.reconnectionDelayMax = 1;
+        consumer = ActionCable.createConsumer(URI.create("loopback://cable"), options);
+    }
+
+    @After
+    public void tearDown() {
+        consumer.disconnect();
+        server.close();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void confirmAndEchoPerform() throws InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        final Subscription subscription = subscribe(new Channel("ChatChannel"), events);
+        consumer.connect();
+
+        assertThat(events.take(), is("onConnected"));
+
+        final JsonObject data = new JsonObject();
+        data.addProperty("body", "hello");
+        subscription.perform("speak", data);
+
+        assertThat(events.take(), is("onReceived:{\"body\":\"hello\",\"action\":\"speak\"}"));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void rejectSubscription() throws InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        final Subscription subscription = subscribe(new Channel("SecretChannel"), events);
+        consumer.connect();
+
+        assertThat(events.take(), is("onRejected"));
+        assertThat(server.getSubscriberCount(subscription.getIdentifier()), is(0));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void broadcastAtRate() throws InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        final Subscription subscription = subscribe(new Channel("ChatChannel"), events);
+        consumer.connect();
+
+        assertThat(events.take(), is("onConnected"));
+
+        final LoopbackServer.Broadcast broadcast = server.startBroadcast(subscription.getIdentifier(), 1000, 64);
+        for (int seq = 0; seq < 100; seq++) {
+            final String event = events.take();
+            assertThat(event.startsWith("onReceived:{\"seq\":" + seq + ","), is(true));
+        }
+        broadcast.stop();
+        assertThat(broadcast.getSent(), greaterThanOrEqualTo(100L));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void reconnectAfterServerRestart() throws InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        final Subscription subscription = subscribe(new Channel("ChatChannel"), events);
+        consumer.connect();
+
+        assertThat(events.take(), is("onConnected"));
+
+        server.disconnectAll(1012, "service restart");
+
+        assertThat(events.take(), is("onDisconnected"));
+        assertThat(events.take(), is("onConnected"));
+        assertThat(server.getSubscriberCount(subscription.getIdentifier()), is(1));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void closeWhileClientsAreConnected() throws InterruptedException {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        final Consumer.Options options = new Consumer.Options();
+        options.transportFactory = server.getTransportFactory();
+        options.metricsRecorder = new MetricsRecorder.Adapter() {
+            @Override
+            public void onConnectionOpened(long nanos) {
+                events.offer("onConnectionOpened");
+            }
+
+            @Override
+            public void onConnectionClosed(int code) {
+                events.offer("onConnectionClosed:" + code);
+            }
+
+            @Override
+            public void onConnectionFailed(int statusCode) {
+                events.offer("onConnectionFailed:" + statusCode);
+            }
+        };
+        final Consumer first = ActionCable.createConsumer(URI.create("loopback://cable"), options);
+        final Consumer second = ActionCable.createConsumer(URI.create("loopback://cable"), options);
+        first.connect();
+        second.connect();
+
+        assertThat(events.take(), is("onConnectionOpened"));
+        assertThat(events.take(), is("onConnectionOpened"));
+
+        server.close();
+
+        // The clients complete the closing handshake before the threads are released
+        assertThat(events.take(), is("onConnectionClosed:1001"));
+        assertThat(events.take(), is("onConnectionClosed:1001"));
+        assertThat(server.getExecutor().awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+    }
+
+    private Subscription subscribe(Channel channel, final BlockingQueue<String> events) {
+        return consumer.getSubscriptions().create(channel)
+                .onConnected(new Subscription.ConnectedCallback() {
+                    @Override
+                    public void call() {
+                        events.offer("onConnected");
+                    }
+                })
+                .onDisconnected(new Subscription.DisconnectedCallback() {
+                    @Override
+                    public void call() {
+                        events.offer("onDisconnected");
+                    }
+                })
+                .onRejected(new Subscription.RejectedCallback() {
+                    @Override
+                    public void call() {
+                        events.offer("onRejected");
+                    }
+                })
+                .onReceived(new Subscription.ReceivedCallback() {
+                    @Override
+                    public void call(JsonElement data) {
+                        events.offer("onReceived:" + data.toString());
+                    }
+                });
+    }
+}
@@ -0,0 +1,40 @@
+package com.hosopy.actioncable.transport;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class FragmentedTextTest {
+
+    @Test
+    public void readAcrossParts() {
+        final FragmentedText text = new FragmentedText(Arrays.asList("hel", "", "lo, w", "orld"));
+        assertThat(text.length(), is(12));
+        assertThat(text.toString(), is("hello, world"));
+
+        final StringBuilder builder = new StringBuilder();
+        final char[] buffer = new char[5];
+        int read;
+        while ((read = text.read(buffer, 0, buffer.length)) != -1) {
+            assertThat(read > 0, is(true));
+            builder.append(buffer, 0, read);
+        }
+        assertThat(builder.toString(), is("hello, world"));
+        assertThat(text.read(buffer, 0, buffer.length), is(-1));
+        // Whatever has been read
+        assertThat(text.toString(), is("hello, world"));
+    }
+
+    @Test
+    public void encodedLength() {
+        final FragmentedText text = new FragmentedText(Arrays.asList("caf", "\u00e9", "\u3053\u3093"));
+        assertThat(text.length(), is(6));
+        assertThat(text.encodedLength(), is(11));
+    }
+}
@@ -0,0 +1,207 @@
+package com.hosopy.actioncable.transport;
+
+import com.hosopy.actioncable.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class JdkWebSocketTransportTest {
+
+    private static final int TIMEOUT = 10000;
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() {
+        mockWebServer = new MockWebServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer.shutdown();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void sendAndReceive() throws IOException, InterruptedException {
+        final BlockingQueue<String> serverEvents = new LinkedBlockingQueue<String>();
+        mockWebServer.enqueue(new MockResponse().withWebSocketUpgrade(new WebSocketListener() {
+            @Override
+            public void onMessage(WebSocket webSocket, String text) {
+                // Large enough to arrive in several parts
+                webSocket.send(text + new String(new char[100000]).replace('\0', 'x'));
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                webSocket.close(1000, null);
+                serverEvents.offer("onClosing:" + code);
+            }
+        }));
+        mockWebServer.start();
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        final Transport transport = new JdkWebSocketTransport.Factory(new Consumer.Options()).open(
+                mockWebServer.url("/").uri(), Collections.singletonMap("X-Foo", "bar"), new QueueListener(events));
+
+        assertThat(events.take(), is("onOpen"));
+        final RecordedRequest request = mockWebServer.takeRequest();
+        assertThat(request.getHeader("X-Foo"), is("bar"));
+
+        assertThat(transport.send("hello"), is(true));
+        final String message = events.take();
+        // Passed on in parts
+        assertThat(message.startsWith("onFragmentedMessage:hello"), is(true));
+        assertThat(message.length(), is("onFragmentedMessage:hello".length() + 100000));
+
+        assertThat(transport.close(1000, "bye"), is(true));
+        assertThat(serverEvents.take(), is("onClosing:1000"));
+        assertThat(events.take(), is("onClosing:1000"));
+        assertThat(events.take(), is("onClosed:1000"));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void closedByServer() throws IOException, InterruptedException {
+        mockWebServer.enqueue(new MockResponse().withWebSocketUpgrade(new WebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                webSocket.close(4001, "drain");
+            }
+        }));
+        mockWebServer.start();
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        new JdkWebSocketTransport.Factory(new Consumer.Options()).open(
+                mockWebServer.url("/").uri(), null, new QueueListener(events));
+
+        assertThat(events.take(), is("onOpen"));
+        assertThat(events.take(), is("onClosing:4001"));
+        assertThat(events.take(), is("onClosed:4001"));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void reportHandshakeStatus() throws IOException, InterruptedException {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(401));
+        mockWebServer.start();
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        new JdkWebSocketTransport.Factory(new Consumer.Options()).open(
+                mockWebServer.url("/").uri(), null, new QueueListener(events));
+
+        assertThat(events.take(), is("onFailure:401"));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void slowConsumerStopsReading() throws IOException, InterruptedException {
+        mockWebServer.enqueue(new MockResponse().withWebSocketUpgrade(new WebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                webSocket.send("1");
+                webSocket.send("2");
+                webSocket.send("3");
+            }
+        }));
+        mockWebServer.start();
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        final Transport transport = new JdkWebSocketTransport.Factory(new Consumer.Options()).open(
+                mockWebServer.url("/").uri(), null, new QueueListener(events, false));
+
+        assertThat(events.take(), is("onOpen"));
+        assertThat(events.take(), is("onMessage:1"));
+
+        // Nothing more is read until the frame has been processed
+        assertThat(events.poll(300, TimeUnit.MILLISECONDS) == null, is(true));
+
+        ((Transport.FlowControlled) transport).request();
+        assertThat(events.take(), is("onMessage:2"));
+        assertThat(events.poll(300, TimeUnit.MILLISECONDS) == null, is(true));
+
+        ((Transport.FlowControlled) transport).request();
+        assertThat(events.take(), is("onMessage:3"));
+        transport.cancel();
+    }
+
+    private static class QueueListener implements Transport.Listener {
+        private final BlockingQueue<String> events;
+
+        private final boolean requestNext;
+
+        QueueListener(BlockingQueue<String> events) {
+            this(events, true);
+        }
+
+        /**
+         * @param requestNext Whether to request the next frame right away, as a fast consumer would
+         */
+        QueueListener(BlockingQueue<String> events, boolean requestNext) {
+            this.events = events;
+            this.requestNext = requestNext;
+        }
+
+        @Override
+        public void onOpen(Transport transport) {
+            events.offer("onOpen");
+        }
+
+        @Override
+        public void onMessage(Transport transport, String text) {
+            events.offer("onMessage:" + text);
+            if (requestNext) {
+                ((Transport.FlowControlled) transport).request();
+            }
+        }
+
+        @Override
+        public void onMessage(Transport transport, FragmentedText text) {
+            events.offer("onFragmentedMessage:" + text.toString());
+            if (requestNext) {
+                ((Transport.FlowControlled) transport).request();
+            }
+        }
+
+        @Override
+        public void onMessage(Transport transport, ByteBuffer bytes) {
+            events.offer("onMessage:" + bytes.remaining() + " bytes");
+            if (requestNext) {
+                ((Transport.FlowControlled) transport).request();
+            }
+        }
+
+        @Override
+        public void onClosing(Transport transport, int code, String reason) {
+            events.offer("onClosing:" + code);
+            transport.close(1000, null);
+        }
+
+        @Override
+        public void onClosed(Transport transport, int code, String reason) {
+            events.offer("onClosed:" + code);
+        }
+
+        @Override
+        public void onFailure(Transport transport, Throwable t, int statusCode) {
+            events.offer("onFailure:" + statusCode);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.hosopy.concurrent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class WheelTimerTest {
+
+    private static final int TIMEOUT = 10000;
+
+    @Test(timeout = TIMEOUT)
+    public void schedule() throws InterruptedException {
+        final BlockingQueue<Integer> queue = new LinkedBlockingQueue<Integer>();
+
+        WheelTimer.schedule(new Task(queue, 2), 200, TimeUnit.MILLISECONDS);
+        WheelTimer.schedule(new Task(queue, 0), 0, TimeUnit.MILLISECONDS);
+        WheelTimer.schedule(new Task(queue, 1), 50, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(queue.take(), is(i));
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void neverRunEarly() throws InterruptedException {
+        final BlockingQueue<Long> queue = new LinkedBlockingQueue<Long>();
+        final long scheduledAt = System.nanoTime();
+
+        WheelTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                queue.offer(System.nanoTime() - scheduledAt);
+            }
+        }, 120, TimeUnit.MILLISECONDS);
+
+        assertTrue(queue.take() >= TimeUnit.MILLISECONDS.toNanos(120));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void scheduleBeyondOneRound() throws InterruptedException {
+        final BlockingQueue<Integer> queue = new LinkedBlockingQueue<Integer>();
+
+        // One round of the wheel is 5.12 seconds
+        WheelTimer.schedule(new Task(queue, 1), 5200, TimeUnit.MILLISECONDS);
+        WheelTimer.schedule(new Task(queue, 0), 10, TimeUnit.MILLISECONDS);
+
+        assertThat(queue.take(), is(0));
+        assertThat(queue.poll(4, TimeUnit.SECONDS), nullValue());
+        assertThat(queue.take(), is(1));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void cancel() throws InterruptedException {
+        final BlockingQueue<Integer> queue = new LinkedBlockingQueue<Integer>();
+
+        final WheelTimer.Timeout timeout = WheelTimer.schedule(new Task(queue, 0), 100, TimeUnit.MILLISECONDS);
+        WheelTimer.schedule(new Task(queue, 1), 200, TimeUnit.MILLISECONDS);
+
+        assertThat(timeout.cancel(), is(true));
+        assertThat(timeout.isCancelled(), is(true));
+        assertThat(timeout.cancel(), is(false));
+
+        assertThat(queue.take(), is(1));
+        assertThat(timeout.isExpired(), is(false));
+    }
+
+    private static class Task implements Runnable {
+        private final BlockingQueue<Integer> queue;
+
+        private final int value;
+
+        Task(BlockingQueue<Integer> queue, int value) {
+            this.queue = queue;
+            this.value = value;
+        }
+
+        @Override
+        public void run() {
+            queue.offer(value);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.hosopy.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class HistogramTest {
+
+    @Test
+    public void percentilesWithinPrecision() {
+        final Histogram histogram = new Histogram();
+        for (long value = 1; value <= 1000000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertThat(histogram.getCount(), is(1000000L));
+        assertThat(histogram.getMax(), is(1000000000L));
+        assertThat(histogram.getMean(), closeTo(500000500.0, 1.0));
+
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            final long expected = (long) (percentile * 10000) * 1000;
+            final long actual = histogram.getValueAtPercentile(percentile);
+            assertThat(actual, greaterThanOrEqualTo(expected));
+            assertThat(actual, lessThanOrEqualTo(expected + expected / 128));
+        }
+        assertThat(histogram.getValueAtPercentile(100), is(1000000000L));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        final Histogram histogram = new Histogram(1000, 2);
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(3);
+
+        assertThat(histogram.getValueAtPercentile(0), is(0L));
+        assertThat(histogram.getValueAtPercentile(50), is(1L));
+        assertThat(histogram.getValueAtPercentile(100), is(3L));
+    }
+
+    @Test
+    public void clampOutOfRangeValues() {
+        final Histogram histogram = new Histogram(1000, 3);
+        histogram.record(-5);
+        histogram.record(5000);
+
+        assertThat(histogram.getValueAtPercentile(0), is(0L));
+        assertThat(histogram.getMax(), is(1000L));
+        assertThat(histogram.getValueAtPercentile(100), is(1000L));
+    }
+
+    @Test
+    public void addAndReset() {
+        final Histogram a = new Histogram();
+        final Histogram b = new Histogram();
+        a.record(100);
+        b.record(200);
+        b.record(300);
+
+        a.add(b);
+        assertThat(a.getCount(), is(3L));
+        assertThat(a.getMax(), is(300L));
+        assertThat(a.getValueAtPercentile(50), is(200L));
+
+        a.reset();
+        assertThat(a.getCount(), is(0L));
+        assertThat(a.getValueAtPercentile(99), is(0L));
+    }
+}
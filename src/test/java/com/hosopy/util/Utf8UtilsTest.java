@@ -0,0 +1,30 @@
+package com.hosopy.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.charset.Charset;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(JUnit4.class)
+public class Utf8UtilsTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void encodedLength() {
+        final String[] texts = {"", "{\"command\":\"message\"}", "caf\u00e9", "\u3053\u3093\u306b\u3061\u306f", "\ud83d\ude00!"};
+        for (String text : texts) {
+            assertThat(text, Utf8Utils.encodedLength(text), is(text.getBytes(UTF_8).length));
+        }
+    }
+
+    @Test
+    public void encodedLengthOfUnpairedSurrogate() {
+        assertThat(Utf8Utils.encodedLength("\ud83d"), is(3));
+        assertThat(Utf8Utils.encodedLength("\ude00\ud83d"), is(6));
+    }
+}